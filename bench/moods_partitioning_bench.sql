@@ -0,0 +1,108 @@
+-- Range-query latency benchmark: heap moods table vs. monthly range-partitioned moods table.
+--
+-- Generates the same multi-million-row dataset into two throwaway schemas and runs the query shapes the
+-- application issues (MoodEntryRepository.findByUserIdAndRecordTimeRange and the /api/v1/moods list
+-- specification) against both. Run against a scratch database:
+--   psql -d moodtrack_bench -v rows=5000000 -v users=20000 -f bench/moods_partitioning_bench.sql > bench_output.txt
+-- Compare "Execution Time" and the number of partitions scanned in the plans.
+
+\set ON_ERROR_STOP on
+\if :{?rows}
+\else
+    \set rows 5000000
+\endif
+\if :{?users}
+\else
+    \set users 20000
+\endif
+
+DROP SCHEMA IF EXISTS bench_heap CASCADE;
+DROP SCHEMA IF EXISTS bench_part CASCADE;
+CREATE SCHEMA bench_heap;
+CREATE SCHEMA bench_part;
+
+-- Three years of data ending now, spread uniformly over users and time.
+CREATE UNLOGGED TABLE bench_heap.moods AS
+SELECT g AS id,
+       1 + (g % :users) AS user_id,
+       (ARRAY['very_bad', 'bad', 'neutral', 'good', 'very_good'])[1 + (g % 5)] AS emotion_type,
+       NULL::varchar(500) AS mood_description,
+       true AS share_to_public,
+       false AS is_anonymous,
+       now() - (random() * interval '1095 days') AS record_time,
+       now() AS created_at,
+       now() AS updated_at
+FROM generate_series(1, :rows) AS g;
+ALTER TABLE bench_heap.moods ADD PRIMARY KEY (id);
+CREATE INDEX ON bench_heap.moods (user_id, record_time, id);
+
+CREATE TABLE bench_part.moods (LIKE bench_heap.moods) PARTITION BY RANGE (record_time);
+ALTER TABLE bench_part.moods ADD PRIMARY KEY (id, record_time);
+CREATE INDEX ON bench_part.moods (user_id, record_time, id);
+DO $$
+DECLARE
+    month_start date := date_trunc('month', now() - interval '1096 days');
+BEGIN
+    WHILE month_start <= date_trunc('month', now()) LOOP
+        EXECUTE format('CREATE UNLOGGED TABLE bench_part.moods_%s PARTITION OF bench_part.moods FOR VALUES FROM (%L) TO (%L)',
+                       to_char(month_start, 'YYYY_MM'), month_start, (month_start + interval '1 month')::date);
+        month_start := month_start + interval '1 month';
+    END LOOP;
+END $$;
+INSERT INTO bench_part.moods SELECT * FROM bench_heap.moods;
+
+VACUUM ANALYZE bench_heap.moods;
+VACUUM ANALYZE bench_part.moods;
+
+\timing on
+
+-- Warm both tables so the comparison is not dominated by cold cache reads.
+SELECT count(*) FROM bench_heap.moods;
+SELECT count(*) FROM bench_part.moods;
+
+\echo '=== 1. One user, last 7 days (analysis report range) ==='
+PREPARE heap_week(bigint) AS SELECT * FROM bench_heap.moods WHERE user_id = $1 AND record_time >= now() - interval '7 days' AND record_time < now();
+PREPARE part_week(bigint) AS SELECT * FROM bench_part.moods WHERE user_id = $1 AND record_time >= now() - interval '7 days' AND record_time < now();
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE heap_week(42);
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE part_week(42);
+
+\echo '=== 2. One user, one calendar month, newest first (list page) ==='
+PREPARE heap_month(bigint) AS SELECT * FROM bench_heap.moods WHERE user_id = $1 AND record_time >= date_trunc('month', now()) - interval '1 month' AND record_time < date_trunc('month', now()) ORDER BY record_time DESC, id DESC LIMIT 21;
+PREPARE part_month(bigint) AS SELECT * FROM bench_part.moods WHERE user_id = $1 AND record_time >= date_trunc('month', now()) - interval '1 month' AND record_time < date_trunc('month', now()) ORDER BY record_time DESC, id DESC LIMIT 21;
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE heap_month(42);
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE part_month(42);
+
+\echo '=== 3. All users, one month (rollup rebuild / export style scan) ==='
+EXPLAIN (ANALYZE, BUFFERS) SELECT emotion_type, count(*) FROM bench_heap.moods WHERE record_time >= date_trunc('month', now()) - interval '1 month' AND record_time < date_trunc('month', now()) GROUP BY emotion_type;
+EXPLAIN (ANALYZE, BUFFERS) SELECT emotion_type, count(*) FROM bench_part.moods WHERE record_time >= date_trunc('month', now()) - interval '1 month' AND record_time < date_trunc('month', now()) GROUP BY emotion_type;
+
+\echo '=== 4. Latency over 200 random users, one month each ==='
+DO $$
+DECLARE
+    started timestamptz;
+    heap_ms numeric;
+    part_ms numeric;
+    uid bigint;
+    max_user bigint := (SELECT max(user_id) FROM bench_heap.moods);
+BEGIN
+    started := clock_timestamp();
+    FOR i IN 1..200 LOOP
+        uid := 1 + (random() * (max_user - 1))::bigint;
+        PERFORM count(*) FROM bench_heap.moods WHERE user_id = uid AND record_time >= now() - interval '30 days' AND record_time < now();
+    END LOOP;
+    heap_ms := extract(epoch FROM clock_timestamp() - started) * 1000;
+
+    started := clock_timestamp();
+    FOR i IN 1..200 LOOP
+        uid := 1 + (random() * (max_user - 1))::bigint;
+        PERFORM count(*) FROM bench_part.moods WHERE user_id = uid AND record_time >= now() - interval '30 days' AND record_time < now();
+    END LOOP;
+    part_ms := extract(epoch FROM clock_timestamp() - started) * 1000;
+
+    RAISE NOTICE 'heap: % ms total, % ms/query', round(heap_ms, 1), round(heap_ms / 200, 3);
+    RAISE NOTICE 'partitioned: % ms total, % ms/query', round(part_ms, 1), round(part_ms / 200, 3);
+END $$;
+
+\timing off
+DROP SCHEMA bench_heap CASCADE;
+DROP SCHEMA bench_part CASCADE;
@@ -0,0 +1,209 @@
+package org.example.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.concurrent.Cancellable;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gemini API 专用的 HTTP 传输配置。
+ * <p>
+ * 使用 Apache HttpClient 5 连接池 (HTTP/1.1 keep-alive)，总连接数与每个路由的连接数有上限，
+ * 并设置连接、读取 (两次收到数据之间) 和单次请求总时长三种超时，避免上游变慢时无限占用线程。
+ * 响应默认协商 gzip 压缩并自动解压。客户端自身不重试，重试仍由 {@code @Retryable} 负责。
+ * 连接池状态通过 httpcomponents.httpclient.pool.* 暴露，每次尝试的耗时记录在 moodtrack.gemini.http.attempts。
+ * </p>
+ */
+@Configuration
+public class GeminiClientConfig {
+
+    @Value("${moodtrack.gemini.http.max-connections:50}")
+    private int maxConnections;
+
+    @Value("${moodtrack.gemini.http.max-connections-per-route:20}")
+    private int maxConnectionsPerRoute;
+
+    @Value("${moodtrack.gemini.http.connect-timeout:3s}")
+    private Duration connectTimeout;
+
+    @Value("${moodtrack.gemini.http.read-timeout:30s}")
+    private Duration readTimeout;
+
+    @Value("${moodtrack.gemini.http.total-timeout:45s}")
+    private Duration totalTimeout;
+
+    @Value("${moodtrack.gemini.http.connection-request-timeout:2s}")
+    private Duration connectionRequestTimeout;
+
+    @Value("${moodtrack.gemini.http.connection-ttl:5m}")
+    private Duration connectionTtl;
+
+    @Value("${moodtrack.gemini.http.idle-eviction:30s}")
+    private Duration idleEviction;
+
+    @Bean
+    public HttpComponentsClientHttpRequestFactory geminiRequestFactory(MeterRegistry meterRegistry) {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.of(connectTimeout))
+                        .setSocketTimeout(Timeout.of(readTimeout))
+                        .setTimeToLive(TimeValue.of(connectionTtl))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                        .build())
+                .build();
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "gemini").bindTo(meterRegistry);
+
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.of(connectionRequestTimeout))
+                        .setResponseTimeout(Timeout.of(readTimeout))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.of(idleEviction))
+                .disableAutomaticRetries()
+                .build();
+        return new DeadlineRequestFactory(httpClient, totalTimeout);
+    }
+
+    @Bean
+    public RestTemplate geminiRestTemplate(@Qualifier("geminiRequestFactory") HttpComponentsClientHttpRequestFactory requestFactory,
+                                           MeterRegistry meterRegistry) {
+        RestTemplate restTemplate = new RestTemplate(requestFactory);
+        // 不使用 RestTemplateBuilder 的自动观测：请求 URL 中带有 API key，不能作为指标标签。
+        // 非流式响应在这里读完响应体：读取中途超时或被总时长截止取消时以 IOException 抛出，由 RestTemplate 包装为
+        // ResourceAccessException，而不是消息转换器的 RestClientException；SSE 响应交给调用方逐行读取
+        restTemplate.getInterceptors().add((request, body, execution) -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            String outcome = "IO_ERROR";
+            try {
+                ClientHttpResponse response = execution.execute(request, body);
+                if (!MediaType.TEXT_EVENT_STREAM.isCompatibleWith(response.getHeaders().getContentType())) {
+                    response = new BufferedResponse(response);
+                }
+                outcome = response.getStatusCode().is2xxSuccessful() ? "SUCCESS" : "HTTP_" + response.getStatusCode().value();
+                return response;
+            } catch (IOException e) {
+                outcome = e.getClass().getSimpleName();
+                throw e;
+            } finally {
+                sample.stop(Timer.builder("moodtrack.gemini.http.attempts")
+                        .description("Latency of each HTTP attempt to the Gemini API")
+                        .tag("outcome", outcome)
+                        .register(meterRegistry));
+            }
+        });
+        return restTemplate;
+    }
+
+    /**
+     * 已完整读入内存的响应，关闭时释放原响应的连接。
+     */
+    static class BufferedResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse response;
+
+        private final byte[] body;
+
+        BufferedResponse(ClientHttpResponse response) throws IOException {
+            this.response = response;
+            try {
+                this.body = response.getBody().readAllBytes();
+            } catch (IOException e) {
+                response.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return response.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return response.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return response.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public void close() {
+            response.close();
+        }
+    }
+
+    /**
+     * 为每个请求安排一个总时长截止：到期仍未完成 (包括读取响应体) 时取消请求并关闭连接。
+     * 请求已完成时连接已归还连接池，取消不会影响后续复用该连接的请求。
+     */
+    static class DeadlineRequestFactory extends HttpComponentsClientHttpRequestFactory {
+
+        private final Duration totalTimeout;
+
+        private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gemini-http-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        DeadlineRequestFactory(CloseableHttpClient httpClient, Duration totalTimeout) {
+            super(httpClient);
+            this.totalTimeout = totalTimeout;
+        }
+
+        @Override
+        protected ClassicHttpRequest createHttpUriRequest(HttpMethod httpMethod, URI uri) {
+            ClassicHttpRequest request = super.createHttpUriRequest(httpMethod, uri);
+            if (request instanceof Cancellable cancellable) {
+                scheduler.schedule(cancellable::cancel, totalTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            }
+            return request;
+        }
+
+        @Override
+        public void destroy() throws Exception {
+            scheduler.shutdownNow();
+            super.destroy();
+        }
+    }
+}
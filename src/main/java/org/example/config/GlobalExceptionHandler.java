@@ -1,6 +1,19 @@
 package org.example.config;
 
+import org.example.exception.AiServiceUnavailableException;
+import org.example.exception.AnalysisJobNotFoundException;
+import org.example.exception.AnalysisQueueFullException;
+import org.example.exception.ExportBusyException;
 import org.example.exception.InsufficientDataException;
+import org.example.exception.InvalidAnalysisTypeException;
+import org.example.exception.InvalidImportFileException;
+import org.example.exception.GeminiApiException;
+import org.example.exception.IdempotencyKeyMismatchException;
+import org.example.exception.InvalidCursorException;
+import org.example.exception.InvalidDateRangeException;
+import org.example.exception.InvalidIdempotencyKeyException;
+import org.example.exception.ReportNotFoundException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
@@ -51,4 +64,178 @@ public class GlobalExceptionHandler {
 
         return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
     }
-}
\ No newline at end of file
+
+    @ExceptionHandler(InvalidCursorException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public ResponseEntity<Map<String, Object>> handleInvalidCursorException(InvalidCursorException ex) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("code", "INVALID_CURSOR");
+        error.put("message", ex.getMessage());
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("error", error);
+
+        return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(InvalidDateRangeException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public ResponseEntity<Map<String, Object>> handleInvalidDateRangeException(InvalidDateRangeException ex) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("code", "INVALID_DATE_RANGE");
+        error.put("message", ex.getMessage());
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("error", error);
+
+        return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(InvalidAnalysisTypeException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public ResponseEntity<Map<String, Object>> handleInvalidAnalysisTypeException(InvalidAnalysisTypeException ex) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("code", "INVALID_ANALYSIS_TYPE");
+        error.put("message", ex.getMessage());
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("error", error);
+
+        return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(InvalidImportFileException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public ResponseEntity<Map<String, Object>> handleInvalidImportFileException(InvalidImportFileException ex) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("code", "INVALID_IMPORT_FILE");
+        error.put("message", ex.getMessage());
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("error", error);
+
+        return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(InvalidIdempotencyKeyException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public ResponseEntity<Map<String, Object>> handleInvalidIdempotencyKeyException(InvalidIdempotencyKeyException ex) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("code", "INVALID_IDEMPOTENCY_KEY");
+        error.put("message", ex.getMessage());
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("error", error);
+
+        return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(IdempotencyKeyMismatchException.class)
+    @ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+    public ResponseEntity<Map<String, Object>> handleIdempotencyKeyMismatchException(IdempotencyKeyMismatchException ex) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("code", "IDEMPOTENCY_KEY_MISMATCH");
+        error.put("message", ex.getMessage());
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("error", error);
+
+        return new ResponseEntity<>(response, HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+
+    @ExceptionHandler(ReportNotFoundException.class)
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    public ResponseEntity<Map<String, Object>> handleReportNotFoundException(ReportNotFoundException ex) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("code", "REPORT_NOT_FOUND");
+        error.put("message", ex.getMessage());
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("error", error);
+
+        return new ResponseEntity<>(response, HttpStatus.NOT_FOUND);
+    }
+
+    @ExceptionHandler(AnalysisJobNotFoundException.class)
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    public ResponseEntity<Map<String, Object>> handleAnalysisJobNotFoundException(AnalysisJobNotFoundException ex) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("code", "JOB_NOT_FOUND");
+        error.put("message", ex.getMessage());
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("error", error);
+
+        return new ResponseEntity<>(response, HttpStatus.NOT_FOUND);
+    }
+
+    @ExceptionHandler(AnalysisQueueFullException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public ResponseEntity<Map<String, Object>> handleAnalysisQueueFullException(AnalysisQueueFullException ex) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("code", "ANALYSIS_QUEUE_FULL");
+        error.put("message", ex.getMessage());
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("error", error);
+
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "30")
+                .body(response);
+    }
+
+    @ExceptionHandler(ExportBusyException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public ResponseEntity<Map<String, Object>> handleExportBusyException(ExportBusyException ex) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("code", "EXPORT_BUSY");
+        error.put("message", ex.getMessage());
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("error", error);
+
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "30")
+                .body(response);
+    }
+
+    @ExceptionHandler(AiServiceUnavailableException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public ResponseEntity<Map<String, Object>> handleAiServiceUnavailableException(AiServiceUnavailableException ex) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("code", ex.getCode());
+        error.put("message", ex.getMessage());
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("error", error);
+
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, ex.getRetryAfter().toSeconds())))
+                .body(response);
+    }
+
+    @ExceptionHandler(GeminiApiException.class)
+    @ResponseStatus(HttpStatus.BAD_GATEWAY)
+    public ResponseEntity<Map<String, Object>> handleGeminiApiException(GeminiApiException ex) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("code", "AI_SERVICE_ERROR");
+        error.put("message", "AI分析服务暂时不可用");
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("error", error);
+
+        return new ResponseEntity<>(response, HttpStatus.BAD_GATEWAY);
+    }
+}
@@ -1,5 +1,6 @@
 package org.example.config;
 
+import jakarta.servlet.DispatcherType;
 import org.example.filter.JwtRequestFilter;
 import org.example.service.MyUserDetailsService;
 import org.slf4j.Logger;
@@ -69,7 +70,9 @@ public class SecurityConfig {
                 .authorizeHttpRequests(authorize -> authorize
                         // 对以下路径的请求允许匿名访问 (无需认证)
                         // 主要包括用户认证(注册/登录)接口和 API 文档(Swagger)相关路径。
-                        .requestMatchers("/api/auth/**", "/swagger-ui/**", "/v3/api-docs/**").permitAll()
+                        .requestMatchers("/api/auth/**", "/swagger-ui/**", "/v3/api-docs/**", "/actuator/health").permitAll()
+                        // SSE 等异步响应结束时的 ASYNC 分派：原请求已通过认证，JWT 过滤器不会在此分派中再次执行。
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         .requestMatchers("/api/v1/ai-analysis/**").authenticated()
                         // 除了上面明确放行的路径，所有其他请求都必须经过认证。
                         .anyRequest().authenticated()
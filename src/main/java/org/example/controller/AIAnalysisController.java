@@ -4,15 +4,28 @@ import jakarta.validation.Valid;
 import org.example.dto.AIAnalysisRequest;
 import org.example.dto.AIAnalysisResponse;
 import org.example.model.User;
+import org.example.dto.AnalysisHistoryResponse;
+import org.example.dto.AnalysisJobResponse;
+import org.example.exception.InvalidAnalysisTypeException;
+import org.example.model.AnalysisType;
+import org.example.service.AnalysisJobService;
+import org.example.service.AnalysisRequestCoalescer;
 import org.example.service.AnalysisReportService;
 import org.example.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.net.URI;
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 
 @RestController
@@ -22,13 +35,35 @@ public class AIAnalysisController {
     @Autowired
     private AnalysisReportService analysisReportService;
 
+    @Autowired
+    private AnalysisJobService analysisJobService;
+
+    @Autowired
+    private AnalysisRequestCoalescer analysisRequestCoalescer;
+
     @Autowired
     private UserService userService;
 
+    /**
+     * 生成分析报告。默认同步返回报告；async=true 时立即返回 202 和任务信息，
+     * 报告由后台线程池生成，通过 {@code GET /jobs/{jobId}} 轮询或 {@code GET /jobs/{jobId}/events} (SSE) 获取。
+     */
     @PostMapping("/generate")
-    public ResponseEntity<?> generateAnalysis(@Valid @RequestBody AIAnalysisRequest request) {
+    public ResponseEntity<?> generateAnalysis(@Valid @RequestBody AIAnalysisRequest request,
+                                              @RequestParam(defaultValue = "false") boolean async) {
         User currentUser = getCurrentUser();
-        AIAnalysisResponse response = analysisReportService.generateAnalysis(request, currentUser);
+        if (async) {
+            AnalysisJobResponse job = analysisJobService.submit(request, currentUser);
+            Map<String, Object> acceptedResponse = new HashMap<>();
+            acceptedResponse.put("success", true);
+            acceptedResponse.put("message", "AI分析任务已提交");
+            acceptedResponse.put("data", job);
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/v1/ai-analysis/jobs/" + job.getJobId()))
+                    .body(acceptedResponse);
+        }
+        // 重复点击或客户端超时重试的相同请求合并为一次生成
+        AIAnalysisResponse response = analysisRequestCoalescer.generateAnalysis(request, currentUser);
         Map<String, Object> successResponse = new HashMap<>();
         successResponse.put("success", true);
         successResponse.put("message", "AI分析报告生成成功");
@@ -36,7 +71,80 @@ public class AIAnalysisController {
         return ResponseEntity.ok(successResponse);
     }
 
-    // History and Get by ID endpoints would be implemented here
+    /**
+     * 流式生成分析报告 (SSE)。本地统计部分立即推送，LLM 撰写的部分在模型输出对应字段后推送，
+     * 事件名为报告部分名 (summary、patterns、recommendations、riskAssessment)，最后是 completed 或 failed。
+     */
+    @PostMapping(value = "/generate/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamAnalysis(@Valid @RequestBody AIAnalysisRequest request) {
+        return analysisJobService.stream(request, getCurrentUser());
+    }
+
+    /**
+     * 报告历史，按生成时间倒序的游标分页，只返回头部字段 (reportId、类型、日期范围、风险等级、整体趋势、生成时间)，
+     * 完整内容通过 {@code GET /{reportId}} 获取。
+     */
+    @GetMapping("/history")
+    public ResponseEntity<?> getHistory(
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String type) {
+        limit = Math.max(1, Math.min(limit, 100));
+        AnalysisType analysisType = type != null ? parseAnalysisType(type) : null;
+        AnalysisHistoryResponse history = analysisReportService.getHistory(getCurrentUser(), cursor, limit, analysisType);
+        Map<String, Object> successResponse = new HashMap<>();
+        successResponse.put("success", true);
+        successResponse.put("data", history);
+        return ResponseEntity.ok(successResponse);
+    }
+
+    /**
+     * 获取已保存的分析报告。报告生成后不再修改，ETag 只由用户和报告 ID 决定，
+     * If-None-Match 命中时直接返回 304，不查询数据库中的报告；客户端可在私有缓存中直接复用 30 天。
+     */
+    @GetMapping("/{reportId}")
+    public ResponseEntity<?> getReport(@PathVariable String reportId, WebRequest webRequest) {
+        User currentUser = getCurrentUser();
+        String eTag = "\"report-" + currentUser.getId() + "-" + reportId + "\"";
+        if (webRequest.checkNotModified(eTag)) {
+            return null;
+        }
+        AIAnalysisResponse response = analysisReportService.getReport(reportId, currentUser);
+        Map<String, Object> successResponse = new HashMap<>();
+        successResponse.put("success", true);
+        successResponse.put("data", response);
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(CacheControl.maxAge(Duration.ofDays(30)).cachePrivate())
+                .body(successResponse);
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<?> getJob(@PathVariable String jobId) {
+        AnalysisJobResponse job = analysisJobService.getJob(jobId, getCurrentUser());
+        Map<String, Object> successResponse = new HashMap<>();
+        successResponse.put("success", true);
+        successResponse.put("data", job);
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noStore())
+                .body(successResponse);
+    }
+
+    /**
+     * 以 SSE 推送任务结果：任务结束时发送一个 completed 或 failed 事件 (数据同轮询接口的 data) 后关闭连接。
+     */
+    @GetMapping(value = "/jobs/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamJob(@PathVariable String jobId) {
+        return analysisJobService.subscribe(jobId, getCurrentUser());
+    }
+
+    private static AnalysisType parseAnalysisType(String type) {
+        try {
+            return AnalysisType.valueOf(type.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidAnalysisTypeException("type 只能是 weekly、monthly 或 custom");
+        }
+    }
 
     private User getCurrentUser() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
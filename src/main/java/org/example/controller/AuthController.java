@@ -18,6 +18,8 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.DateTimeException;
+import java.time.ZoneId;
 import java.util.Map;
 
 /**
@@ -51,7 +53,7 @@ public class AuthController {
      * 密码会在 {@link UserService} 中进行加密处理。
      * </p>
      *
-     * @param user 包含邮箱、用户名和密码的用户注册信息。
+     * @param user 包含邮箱、用户名、密码和可选时区 (timeZone，IANA 时区 ID，默认 UTC) 的用户注册信息。
      * @return 注册成功后的用户信息 (密码已被加密，不会返回)。
      */
     @Operation(summary = "用户注册", description = "接收用户信息并创建一个新账户")
@@ -65,6 +67,15 @@ public class AuthController {
         if (userService.findByUsername(user.getUsername()) != null) {
             return ResponseEntity.status(HttpStatus.CONFLICT).body("该用户名已被使用");
         }
+        // 检查时区是否有效，未提供时使用 UTC
+        if (user.getTimeZone() == null || user.getTimeZone().isBlank()) {
+            user.setTimeZone("UTC");
+        }
+        try {
+            user.setTimeZone(ZoneId.of(user.getTimeZone()).getId());
+        } catch (DateTimeException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("无效的时区: " + user.getTimeZone());
+        }
 
         User registeredUser = userService.register(user);
         return ResponseEntity.status(HttpStatus.CREATED).body(registeredUser);
@@ -1,76 +1,275 @@
 package org.example.controller;
 
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import org.example.dto.BatchCreateMoodRequest;
+import org.example.dto.BatchCreateMoodResponse;
 import org.example.dto.CreateMoodRequest;
+import org.example.dto.MoodCalendarDay;
+import org.example.dto.MoodFileFormat;
+import org.example.dto.MoodImportReport;
+import org.example.dto.MoodResponse;
+import org.example.dto.MoodStatsResponse;
 import org.example.dto.PaginatedMoodResponse;
+import org.example.exception.InvalidDateRangeException;
 import org.example.model.EmotionType;
 import org.example.model.MoodEntry;
 import org.example.model.User;
+import org.example.service.MoodDataVersionService;
 import org.example.service.MoodEntryService;
+import org.example.service.MoodExportService;
+import org.example.service.MoodIdempotencyService;
+import org.example.service.MoodImportService;
+import org.example.service.MoodRollupService;
+import org.example.service.MoodStatsService;
 import org.example.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
 import java.time.LocalDate;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @RestController
 @RequestMapping("/api/v1/moods")
 public class MoodController {
 
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    private static final int MAX_CALENDAR_DAYS = 366;
+
     @Autowired
     private MoodEntryService moodEntryService;
 
+    @Autowired
+    private MoodExportService moodExportService;
+
+    @Autowired
+    private MoodImportService moodImportService;
+
+    @Autowired
+    private MoodStatsService moodStatsService;
+
+    @Autowired
+    private MoodRollupService moodRollupService;
+
+    @Autowired
+    private MoodIdempotencyService moodIdempotencyService;
+
+    @Autowired
+    private MoodDataVersionService moodDataVersionService;
+
     @Autowired
     private UserService userService;
 
+    /**
+     * 携带 Idempotency-Key 请求头时，同一个键的重试返回首次创建的结果而不会重复创建，
+     * 重放的响应带有 Idempotent-Replayed: true 响应头。
+     */
     @PostMapping
-    public ResponseEntity<?> createMood(@Valid @RequestBody CreateMoodRequest request) {
+    public ResponseEntity<?> createMood(@Valid @RequestBody CreateMoodRequest request,
+                                        @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
         User currentUser = getCurrentUser();
-        MoodEntry newMood = moodEntryService.createMood(request, currentUser);
 
         Map<String, Object> response = new HashMap<>();
         response.put("success", true);
         response.put("message", "心情记录创建成功");
-        response.put("data", newMood);
 
-        return ResponseEntity.ok(response);
+        if (idempotencyKey == null) {
+            response.put("data", toResponse(moodEntryService.createMood(request, currentUser), currentUser));
+            return ResponseEntity.ok(response);
+        }
+        MoodIdempotencyService.Result result = moodIdempotencyService.execute(currentUser.getId(), idempotencyKey, "create",
+                request, () -> toResponse(moodEntryService.createMood(request, currentUser), currentUser));
+        response.put("data", result.getData());
+        return idempotentResponse(result, response);
     }
 
+    @PostMapping("/batch")
+    public ResponseEntity<?> createMoods(@Valid @RequestBody BatchCreateMoodRequest request,
+                                         @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        User currentUser = getCurrentUser();
+
+        int succeeded;
+        int failed;
+        Map<String, Object> response = new HashMap<>();
+        MoodIdempotencyService.Result result = null;
+        if (idempotencyKey == null) {
+            BatchCreateMoodResponse created = moodEntryService.createMoods(request.getMoods(), currentUser);
+            succeeded = created.getSucceeded();
+            failed = created.getFailed();
+            response.put("data", created);
+        } else {
+            result = moodIdempotencyService.execute(currentUser.getId(), idempotencyKey, "batch",
+                    request, () -> moodEntryService.createMoods(request.getMoods(), currentUser));
+            succeeded = result.getData().path("succeeded").asInt();
+            failed = result.getData().path("failed").asInt();
+            response.put("data", result.getData());
+        }
+        response.put("success", true);
+        response.put("message", String.format("批量创建完成：成功%d条，失败%d条", succeeded, failed));
+
+        return result == null ? ResponseEntity.ok(response) : idempotentResponse(result, response);
+    }
+
+    /**
+     * 默认使用基于 (record_time, id) 的游标分页，只返回 next_cursor 和 hasNext，不执行 COUNT 查询。
+     * 传入 page 或 include_total=true 时退回偏移分页，返回包含 totalCount 的 {@link org.example.dto.PaginationInfo}。
+     * order 默认为 desc；带 cursor 时沿用游标的方向，显式传入的 order 与之不一致时返回 400。
+     * 响应带有基于用户心情数据版本的 ETag，If-None-Match 命中时直接返回 304，不执行任何心情查询。
+     */
     @GetMapping
     public ResponseEntity<?> getMoods(
-            @RequestParam(defaultValue = "1") int page,
+            @RequestParam(required = false) Integer page,
             @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "false") boolean include_total,
             @RequestParam(required = false) String start_date,
             @RequestParam(required = false) String end_date,
             @RequestParam(required = false) String emotion_type,
-            @RequestParam(defaultValue = "desc") String order) {
+            @RequestParam(required = false) String order,
+            WebRequest webRequest) {
 
         User currentUser = getCurrentUser();
-        limit = Math.min(limit, 100);
-        Sort.Direction direction = order.equalsIgnoreCase("asc") ? Sort.Direction.ASC : Sort.Direction.DESC;
-        Pageable pageable = PageRequest.of(page - 1, limit, Sort.by(direction, "recordTime"));
+        String eTag = moodDataVersionService.moodsETag(currentUser);
+        if (webRequest.checkNotModified(eTag)) {
+            return null;
+        }
+        limit = Math.max(1, Math.min(limit, 100));
+        Sort.Direction direction = order == null ? null : order.equalsIgnoreCase("asc") ? Sort.Direction.ASC : Sort.Direction.DESC;
 
         LocalDate startDate = start_date != null ? LocalDate.parse(start_date) : null;
         LocalDate endDate = end_date != null ? LocalDate.parse(end_date) : null;
         EmotionType emotionType = emotion_type != null ? EmotionType.valueOf(emotion_type) : null;
 
-        PaginatedMoodResponse moods = moodEntryService.getMoods(currentUser, pageable, startDate, endDate, emotionType);
+        PaginatedMoodResponse moods;
+        if (page != null || include_total) {
+            Pageable pageable = PageRequest.of(Math.max(page != null ? page : 1, 1) - 1, limit, Sort.by(direction != null ? direction : Sort.Direction.DESC, "recordTime"));
+            moods = moodEntryService.getMoods(currentUser, pageable, startDate, endDate, emotionType);
+        } else {
+            moods = moodEntryService.getMoodsByCursor(currentUser, cursor, limit, direction, startDate, endDate, emotionType);
+        }
 
         Map<String, Object> response = new HashMap<>();
         response.put("success", true);
         response.put("data", moods);
 
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(response);
+    }
+
+    /**
+     * 指定日期区间 (默认最近30天) 的心情统计：情绪直方图、小时/星期分布、均值、波动率和高频触发器。
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<?> getStats(
+            @RequestParam(required = false) String start_date,
+            @RequestParam(required = false) String end_date,
+            @RequestParam(defaultValue = "10") int top_triggers) {
+
+        User currentUser = getCurrentUser();
+        LocalDate endDate = end_date != null ? LocalDate.parse(end_date) : LocalDate.now();
+        LocalDate startDate = start_date != null ? LocalDate.parse(start_date) : endDate.minusDays(29);
+
+        MoodStatsResponse stats = moodStatsService.getStats(currentUser.getId(), startDate, endDate, Math.max(0, Math.min(top_triggers, 50)));
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", stats);
+
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * 日历视图 (默认当月)：区间内有记录的每一天的条数、平均分、最低/最高情绪、情绪直方图和触发器次数，
+     * 读取每日情绪汇总。区间最长 {@value #MAX_CALENDAR_DAYS} 天。
+     */
+    @GetMapping("/calendar")
+    public ResponseEntity<?> getCalendar(
+            @RequestParam(required = false) String start_date,
+            @RequestParam(required = false) String end_date) {
+
+        User currentUser = getCurrentUser();
+        LocalDate today = LocalDate.now(currentUser.zoneId());
+        LocalDate startDate = start_date != null ? LocalDate.parse(start_date) : today.withDayOfMonth(1);
+        LocalDate endDate = end_date != null ? LocalDate.parse(end_date) : startDate.withDayOfMonth(startDate.lengthOfMonth());
+        if (endDate.isBefore(startDate)) {
+            throw new InvalidDateRangeException("结束日期不能早于开始日期");
+        }
+        if (endDate.toEpochDay() - startDate.toEpochDay() + 1 > MAX_CALENDAR_DAYS) {
+            throw new InvalidDateRangeException("日历的日期范围不能超过 " + MAX_CALENDAR_DAYS + " 天");
+        }
+
+        List<MoodCalendarDay> days = moodRollupService.getCalendar(currentUser.getId(), startDate, endDate);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", days);
+
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 流式导出当前用户的全部心情记录 (format=ndjson|csv)，直接写入响应输出流。
+     * 同时进行的导出已达上限时返回 503。
+     */
+    @GetMapping("/export")
+    public void exportMoods(@RequestParam(defaultValue = "ndjson") MoodFileFormat format, HttpServletResponse response) throws IOException {
+        User currentUser = getCurrentUser();
+        moodExportService.export(currentUser.getId(), format, () -> {
+            response.setContentType(format.getContentType());
+            response.setCharacterEncoding("UTF-8");
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"moods." + format.getExtension() + "\"");
+            return response.getOutputStream();
+        });
+    }
+
+    /**
+     * 从 CSV / NDJSON 文件批量导入当前用户的历史心情记录，返回包含被拒绝行的导入报告。
+     */
+    @PostMapping(value = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<?> importMoods(@RequestParam("file") MultipartFile file,
+                                         @RequestParam(defaultValue = "csv") MoodFileFormat format) throws IOException {
+        User currentUser = getCurrentUser();
+        MoodImportReport report = moodImportService.importMoods(currentUser.getId(), currentUser.zoneId(), format, file.getInputStream());
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("message", String.format("导入完成：成功%d条，拒绝%d条", report.getImportedRows(), report.getRejectedRows()));
+        response.put("data", report);
+
+        return ResponseEntity.ok(response);
+    }
+
+    private ResponseEntity<?> idempotentResponse(MoodIdempotencyService.Result result, Map<String, Object> response) {
+        return ResponseEntity.ok()
+                .header("Idempotent-Replayed", String.valueOf(result.isReplayed()))
+                .body(response);
+    }
+
+    // 只返回心情记录本身的字段，不序列化实体关联的 User
+    private MoodResponse toResponse(MoodEntry mood, User user) {
+        MoodResponse response = new MoodResponse(mood.getId(), user.getId(), mood.getEmotionType(), mood.getMoodDescription(),
+                mood.getRecordTime(), mood.getCreatedAt(), mood.getUpdatedAt());
+        response.setTriggers(mood.getTriggers());
+        return response;
+    }
+
     private User getCurrentUser() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         String currentPrincipalName = authentication.getName();
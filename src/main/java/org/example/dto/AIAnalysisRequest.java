@@ -2,6 +2,7 @@ package org.example.dto;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import jakarta.validation.constraints.Pattern;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -21,6 +22,13 @@ public class AIAnalysisRequest {
     @Builder.Default
     private String analysisType = "weekly";
 
+    /**
+     * auto：由 LLM 撰写洞察和建议，LLM 不可用时退回离线报告；offline：不调用 LLM，直接生成离线报告。
+     */
+    @Builder.Default
+    @Pattern(regexp = "auto|offline", message = "mode 只能是 auto 或 offline")
+    private String mode = "auto";
+
     @Builder.Default
     private DateRange dateRange = new DateRange();
 
@@ -46,5 +46,7 @@ public class AIAnalysisResponse {
         private Integer dataPoints;
         private BigDecimal analysisConfidence;
         private BigDecimal apiCost;
+        /** llm 或 offline */
+        private String generationMode;
     }
 }
\ No newline at end of file
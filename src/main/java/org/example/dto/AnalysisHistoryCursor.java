@@ -0,0 +1,45 @@
+package org.example.dto;
+
+import lombok.Getter;
+import org.example.exception.InvalidCursorException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 报告历史列表的游标，基于 ai_analysis.id 倒序进行键集分页 (id 随生成时间递增)。
+ * <p>
+ * 对外以 Base64URL 编码的不透明字符串传递，客户端不应解析其内容。
+ * </p>
+ */
+@Getter
+public class AnalysisHistoryCursor {
+
+    private static final String VERSION = "r1";
+
+    private final long id;
+
+    public AnalysisHistoryCursor(long id) {
+        this.id = id;
+    }
+
+    public String encode() {
+        String raw = VERSION + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static AnalysisHistoryCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|");
+            if (parts.length != 2 || !VERSION.equals(parts[0])) {
+                throw new InvalidCursorException("无效的分页游标");
+            }
+            return new AnalysisHistoryCursor(Long.parseLong(parts[1]));
+        } catch (InvalidCursorException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new InvalidCursorException("无效的分页游标", e);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.example.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.example.model.AnalysisType;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 报告历史列表中的一项：只包含报告的头部字段，完整内容通过 reportId 获取。
+ */
+@Data
+@NoArgsConstructor
+public class AnalysisHistoryItem {
+    /** 仅用于生成分页游标 */
+    @JsonIgnore
+    private Long id;
+    private String reportId;
+    private String analysisType;
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private String riskLevel;
+    private String overallTrend;
+    private LocalDateTime createdAt;
+
+    // 供 Criteria 构造表达式直接投影使用，riskLevel 与 overallTrend 由数据库从 jsonb 中提取
+    public AnalysisHistoryItem(Long id, String reportId, AnalysisType analysisType, LocalDate startDate, LocalDate endDate,
+                               String riskLevel, String overallTrend, LocalDateTime createdAt) {
+        this.id = id;
+        this.reportId = reportId;
+        this.analysisType = analysisType == null ? null : analysisType.name().toLowerCase();
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.riskLevel = riskLevel;
+        this.overallTrend = overallTrend;
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,11 @@
+package org.example.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class AnalysisHistoryResponse {
+    private List<AnalysisHistoryItem> reports;
+    private CursorPaginationInfo cursor;
+}
@@ -0,0 +1,48 @@
+package org.example.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 异步 AI 分析任务的状态。任务成功时 result 为生成的报告，失败时 error 为 {code, message}。
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AnalysisJobResponse {
+
+    public enum Status { QUEUED, RUNNING, SUCCEEDED, FAILED }
+
+    private String jobId;
+
+    private Status status;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss'Z'")
+    private LocalDateTime submittedAt;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss'Z'")
+    private LocalDateTime startedAt;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss'Z'")
+    private LocalDateTime finishedAt;
+
+    private AIAnalysisResponse result;
+
+    private ErrorInfo error;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ErrorInfo {
+        private String code;
+        private String message;
+    }
+}
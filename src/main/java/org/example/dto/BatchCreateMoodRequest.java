@@ -0,0 +1,16 @@
+package org.example.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchCreateMoodRequest {
+
+    // 单条记录的校验在服务层逐条进行，以便按条目返回成功或失败
+    @NotEmpty(message = "心情记录列表不能为空")
+    @Size(max = 500, message = "单次最多提交500条心情记录")
+    private List<CreateMoodRequest> moods;
+}
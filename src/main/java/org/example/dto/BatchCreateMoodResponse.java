@@ -0,0 +1,23 @@
+package org.example.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@Data
+public class BatchCreateMoodResponse {
+    private int total;
+    private int succeeded;
+    private int failed;
+    private List<ItemResult> results = new ArrayList<>();
+
+    @Data
+    public static class ItemResult {
+        private int index;
+        private boolean success;
+        private Long id;
+        private Map<String, String> errors;
+    }
+}
@@ -0,0 +1,10 @@
+package org.example.dto;
+
+import lombok.Data;
+
+@Data
+public class CursorPaginationInfo {
+    private int perPage;
+    private boolean hasNext;
+    private String nextCursor;
+}
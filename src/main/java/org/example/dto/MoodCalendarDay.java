@@ -0,0 +1,31 @@
+package org.example.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 日历视图中有记录的一天，取自每日情绪汇总。
+ */
+@Data
+public class MoodCalendarDay {
+
+    @JsonFormat(pattern = "yyyy-MM-dd")
+    private LocalDate date;
+
+    private int entryCount;
+
+    // 情绪分数为 EmotionType 序号 (very_bad = 0 ... very_good = 4)
+    private double averageScore;
+
+    private String lowestEmotion;
+
+    private String highestEmotion;
+
+    private Map<String, Integer> emotionHistogram = new LinkedHashMap<>();
+
+    private Map<String, Integer> triggerCounts = new LinkedHashMap<>();
+}
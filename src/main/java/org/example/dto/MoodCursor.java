@@ -0,0 +1,52 @@
+package org.example.dto;
+
+import lombok.Getter;
+import org.example.exception.InvalidCursorException;
+import org.springframework.data.domain.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * 心情记录列表的游标，基于 (record_time, id) 进行键集分页。
+ * <p>
+ * 对外以 Base64URL 编码的不透明字符串传递，客户端不应解析其内容。
+ * 游标同时记录排序方向，续页时沿用生成游标时的方向。
+ * </p>
+ */
+@Getter
+public class MoodCursor {
+
+    private static final String VERSION = "v1";
+
+    private final Sort.Direction direction;
+    private final Instant recordTime;
+    private final long id;
+
+    public MoodCursor(Sort.Direction direction, Instant recordTime, long id) {
+        this.direction = direction;
+        this.recordTime = recordTime;
+        this.id = id;
+    }
+
+    public String encode() {
+        String raw = VERSION + "|" + direction.name() + "|" + recordTime + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static MoodCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|");
+            if (parts.length != 4 || !VERSION.equals(parts[0])) {
+                throw new InvalidCursorException("无效的分页游标");
+            }
+            return new MoodCursor(Sort.Direction.valueOf(parts[1]), Instant.parse(parts[2]), Long.parseLong(parts[3]));
+        } catch (InvalidCursorException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new InvalidCursorException("无效的分页游标", e);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package org.example.dto;
+
+import lombok.Getter;
+
+@Getter
+public enum MoodFileFormat {
+    ndjson("application/x-ndjson", "ndjson"),
+    csv("text/csv", "csv");
+
+    private final String contentType;
+    private final String extension;
+
+    MoodFileFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+}
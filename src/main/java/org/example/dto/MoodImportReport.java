@@ -0,0 +1,25 @@
+package org.example.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@Data
+public class MoodImportReport {
+    private long totalRows;
+    private long importedRows;
+    private long rejectedRows;
+    // 整个文件在同一个事务中提交，这里只是写入时分成的 COPY 块数
+    private int copiedChunks;
+    // 仅保留前若干条被拒绝行的详情，rejectedRows 为完整计数
+    private boolean rejectedTruncated;
+    private List<RejectedRow> rejected = new ArrayList<>();
+
+    @Data
+    public static class RejectedRow {
+        private long line;
+        private Map<String, String> errors;
+    }
+}
@@ -1,10 +1,14 @@
 package org.example.dto;
 
 import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.example.model.EmotionType;
+
 import java.time.OffsetDateTime;
 import java.util.List;
 
 @Data
+@NoArgsConstructor
 public class MoodResponse {
     private Long id;
     private Long user_id;
@@ -14,4 +18,16 @@ public class MoodResponse {
     private OffsetDateTime record_time;
     private OffsetDateTime created_at;
     private OffsetDateTime updated_at;
+
+    // 供 JPQL/Criteria 构造表达式直接投影使用，triggers 由第二条查询批量回填
+    public MoodResponse(Long id, Long userId, EmotionType emotionType, String moodDescription,
+                        OffsetDateTime recordTime, OffsetDateTime createdAt, OffsetDateTime updatedAt) {
+        this.id = id;
+        this.user_id = userId;
+        this.emotion_type = emotionType.name();
+        this.mood_description = moodDescription;
+        this.record_time = recordTime;
+        this.created_at = createdAt;
+        this.updated_at = updatedAt;
+    }
 }
@@ -0,0 +1,49 @@
+package org.example.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Data
+public class MoodStatsResponse {
+
+    @JsonFormat(pattern = "yyyy-MM-dd")
+    private LocalDate startDate;
+
+    @JsonFormat(pattern = "yyyy-MM-dd")
+    private LocalDate endDate;
+
+    private int totalEntries;
+
+    // 情绪分数为 EmotionType 序号 (very_bad = 0 ... very_good = 4)
+    private double mean;
+
+    // 情绪分数的总体标准差
+    private double volatility;
+
+    private Map<String, Integer> emotionHistogram = new LinkedHashMap<>();
+
+    private List<BucketStat> byHourOfDay = new ArrayList<>();
+
+    private List<BucketStat> byWeekday = new ArrayList<>();
+
+    private List<TriggerStat> topTriggers = new ArrayList<>();
+
+    @Data
+    public static class BucketStat {
+        private String label;
+        private int count;
+        private Double averageScore;
+    }
+
+    @Data
+    public static class TriggerStat {
+        private String trigger;
+        private int count;
+    }
+}
@@ -1,10 +1,15 @@
 package org.example.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Data;
 import java.util.List;
 
 @Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class PaginatedMoodResponse {
     private List<MoodResponse> moods;
+    // 偏移分页（含 totalCount），仅在客户端显式请求时返回
     private PaginationInfo pagination;
+    // 游标分页，默认模式
+    private CursorPaginationInfo cursor;
 }
@@ -0,0 +1,22 @@
+package org.example.exception;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * 熔断器打开或并发隔离已满时快速失败，不调用 Gemini。
+ */
+@Getter
+public class AiServiceUnavailableException extends RuntimeException {
+
+    private final String code;
+
+    private final Duration retryAfter;
+
+    public AiServiceUnavailableException(String code, String message, Duration retryAfter) {
+        super(message);
+        this.code = code;
+        this.retryAfter = retryAfter;
+    }
+}
@@ -0,0 +1,8 @@
+package org.example.exception;
+
+public class AnalysisJobNotFoundException extends RuntimeException {
+
+    public AnalysisJobNotFoundException(String message) {
+        super(message);
+    }
+}
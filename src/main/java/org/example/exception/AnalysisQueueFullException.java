@@ -0,0 +1,8 @@
+package org.example.exception;
+
+public class AnalysisQueueFullException extends RuntimeException {
+
+    public AnalysisQueueFullException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package org.example.exception;
+
+/**
+ * 同时进行的心情记录导出已达上限 (moodtrack.export.max-concurrent)。
+ */
+public class ExportBusyException extends RuntimeException {
+
+    public ExportBusyException(String message) {
+        super(message);
+    }
+}
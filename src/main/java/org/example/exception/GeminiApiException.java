@@ -0,0 +1,11 @@
+package org.example.exception;
+
+/**
+ * Gemini API 调用失败且不应重试 (例如请求被拒绝、配额耗尽或响应无效)。
+ */
+public class GeminiApiException extends RuntimeException {
+
+    public GeminiApiException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
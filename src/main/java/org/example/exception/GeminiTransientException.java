@@ -0,0 +1,11 @@
+package org.example.exception;
+
+/**
+ * Gemini API 的暂时性失败 (5xx、408、网络错误或超时)，可以退避后重试。
+ */
+public class GeminiTransientException extends GeminiApiException {
+
+    public GeminiTransientException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
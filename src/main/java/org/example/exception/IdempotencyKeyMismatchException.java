@@ -0,0 +1,8 @@
+package org.example.exception;
+
+public class IdempotencyKeyMismatchException extends RuntimeException {
+
+    public IdempotencyKeyMismatchException(String message) {
+        super(message);
+    }
+}
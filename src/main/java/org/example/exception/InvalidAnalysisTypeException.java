@@ -0,0 +1,11 @@
+package org.example.exception;
+
+/**
+ * 请求参数中的分析类型不是 weekly、monthly 或 custom。
+ */
+public class InvalidAnalysisTypeException extends RuntimeException {
+
+    public InvalidAnalysisTypeException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package org.example.exception;
+
+/**
+ * 分析请求的日期范围无效：结束日期早于开始日期，或范围超过允许的最大天数。
+ */
+public class InvalidDateRangeException extends RuntimeException {
+
+    public InvalidDateRangeException(String message) {
+        super(message);
+    }
+}
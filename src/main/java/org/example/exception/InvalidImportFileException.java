@@ -0,0 +1,12 @@
+package org.example.exception;
+
+public class InvalidImportFileException extends RuntimeException {
+
+    public InvalidImportFileException(String message) {
+        super(message);
+    }
+
+    public InvalidImportFileException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,8 @@
+package org.example.exception;
+
+public class ReportNotFoundException extends RuntimeException {
+
+    public ReportNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -20,7 +20,12 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "ai_analysis")
+@Table(name = "ai_analysis", indexes = {
+        // 按输入指纹查找可复用的报告
+        @Index(name = "idx_ai_analysis_user_cache_key", columnList = "user_id, cache_key"),
+        // 报告历史按用户键集分页
+        @Index(name = "idx_ai_analysis_user_id_id", columnList = "user_id, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -71,10 +76,25 @@ public class AiAnalysis {
     @Digits(integer = 1, fraction = 2)
     private BigDecimal confidenceScore;
 
-    @Column(name = "api_cost")
-    @Digits(integer = 4, fraction = 4)
+    /** LLM 调用的实际费用 (美元)，按响应中的 token 用量计算；离线报告为 0，用量未知时为 null */
+    @Column(name = "api_cost", precision = 12, scale = 8)
+    @Digits(integer = 4, fraction = 8)
     private BigDecimal apiCost;
 
+    @Column(name = "prompt_tokens")
+    private Integer promptTokens;
+
+    @Column(name = "output_tokens")
+    private Integer outputTokens;
+
+    /** 叙述部分的来源：llm 或 offline (本地模板)，统计部分总是本地计算 */
+    @Column(name = "generation_mode", length = 16)
+    private String generationMode;
+
+    /** 生成该报告的输入指纹，见 {@code AnalysisReportCache} */
+    @Column(name = "cache_key", length = 64)
+    private String cacheKey;
+
     @CreationTimestamp
     @Column(name = "created_at")
     private LocalDateTime createdAt;
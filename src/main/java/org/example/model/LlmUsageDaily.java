@@ -0,0 +1,56 @@
+package org.example.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+
+/**
+ * 用户每日 LLM 用量台账。
+ * <p>
+ * 以 (user_id, usage_date) 为主键，usage_date 为 UTC 日期；每次成功的 LLM 调用在保存报告的同一事务内
+ * 累加调用次数、输入/输出 token 数和按配置价格计算的费用 (美元)。全局用量按日期汇总即可得到。
+ * </p>
+ */
+@Data
+@Entity
+@Table(name = "llm_usage_daily")
+@IdClass(LlmUsageDaily.UsageId.class)
+public class LlmUsageDaily {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Id
+    @Column(name = "usage_date")
+    private LocalDate usageDate;
+
+    @Column(name = "calls", nullable = false)
+    private int calls;
+
+    @Column(name = "prompt_tokens", nullable = false)
+    private long promptTokens;
+
+    @Column(name = "output_tokens", nullable = false)
+    private long outputTokens;
+
+    @Column(name = "cost", nullable = false, precision = 14, scale = 8)
+    private BigDecimal cost;
+
+    @Column(name = "updated_at", nullable = false)
+    private OffsetDateTime updatedAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class UsageId implements Serializable {
+        private Long userId;
+        private LocalDate usageDate;
+    }
+}
@@ -0,0 +1,83 @@
+package org.example.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 用户每日情绪汇总。
+ * <p>
+ * 以 (user_id, local_date) 为主键，由创建心情记录时在同一事务内增量维护，
+ * 分析、统计和日历等功能读取 O(天数) 行即可，无需扫描原始心情记录。
+ * 分数为 {@link EmotionType} 的序号 (very_bad = 0 ... very_good = 4)。
+ * </p>
+ */
+@Data
+@Entity
+@Table(name = "mood_daily_rollup")
+@IdClass(MoodDailyRollup.RollupId.class)
+public class MoodDailyRollup {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Id
+    @Column(name = "local_date")
+    private LocalDate localDate;
+
+    @Column(name = "entry_count", nullable = false)
+    private int entryCount;
+
+    @Column(name = "very_bad_count", nullable = false)
+    private int veryBadCount;
+
+    @Column(name = "bad_count", nullable = false)
+    private int badCount;
+
+    @Column(name = "neutral_count", nullable = false)
+    private int neutralCount;
+
+    @Column(name = "good_count", nullable = false)
+    private int goodCount;
+
+    @Column(name = "very_good_count", nullable = false)
+    private int veryGoodCount;
+
+    @Column(name = "score_sum", nullable = false)
+    private long scoreSum;
+
+    @Column(name = "min_score", nullable = false)
+    private int minScore;
+
+    @Column(name = "max_score", nullable = false)
+    private int maxScore;
+
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "trigger_counts", nullable = false, columnDefinition = "jsonb")
+    private Map<String, Integer> triggerCounts = new HashMap<>();
+
+    @Column(name = "updated_at", nullable = false)
+    private OffsetDateTime updatedAt;
+
+    public double getAverageScore() {
+        return entryCount == 0 ? 0.0 : (double) scoreSum / entryCount;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RollupId implements Serializable {
+        private Long userId;
+        private LocalDate localDate;
+    }
+}
@@ -1,17 +1,36 @@
 package org.example.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.Data;
+import java.time.LocalDate;
 import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 @Data
 @Entity
-@Table(name = "moods")
+@Table(name = "moods", indexes = {
+        // 支撑按用户 + 时间范围查询以及 (record_time, id) 游标分页
+        @Index(name = "idx_moods_user_record_time_id", columnList = "user_id, record_time, id"),
+        // 按用户本地日期的范围过滤和按天分组
+        @Index(name = "idx_moods_user_local_date", columnList = "user_id, local_date")
+})
 public class MoodEntry {
 
+    /**
+     * moods_seq 的步长。批量导入直接调用 nextval 时，每个返回值 v 预留 (v - 50, v] 这一段 ID。
+     */
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    // 使用池化序列而不是 IDENTITY，Hibernate 才能对 INSERT 做 JDBC 批处理
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "moods_seq")
+    @SequenceGenerator(name = "moods_seq", sequenceName = "moods_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -25,10 +44,10 @@ public class MoodEntry {
     @Column(name = "mood_description", length = 500)
     private String moodDescription;
 
+    @JsonIgnore
     @ElementCollection
     @CollectionTable(name = "mood_triggers", joinColumns = @JoinColumn(name = "mood_id"))
-    @Column(name = "trigger", length = 50)
-    private List<String> triggers;
+    private List<MoodTrigger> triggerRows = new ArrayList<>();
 
     @Column(name = "share_to_public", nullable = false)
     private boolean shareToPublic = true;
@@ -39,20 +58,75 @@ public class MoodEntry {
     @Column(name = "record_time", nullable = false)
     private OffsetDateTime recordTime;
 
+    /** record_time 在用户时区下的日期，由 {@link #applyTimeZone(ZoneId)} 写入 */
+    @Column(name = "local_date")
+    private LocalDate localDate;
+
+    /** record_time 在用户时区下的小时 (0-23) */
+    @Column(name = "local_hour")
+    private Short localHour;
+
     @Column(name = "created_at", nullable = false, updatable = false)
     private OffsetDateTime createdAt;
 
     @Column(name = "updated_at", nullable = false)
     private OffsetDateTime updatedAt;
 
+    // 触发器字符串，仅用于新建记录的响应和汇总；持久化的是 triggerRows 中的词典 id
+    @Transient
+    private List<String> triggers = new ArrayList<>();
+
+    public void setTriggers(List<String> triggers) {
+        this.triggers = triggers != null ? new ArrayList<>(triggers) : new ArrayList<>();
+    }
+
+    /**
+     * 按 {@link org.example.service.TriggerDictionary} 解析出的 id 生成 mood_triggers 行，需在持久化前调用。
+     */
+    public void encodeTriggers(Map<String, Integer> triggerIds) {
+        triggerRows = new ArrayList<>();
+        triggers.forEach(trigger -> triggerRows.add(new MoodTrigger(triggerIds.get(trigger), recordTime)));
+    }
+
+    /**
+     * 按用户时区计算 local_date 和 local_hour，需在设置 recordTime 之后、持久化之前调用。
+     */
+    public void applyTimeZone(ZoneId zone) {
+        ZonedDateTime local = recordTime.atZoneSameInstant(zone);
+        localDate = local.toLocalDate();
+        localHour = (short) local.getHour();
+    }
+
+    /**
+     * local_date >= startDate 的记录在任意时区下都满足 record_time >= 该时刻。
+     * 与 local_date 条件一起使用，使按 record_time 分区的表仍能裁剪分区。
+     */
+    public static OffsetDateTime recordTimeLowerBound(LocalDate startDate) {
+        return startDate.atStartOfDay().atOffset(ZoneOffset.MAX);
+    }
+
+    /**
+     * local_date <= endDate 的记录在任意时区下都满足 record_time < 该时刻。
+     */
+    public static OffsetDateTime recordTimeUpperBound(LocalDate endDate) {
+        return endDate.plusDays(1).atStartOfDay().atOffset(ZoneOffset.MIN);
+    }
+
     @PrePersist
     protected void onCreate() {
         createdAt = OffsetDateTime.now();
         updatedAt = OffsetDateTime.now();
+        syncTriggerRecordTime();
     }
 
     @PreUpdate
     protected void onUpdate() {
         updatedAt = OffsetDateTime.now();
+        syncTriggerRecordTime();
+    }
+
+    // mood_triggers 的分区键必须与所属心情记录一致
+    private void syncTriggerRecordTime() {
+        triggerRows.forEach(row -> row.setRecordTime(recordTime));
     }
 }
\ No newline at end of file
@@ -0,0 +1,49 @@
+package org.example.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.OffsetDateTime;
+
+/**
+ * 心情创建请求的幂等键记录。
+ * <p>
+ * 以 (user_id, idempotency_key) 为主键，与心情记录在同一事务中写入，保存请求指纹和首次响应的 JSON，
+ * 客户端重试时原样返回首次响应。过期记录由 {@link org.example.service.MoodIdempotencyService} 定期清理。
+ * </p>
+ */
+@Data
+@Entity
+@Table(name = "mood_idempotency_keys")
+@IdClass(MoodIdempotencyKey.KeyId.class)
+public class MoodIdempotencyKey {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Id
+    @Column(name = "idempotency_key", length = 255)
+    private String idempotencyKey;
+
+    /** 操作名与请求体的 SHA-256，用于识别同一个键被用于不同的请求 */
+    @Column(name = "request_hash", nullable = false, length = 64)
+    private String requestHash;
+
+    @Column(name = "response_body", columnDefinition = "TEXT")
+    private String responseBody;
+
+    @Column(name = "created_at", nullable = false)
+    private OffsetDateTime createdAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class KeyId implements Serializable {
+        private Long userId;
+        private String idempotencyKey;
+    }
+}
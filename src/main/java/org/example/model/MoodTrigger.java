@@ -0,0 +1,29 @@
+package org.example.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.OffsetDateTime;
+
+/**
+ * mood_triggers 表中的一行，以 {@link Trigger} 词典的整数 id 引用触发器。
+ * <p>
+ * 冗余保存所属心情记录的 record_time，使 mood_triggers 可以与 moods 一样按月分区，
+ * 由 {@link MoodEntry} 在持久化前同步。
+ * </p>
+ */
+@Data
+@Embeddable
+@NoArgsConstructor
+@AllArgsConstructor
+public class MoodTrigger {
+
+    @Column(name = "trigger_id")
+    private Integer triggerId;
+
+    @Column(name = "record_time")
+    private OffsetDateTime recordTime;
+}
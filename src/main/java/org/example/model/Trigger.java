@@ -0,0 +1,24 @@
+package org.example.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * 触发器词典 (triggers 表)。
+ * <p>
+ * 每个不同的触发器字符串只保存一次，mood_triggers 通过整数 trigger_id 引用。
+ * 词条只增不改，读写均经由 {@link org.example.service.TriggerDictionary}。
+ * </p>
+ */
+@Data
+@Entity
+@Table(name = "triggers")
+public class Trigger {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @Column(name = "name", nullable = false, unique = true, length = 50)
+    private String name;
+}
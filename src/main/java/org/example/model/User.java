@@ -2,10 +2,12 @@ package org.example.model;
 
 import jakarta.persistence.*;
 import lombok.Data;
+import org.hibernate.annotations.ColumnDefault;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.Collection;
 import java.util.Collections;
 
@@ -61,6 +63,32 @@ public class User implements UserDetails {
     @Column(name = "registration_date", nullable = false)
     private LocalDateTime registrationDate;
 
+    /**
+     * 心情数据版本号。
+     * 该用户的心情记录每次发生变化都会在同一事务中加一，用于生成心情列表的 ETag，
+     * 判断客户端缓存是否仍然有效时无需查询 moods 表。
+     */
+    @ColumnDefault("0")
+    @Column(name = "mood_data_version", nullable = false)
+    private long moodDataVersion;
+
+    /**
+     * 用户所在时区 (IANA 时区 ID，如 Asia/Shanghai)，默认为 UTC。
+     * 心情记录的 local_date / local_hour 按创建时的用户时区计算。
+     */
+    @ColumnDefault("'UTC'")
+    @Column(name = "time_zone", nullable = false, length = 64)
+    private String timeZone = "UTC";
+
+    /**
+     * 返回用户时区。
+     *
+     * @return 用户时区对应的 {@link ZoneId}。
+     */
+    public ZoneId zoneId() {
+        return ZoneId.of(timeZone);
+    }
+
     // --- UserDetails 接口实现 --- //
 
     /**
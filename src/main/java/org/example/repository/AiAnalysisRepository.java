@@ -7,11 +7,13 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.Optional;
 
 @Repository
-public interface AiAnalysisRepository extends JpaRepository<AiAnalysis, Long> {
+public interface AiAnalysisRepository extends JpaRepository<AiAnalysis, Long>, AiAnalysisRepositoryCustom {
     Optional<AiAnalysis> findByReportId(String reportId);
     Page<AiAnalysis> findByUserIdAndCreatedAtBetween(Long userId, LocalDate startDate, LocalDate endDate, Pageable pageable);
     Page<AiAnalysis> findByUserId(Long userId, Pageable pageable);
+    Optional<AiAnalysis> findFirstByUserIdAndCacheKeyAndCreatedAtAfterOrderByIdDesc(Long userId, String cacheKey, LocalDateTime createdAfter);
 }
@@ -0,0 +1,28 @@
+package org.example.repository;
+
+import org.example.dto.AnalysisHistoryItem;
+import org.example.model.AiAnalysis;
+import org.example.model.AnalysisType;
+
+import java.util.List;
+
+/**
+ * AI 分析报告的自定义查询片段。
+ * <p>
+ * 历史列表的只读路径：直接投影为 {@link AnalysisHistoryItem}，只从 jsonb 列中提取需要的路径，
+ * 不加载 {@link AiAnalysis} 的四个 jsonb 文档。
+ * </p>
+ */
+public interface AiAnalysisRepositoryCustom {
+
+    /**
+     * 按 id 倒序查询一页报告头部。
+     *
+     * @param userId   用户ID。
+     * @param type     分析类型，为 null 时不过滤。
+     * @param beforeId 只返回 id 小于该值的报告，为 null 时从最新的报告开始。
+     * @param limit    最多返回的记录数。
+     * @return 报告头部列表。
+     */
+    List<AnalysisHistoryItem> findHistory(Long userId, AnalysisType type, Long beforeId, int limit);
+}
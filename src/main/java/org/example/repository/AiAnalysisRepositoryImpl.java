@@ -0,0 +1,58 @@
+package org.example.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.example.dto.AnalysisHistoryItem;
+import org.example.model.AiAnalysis;
+import org.example.model.AnalysisType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class AiAnalysisRepositoryImpl implements AiAnalysisRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<AnalysisHistoryItem> findHistory(Long userId, AnalysisType type, Long beforeId, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<AnalysisHistoryItem> query = cb.createQuery(AnalysisHistoryItem.class);
+        Root<AiAnalysis> root = query.from(AiAnalysis.class);
+
+        query.select(cb.construct(AnalysisHistoryItem.class,
+                root.get("id"),
+                root.get("reportId"),
+                root.get("analysisType"),
+                root.get("startDate"),
+                root.get("endDate"),
+                jsonText(cb, root.get("riskAssessmentData"), "level"),
+                jsonText(cb, root.get("summaryData"), "overallTrend"),
+                root.get("createdAt")));
+
+        List<Predicate> predicates = new ArrayList<>();
+        predicates.add(cb.equal(root.get("userId"), userId));
+        if (type != null) {
+            predicates.add(cb.equal(root.get("analysisType"), type));
+        }
+        if (beforeId != null) {
+            predicates.add(cb.lessThan(root.get("id"), beforeId));
+        }
+        query.where(predicates.toArray(new Predicate[0]));
+        query.orderBy(cb.desc(root.get("id")));
+
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    // PostgreSQL 的 jsonb_extract_path_text(column, key)，即 column ->> key
+    private static Expression<String> jsonText(CriteriaBuilder cb, Expression<?> column, String key) {
+        return cb.function("jsonb_extract_path_text", String.class, column, cb.literal(key));
+    }
+}
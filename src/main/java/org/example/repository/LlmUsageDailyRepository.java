@@ -0,0 +1,35 @@
+package org.example.repository;
+
+import org.example.model.LlmUsageDaily;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+@Repository
+public interface LlmUsageDailyRepository extends JpaRepository<LlmUsageDaily, LlmUsageDaily.UsageId> {
+
+    /**
+     * 将一次调用的用量原子地累加到某用户某天的台账行中 (不存在则插入)。
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO llm_usage_daily (user_id, usage_date, calls, prompt_tokens, output_tokens, cost, updated_at)
+            VALUES (:userId, :usageDate, 1, :promptTokens, :outputTokens, :cost, now())
+            ON CONFLICT (user_id, usage_date) DO UPDATE SET
+                calls = llm_usage_daily.calls + 1,
+                prompt_tokens = llm_usage_daily.prompt_tokens + EXCLUDED.prompt_tokens,
+                output_tokens = llm_usage_daily.output_tokens + EXCLUDED.output_tokens,
+                cost = llm_usage_daily.cost + EXCLUDED.cost,
+                updated_at = now()
+            """, nativeQuery = true)
+    void addUsage(@Param("userId") Long userId,
+                  @Param("usageDate") LocalDate usageDate,
+                  @Param("promptTokens") long promptTokens,
+                  @Param("outputTokens") long outputTokens,
+                  @Param("cost") BigDecimal cost);
+}
@@ -0,0 +1,75 @@
+package org.example.repository;
+
+import org.example.model.MoodDailyRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface MoodDailyRollupRepository extends JpaRepository<MoodDailyRollup, MoodDailyRollup.RollupId> {
+
+    List<MoodDailyRollup> findByUserIdAndLocalDateBetweenOrderByLocalDate(Long userId, LocalDate startDate, LocalDate endDate);
+
+    /**
+     * 将一组增量原子地合并到某用户某天的汇总行中 (不存在则插入)。
+     * <p>
+     * 使用 INSERT ... ON CONFLICT 在数据库端累加，避免并发写入同一天时的读-改-写竞争。
+     * triggerCounts 为 JSON 对象字符串，按触发器名称逐项相加。
+     * </p>
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO mood_daily_rollup (user_id, local_date, entry_count, very_bad_count, bad_count, neutral_count,
+                                           good_count, very_good_count, score_sum, min_score, max_score, trigger_counts, updated_at)
+            VALUES (:userId, :localDate, :entryCount, :veryBadCount, :badCount, :neutralCount,
+                    :goodCount, :veryGoodCount, :scoreSum, :minScore, :maxScore, CAST(:triggerCounts AS jsonb), now())
+            ON CONFLICT (user_id, local_date) DO UPDATE SET
+                entry_count = mood_daily_rollup.entry_count + EXCLUDED.entry_count,
+                very_bad_count = mood_daily_rollup.very_bad_count + EXCLUDED.very_bad_count,
+                bad_count = mood_daily_rollup.bad_count + EXCLUDED.bad_count,
+                neutral_count = mood_daily_rollup.neutral_count + EXCLUDED.neutral_count,
+                good_count = mood_daily_rollup.good_count + EXCLUDED.good_count,
+                very_good_count = mood_daily_rollup.very_good_count + EXCLUDED.very_good_count,
+                score_sum = mood_daily_rollup.score_sum + EXCLUDED.score_sum,
+                min_score = LEAST(mood_daily_rollup.min_score, EXCLUDED.min_score),
+                max_score = GREATEST(mood_daily_rollup.max_score, EXCLUDED.max_score),
+                trigger_counts = (
+                    SELECT COALESCE(jsonb_object_agg(merged.key, merged.total), CAST('{}' AS jsonb))
+                    FROM (
+                        SELECT counts.key, SUM(CAST(counts.value AS integer)) AS total
+                        FROM (
+                            SELECT * FROM jsonb_each_text(mood_daily_rollup.trigger_counts)
+                            UNION ALL
+                            SELECT * FROM jsonb_each_text(EXCLUDED.trigger_counts)
+                        ) counts
+                        GROUP BY counts.key
+                    ) merged
+                ),
+                updated_at = now()
+            """, nativeQuery = true)
+    void mergeDelta(@Param("userId") Long userId,
+                    @Param("localDate") LocalDate localDate,
+                    @Param("entryCount") int entryCount,
+                    @Param("veryBadCount") int veryBadCount,
+                    @Param("badCount") int badCount,
+                    @Param("neutralCount") int neutralCount,
+                    @Param("goodCount") int goodCount,
+                    @Param("veryGoodCount") int veryGoodCount,
+                    @Param("scoreSum") long scoreSum,
+                    @Param("minScore") int minScore,
+                    @Param("maxScore") int maxScore,
+                    @Param("triggerCounts") String triggerCounts);
+
+    @Modifying
+    @Query("DELETE FROM MoodDailyRollup r WHERE r.userId = :userId")
+    void deleteByUserId(@Param("userId") Long userId);
+
+    @Modifying
+    @Query("DELETE FROM MoodDailyRollup r WHERE r.userId = :userId AND r.localDate BETWEEN :startDate AND :endDate")
+    void deleteByUserIdAndLocalDateBetween(@Param("userId") Long userId, @Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+}
@@ -1,14 +1,105 @@
 package org.example.repository;
 
+import jakarta.persistence.QueryHint;
 import org.example.model.MoodEntry;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import java.time.LocalDateTime;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
-public interface MoodEntryRepository extends JpaRepository<MoodEntry, Long>, JpaSpecificationExecutor<MoodEntry> {
-    List<MoodEntry> findByUserIdAndRecordTimeBetween(Long userId, LocalDateTime start, LocalDateTime end);
+public interface MoodEntryRepository extends JpaRepository<MoodEntry, Long>, JpaSpecificationExecutor<MoodEntry>, MoodEntryRepositoryCustom {
+    /**
+     * 查询用户本地日期在 [startDate, endDate] 内的心情记录。
+     * <p>
+     * 按 (user_id, local_date) 索引做范围扫描；附加的 record_time 区间按最大时区偏移放宽，
+     * 以与 record_time 同类型 (timestamptz) 的参数表达，moods 按月分区时规划器可据此裁剪分区。
+     * </p>
+     */
+    default List<MoodEntry> findByUserIdAndLocalDateRange(Long userId, LocalDate startDate, LocalDate endDate) {
+        return findByUserIdAndLocalDateRange(userId, startDate, endDate,
+                MoodEntry.recordTimeLowerBound(startDate), MoodEntry.recordTimeUpperBound(endDate));
+    }
+
+    @Query("SELECT m FROM MoodEntry m WHERE m.user.id = :userId AND m.localDate BETWEEN :startDate AND :endDate "
+            + "AND m.recordTime >= :recordTimeFrom AND m.recordTime < :recordTimeTo")
+    List<MoodEntry> findByUserIdAndLocalDateRange(@Param("userId") Long userId,
+                                                  @Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate,
+                                                  @Param("recordTimeFrom") OffsetDateTime recordTimeFrom, @Param("recordTimeTo") OffsetDateTime recordTimeTo);
+
+    /**
+     * 一次性加载多条心情记录的触发器，每行为 [moodId, triggerId]，用于列表接口在内存中回填，避免 N+1 查询。
+     * 尚未经 dictionary-encode-mood-triggers.sql 迁移的旧触发器 (trigger_id 为 NULL) 不返回。
+     */
+    @Query("SELECT m.id, t.triggerId FROM MoodEntry m JOIN m.triggerRows t WHERE m.id IN :moodIds AND t.triggerId IS NOT NULL")
+    List<Object[]> findTriggersByMoodIds(@Param("moodIds") Collection<Long> moodIds);
+
+    /**
+     * 汇总重建使用的平铺数据，每行为 [id, localDate, emotionType]，按本地日期范围 [startDate, endDate] 查询。
+     */
+    default List<Object[]> findRollupRows(Long userId, LocalDate startDate, LocalDate endDate) {
+        return findRollupRows(userId, startDate, endDate, MoodEntry.recordTimeLowerBound(startDate), MoodEntry.recordTimeUpperBound(endDate));
+    }
+
+    @Query("SELECT m.id, m.localDate, m.emotionType FROM MoodEntry m WHERE m.user.id = :userId AND m.localDate BETWEEN :startDate AND :endDate "
+            + "AND m.recordTime >= :recordTimeFrom AND m.recordTime < :recordTimeTo")
+    List<Object[]> findRollupRows(@Param("userId") Long userId,
+                                  @Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate,
+                                  @Param("recordTimeFrom") OffsetDateTime recordTimeFrom, @Param("recordTimeTo") OffsetDateTime recordTimeTo);
+
+    /**
+     * 汇总重建使用的触发器数据，每行为 [moodId, triggerId]，范围与 {@link #findRollupRows(Long, LocalDate, LocalDate)} 相同。
+     */
+    default List<Object[]> findRollupTriggerRows(Long userId, LocalDate startDate, LocalDate endDate) {
+        return findRollupTriggerRows(userId, startDate, endDate, MoodEntry.recordTimeLowerBound(startDate), MoodEntry.recordTimeUpperBound(endDate));
+    }
+
+    @Query("SELECT m.id, t.triggerId FROM MoodEntry m JOIN m.triggerRows t WHERE m.user.id = :userId AND m.localDate BETWEEN :startDate AND :endDate "
+            + "AND m.recordTime >= :recordTimeFrom AND m.recordTime < :recordTimeTo AND t.triggerId IS NOT NULL")
+    List<Object[]> findRollupTriggerRows(@Param("userId") Long userId,
+                                         @Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate,
+                                         @Param("recordTimeFrom") OffsetDateTime recordTimeFrom, @Param("recordTimeTo") OffsetDateTime recordTimeTo);
+
+    @Query("SELECT MIN(m.localDate) FROM MoodEntry m WHERE m.user.id = :userId")
+    LocalDate findFirstLocalDate(@Param("userId") Long userId);
+
+    @Query("SELECT MAX(m.localDate) FROM MoodEntry m WHERE m.user.id = :userId")
+    LocalDate findLastLocalDate(@Param("userId") Long userId);
+
+    /**
+     * 以服务端游标流式读取用户的全部心情记录，用于导出。
+     * <p>
+     * 每行为 [id, emotionType, moodDescription, recordTime, createdAt, updatedAt, triggerId]，
+     * 同一条心情记录的多个触发器对应连续的多行 (无触发器时 triggerId 为 null)。
+     * 结果为标量投影，不进入持久化上下文；必须在只读事务中消费并关闭。
+     * </p>
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT m.id, m.emotionType, m.moodDescription, m.recordTime, m.createdAt, m.updatedAt, t.triggerId "
+            + "FROM MoodEntry m LEFT JOIN m.triggerRows t WHERE m.user.id = :userId ORDER BY m.recordTime, m.id")
+    Stream<Object[]> streamExportRows(@Param("userId") Long userId);
+
+    /**
+     * 流式读取用户全部心情的 [id, recordTime, emotionType, triggerId, localDate, localHour]，用于加载 {@code MoodHistory} 列式缓存。
+     * 无触发器的心情 triggerId 为 null，多个触发器的心情占多行。调用方需处于事务中并负责关闭 Stream。
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT m.id, m.recordTime, m.emotionType, t.triggerId, m.localDate, m.localHour "
+            + "FROM MoodEntry m LEFT JOIN m.triggerRows t WHERE m.user.id = :userId ORDER BY m.recordTime, m.id")
+    Stream<Object[]> streamHistoryRows(@Param("userId") Long userId);
 }
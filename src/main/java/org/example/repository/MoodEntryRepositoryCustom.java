@@ -0,0 +1,28 @@
+package org.example.repository;
+
+import org.example.dto.MoodResponse;
+import org.example.model.MoodEntry;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+
+/**
+ * 心情记录的自定义查询片段。
+ * <p>
+ * 列表接口的只读路径：直接投影为 {@link MoodResponse}，不加载受管理的 {@link MoodEntry} 或 User 实体。
+ * </p>
+ */
+public interface MoodEntryRepositoryCustom {
+
+    /**
+     * 按条件查询一页心情记录的平铺投影，返回结果中的 triggers 为空，需调用方批量回填。
+     *
+     * @param spec   过滤条件。
+     * @param sort   排序规则。
+     * @param offset 跳过的记录数，游标分页时为 0。
+     * @param limit  最多返回的记录数。
+     * @return 心情记录投影列表。
+     */
+    List<MoodResponse> findMoodResponses(Specification<MoodEntry> spec, Sort sort, long offset, int limit);
+}
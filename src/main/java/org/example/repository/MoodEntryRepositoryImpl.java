@@ -0,0 +1,49 @@
+package org.example.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.example.dto.MoodResponse;
+import org.example.model.MoodEntry;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+
+import java.util.List;
+
+public class MoodEntryRepositoryImpl implements MoodEntryRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<MoodResponse> findMoodResponses(Specification<MoodEntry> spec, Sort sort, long offset, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<MoodResponse> query = cb.createQuery(MoodResponse.class);
+        Root<MoodEntry> root = query.from(MoodEntry.class);
+
+        // user.id 直接读取外键列，不会关联 users 表
+        query.select(cb.construct(MoodResponse.class,
+                root.get("id"),
+                root.get("user").get("id"),
+                root.get("emotionType"),
+                root.get("moodDescription"),
+                root.get("recordTime"),
+                root.get("createdAt"),
+                root.get("updatedAt")));
+
+        Predicate predicate = spec.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.orderBy(QueryUtils.toOrders(sort, root, cb));
+
+        return entityManager.createQuery(query)
+                .setFirstResult((int) offset)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+}
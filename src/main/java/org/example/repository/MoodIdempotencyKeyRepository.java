@@ -0,0 +1,44 @@
+package org.example.repository;
+
+import org.example.model.MoodIdempotencyKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+
+@Repository
+public interface MoodIdempotencyKeyRepository extends JpaRepository<MoodIdempotencyKey, MoodIdempotencyKey.KeyId> {
+
+    /**
+     * 尝试占用幂等键，返回 1 表示占用成功，0 表示已被占用。
+     * <p>
+     * 另一个未提交的事务持有同一个键时，唯一约束会使本语句等待其结束：对方提交则返回 0，回滚则占用成功。
+     * 已过期 (created_at 早于 expiredBefore) 但尚未清理的键会被重新占用。
+     * </p>
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO mood_idempotency_keys (user_id, idempotency_key, request_hash, response_body, created_at)
+            VALUES (:userId, :key, :requestHash, NULL, now())
+            ON CONFLICT (user_id, idempotency_key) DO UPDATE SET
+                request_hash = EXCLUDED.request_hash,
+                response_body = NULL,
+                created_at = EXCLUDED.created_at
+            WHERE mood_idempotency_keys.created_at < :expiredBefore
+            """, nativeQuery = true)
+    int claim(@Param("userId") Long userId,
+              @Param("key") String key,
+              @Param("requestHash") String requestHash,
+              @Param("expiredBefore") OffsetDateTime expiredBefore);
+
+    @Modifying
+    @Query("UPDATE MoodIdempotencyKey k SET k.responseBody = :responseBody WHERE k.userId = :userId AND k.idempotencyKey = :key")
+    void saveResponse(@Param("userId") Long userId, @Param("key") String key, @Param("responseBody") String responseBody);
+
+    @Modifying
+    @Query("DELETE FROM MoodIdempotencyKey k WHERE k.createdAt < :expiredBefore")
+    int deleteExpired(@Param("expiredBefore") OffsetDateTime expiredBefore);
+}
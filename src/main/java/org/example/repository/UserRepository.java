@@ -2,8 +2,13 @@ package org.example.repository;
 
 import org.example.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -38,4 +43,36 @@ public interface UserRepository extends JpaRepository<User, Long> {
      * @return 一个包含查找到的 {@link User} 实体的 {@link Optional} 对象，如果找不到则为空。
      */
     Optional<User> findByEmail(String email);
-}
\ No newline at end of file
+
+    /**
+     * 查询所有用户的 ID。
+     * <p>
+     * 供后台批处理任务 (如情绪汇总重建) 遍历用户使用，避免加载完整的用户实体。
+     * </p>
+     *
+     * @return 所有用户 ID 的列表。
+     */
+    @Query("SELECT u.id FROM User u ORDER BY u.id")
+    List<Long> findAllIds();
+
+    /**
+     * 将用户的心情数据版本号原子地加一。
+     * <p>
+     * 在调用方已有事务时加入该事务，使版本号与心情记录的变化一起提交。
+     * </p>
+     *
+     * @param userId 用户ID。
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.moodDataVersion = u.moodDataVersion + 1 WHERE u.id = :userId")
+    void incrementMoodDataVersion(@Param("userId") Long userId);
+
+    /**
+     * 将所有用户的心情数据版本号加一，用于分区分离等影响所有用户的变化。
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.moodDataVersion = u.moodDataVersion + 1")
+    void incrementAllMoodDataVersions();
+}
@@ -0,0 +1,356 @@
+package org.example.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.dto.AIAnalysisRequest;
+import org.example.dto.AIAnalysisResponse;
+import org.example.dto.AnalysisJobResponse;
+import org.example.exception.AiServiceUnavailableException;
+import org.example.exception.AnalysisJobNotFoundException;
+import org.example.exception.AnalysisQueueFullException;
+import org.example.exception.GeminiApiException;
+import org.example.exception.InsufficientDataException;
+import org.example.model.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步生成 AI 分析报告。
+ * <p>
+ * 提交后立即返回任务，由有界线程池执行 {@link AnalysisReportService#generateAnalysis}，
+ * 不再在 Tomcat 线程上等待 Gemini 的往返与重试。队列满时拒绝提交 (503)，而不是无限堆积。
+ * 同一用户对相同请求 (补全默认值后) 的重复提交在任务未结束前返回同一个任务；
+ * 任务执行经过 {@link AnalysisRequestCoalescer}，与同时到达的相同同步请求共用一次生成；
+ * 任务结束后再次提交由 {@link AnalysisReportCache} 复用已保存的报告。
+ * 客户端可轮询任务状态，或订阅 SSE 在任务结束时收到推送。任务状态只保存在本实例内存中，保留
+ * {@code moodtrack.ai-jobs.retention} 后丢弃；报告本身已持久化，可通过 reportId 读取。
+ * 流式生成 ({@link #stream}) 使用同一个线程池，按报告部分推送 SSE 事件。
+ * 队列深度、等待时间与执行时间通过 Micrometer 暴露 (moodtrack.ai.jobs.*)。
+ * </p>
+ */
+@Slf4j
+@Service
+public class AnalysisJobService {
+
+    @Autowired
+    private AnalysisReportService analysisReportService;
+
+    @Autowired
+    private AnalysisRequestCoalescer analysisRequestCoalescer;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${moodtrack.ai-jobs.threads:2}")
+    private int threads;
+
+    @Value("${moodtrack.ai-jobs.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${moodtrack.ai-jobs.retention:1h}")
+    private Duration retention;
+
+    @Value("${moodtrack.ai-jobs.sse-timeout:2m}")
+    private Duration sseTimeout;
+
+    private ThreadPoolExecutor executor;
+
+    private Cache<String, AnalysisJob> jobs;
+
+    /** 未结束任务的去重键 -> 任务 */
+    private final Map<String, AnalysisJob> activeJobs = new ConcurrentHashMap<>();
+
+    private Timer waitTimer;
+
+    private Counter rejected;
+
+    @PostConstruct
+    void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ai-analysis-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        jobs = Caffeine.newBuilder().expireAfterWrite(retention).build();
+
+        Gauge.builder("moodtrack.ai.jobs.queue.depth", executor, e -> e.getQueue().size())
+                .description("AI analysis jobs waiting for a worker")
+                .register(meterRegistry);
+        Gauge.builder("moodtrack.ai.jobs.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("AI analysis jobs currently running")
+                .register(meterRegistry);
+        waitTimer = Timer.builder("moodtrack.ai.jobs.wait")
+                .description("Time AI analysis jobs spent queued before a worker picked them up")
+                .register(meterRegistry);
+        rejected = Counter.builder("moodtrack.ai.jobs.rejected")
+                .description("AI analysis jobs rejected because the queue was full")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * 提交分析任务；相同用户的相同请求已在排队或执行时返回该任务。
+     *
+     * @throws AnalysisQueueFullException 队列已满
+     */
+    public AnalysisJobResponse submit(AIAnalysisRequest request, User user) {
+        AIAnalysisRequest processedRequest = analysisReportService.processRequest(request, user.zoneId());
+        String dedupKey = analysisRequestCoalescer.key(processedRequest, user);
+        AnalysisJob job = new AnalysisJob(UUID.randomUUID().toString(), user.getId());
+        AnalysisJob existing = activeJobs.putIfAbsent(dedupKey, job);
+        if (existing != null) {
+            return existing.toResponse();
+        }
+        jobs.put(job.jobId, job);
+        try {
+            executor.execute(() -> run(job, dedupKey, processedRequest, user));
+        } catch (RejectedExecutionException e) {
+            activeJobs.remove(dedupKey, job);
+            jobs.invalidate(job.jobId);
+            rejected.increment();
+            throw new AnalysisQueueFullException("分析任务队列已满，请稍后重试");
+        }
+        return job.toResponse();
+    }
+
+    public AnalysisJobResponse getJob(String jobId, User user) {
+        return findJob(jobId, user).toResponse();
+    }
+
+    /**
+     * 订阅任务结束事件：任务已结束时立即推送结果并关闭连接，否则在结束时推送。
+     */
+    public SseEmitter subscribe(String jobId, User user) {
+        AnalysisJob job = findJob(jobId, user);
+        SseEmitter emitter = new SseEmitter(sseTimeout.toMillis());
+        if (!job.addEmitter(emitter)) {
+            send(emitter, job.toResponse());
+        } else {
+            emitter.onCompletion(() -> job.removeEmitter(emitter));
+            emitter.onTimeout(() -> job.removeEmitter(emitter));
+            emitter.onError(e -> job.removeEmitter(emitter));
+        }
+        return emitter;
+    }
+
+    private AnalysisJob findJob(String jobId, User user) {
+        AnalysisJob job = jobs.getIfPresent(jobId);
+        if (job == null || !job.userId.equals(user.getId())) {
+            throw new AnalysisJobNotFoundException("分析任务不存在: " + jobId);
+        }
+        return job;
+    }
+
+    private void run(AnalysisJob job, String dedupKey, AIAnalysisRequest request, User user) {
+        job.markRunning();
+        waitTimer.record(System.nanoTime() - job.submittedNanos, TimeUnit.NANOSECONDS);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        AnalysisJobResponse.ErrorInfo error = null;
+        try {
+            AIAnalysisResponse response = analysisRequestCoalescer.generateAnalysis(request, user);
+            job.finish(response, null);
+        } catch (RuntimeException e) {
+            error = errorInfo(e, "分析任务 " + job.jobId);
+            job.finish(null, error);
+        } finally {
+            activeJobs.remove(dedupKey, job);
+            // 重新写入以从结束时刻开始计算保留时间
+            jobs.put(job.jobId, job);
+            sample.stop(Timer.builder("moodtrack.ai.jobs.duration")
+                    .description("AI analysis job execution time")
+                    .tag("outcome", outcomeOf(error))
+                    .register(meterRegistry));
+        }
+        for (SseEmitter emitter : job.drainEmitters()) {
+            send(emitter, job.toResponse());
+        }
+    }
+
+    /**
+     * 流式生成报告：报告的各部分一经确定就作为同名 SSE 事件推送 (summary、patterns、recommendations、riskAssessment)，
+     * 最后推送 completed (完整报告，含 reportId) 或 failed。生成占用与异步任务相同的线程池，队列满时拒绝 (503)。
+     * 从请求到达到每个部分推送的时间记录在 moodtrack.ai.report.stream.time.to.section。
+     * 流式请求不与其他请求合并；客户端中途断开时报告仍会生成并保存。
+     *
+     * @throws AnalysisQueueFullException 队列已满
+     */
+    public SseEmitter stream(AIAnalysisRequest request, User user) {
+        long receivedNanos = System.nanoTime();
+        SseEmitter emitter = new SseEmitter(sseTimeout.toMillis());
+        try {
+            executor.execute(() -> runStream(request, user, emitter, receivedNanos));
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new AnalysisQueueFullException("分析任务队列已满，请稍后重试");
+        }
+        return emitter;
+    }
+
+    private void runStream(AIAnalysisRequest request, User user, SseEmitter emitter, long receivedNanos) {
+        waitTimer.record(System.nanoTime() - receivedNanos, TimeUnit.NANOSECONDS);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        AnalysisJobResponse.ErrorInfo error = null;
+        try {
+            AIAnalysisResponse response = analysisReportService.streamAnalysis(request, user, (section, data) -> {
+                sendEvent(emitter, section, data);
+                Timer.builder("moodtrack.ai.report.stream.time.to.section")
+                        .description("Time from a streaming analysis request to each report section being sent")
+                        .tag("section", section)
+                        .register(meterRegistry)
+                        .record(System.nanoTime() - receivedNanos, TimeUnit.NANOSECONDS);
+            });
+            sendEvent(emitter, "completed", response);
+        } catch (RuntimeException e) {
+            error = errorInfo(e, "流式分析");
+            sendEvent(emitter, "failed", error);
+        } finally {
+            emitter.complete();
+            sample.stop(Timer.builder("moodtrack.ai.jobs.duration")
+                    .description("AI analysis job execution time")
+                    .tag("outcome", outcomeOf(error))
+                    .register(meterRegistry));
+        }
+    }
+
+    private AnalysisJobResponse.ErrorInfo errorInfo(RuntimeException e, String context) {
+        if (e instanceof InsufficientDataException) {
+            return new AnalysisJobResponse.ErrorInfo("INSUFFICIENT_DATA", e.getMessage());
+        }
+        if (e instanceof AiServiceUnavailableException unavailable) {
+            return new AnalysisJobResponse.ErrorInfo(unavailable.getCode(), e.getMessage());
+        }
+        if (e instanceof GeminiApiException) {
+            log.warn("{} 调用 Gemini 失败: {}", context, e.getMessage());
+            return new AnalysisJobResponse.ErrorInfo("AI_SERVICE_ERROR", "AI分析服务暂时不可用");
+        }
+        log.error("{} 失败", context, e);
+        return new AnalysisJobResponse.ErrorInfo("ANALYSIS_FAILED", "AI分析服务暂时不可用");
+    }
+
+    private static String outcomeOf(AnalysisJobResponse.ErrorInfo error) {
+        if (error == null) {
+            return "success";
+        }
+        return switch (error.getCode()) {
+            case "INSUFFICIENT_DATA" -> "insufficient_data";
+            case "AI_CIRCUIT_OPEN", "AI_BULKHEAD_FULL" -> "rejected";
+            default -> "failure";
+        };
+    }
+
+    // 客户端已断开时忽略，生成继续进行
+    private void sendEvent(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+        } catch (IOException | IllegalStateException e) {
+            log.debug("SSE 客户端已断开: {}", e.getMessage());
+        }
+    }
+
+    private void send(SseEmitter emitter, AnalysisJobResponse response) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .name(response.getStatus() == AnalysisJobResponse.Status.SUCCEEDED ? "completed" : "failed")
+                    .data(response));
+            emitter.complete();
+        } catch (IOException | IllegalStateException e) {
+            // 客户端已断开
+            emitter.completeWithError(e);
+        }
+    }
+
+    /**
+     * 单个任务的可变状态，由任务自身加锁保护。
+     */
+    private static class AnalysisJob {
+        private final String jobId;
+        private final Long userId;
+        private final long submittedNanos = System.nanoTime();
+        private final LocalDateTime submittedAt = LocalDateTime.now(ZoneOffset.UTC);
+        private LocalDateTime startedAt;
+        private LocalDateTime finishedAt;
+        private AnalysisJobResponse.Status status = AnalysisJobResponse.Status.QUEUED;
+        private AIAnalysisResponse result;
+        private AnalysisJobResponse.ErrorInfo error;
+        private final List<SseEmitter> emitters = new ArrayList<>();
+
+        AnalysisJob(String jobId, Long userId) {
+            this.jobId = jobId;
+            this.userId = userId;
+        }
+
+        synchronized void markRunning() {
+            status = AnalysisJobResponse.Status.RUNNING;
+            startedAt = LocalDateTime.now(ZoneOffset.UTC);
+        }
+
+        synchronized void finish(AIAnalysisResponse result, AnalysisJobResponse.ErrorInfo error) {
+            this.result = result;
+            this.error = error;
+            status = error == null ? AnalysisJobResponse.Status.SUCCEEDED : AnalysisJobResponse.Status.FAILED;
+            finishedAt = LocalDateTime.now(ZoneOffset.UTC);
+        }
+
+        /** 任务已结束时返回 false，由调用方直接推送结果 */
+        synchronized boolean addEmitter(SseEmitter emitter) {
+            if (finishedAt != null) {
+                return false;
+            }
+            emitters.add(emitter);
+            return true;
+        }
+
+        synchronized void removeEmitter(SseEmitter emitter) {
+            emitters.remove(emitter);
+        }
+
+        synchronized List<SseEmitter> drainEmitters() {
+            List<SseEmitter> drained = new ArrayList<>(emitters);
+            emitters.clear();
+            return drained;
+        }
+
+        synchronized AnalysisJobResponse toResponse() {
+            return AnalysisJobResponse.builder()
+                    .jobId(jobId)
+                    .status(status)
+                    .submittedAt(submittedAt)
+                    .startedAt(startedAt)
+                    .finishedAt(finishedAt)
+                    .result(result)
+                    .error(error)
+                    .build();
+        }
+    }
+}
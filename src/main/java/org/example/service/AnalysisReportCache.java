@@ -0,0 +1,160 @@
+package org.example.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.example.dto.AIAnalysisRequest;
+import org.example.model.AiAnalysis;
+import org.example.repository.AiAnalysisRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Optional;
+
+/**
+ * AI 分析报告的结果缓存，相同输入不再重复调用 Gemini。
+ * <p>
+ * 缓存键是 (用户, 分析类型, 日期范围, 偏好, 生成方式, 数据指纹) 的 SHA-256，数据指纹是 {@link LocalAnalysisEngine}
+ * 对范围内心情记录的统计结果，也就是报告的全部输入；范围内的心情记录变化会改变统计结果，从而得到新的键，
+ * 旧结果自然不再命中，无需显式失效。
+ * 键保存在 ai_analysis.cache_key 中，进程内缓存键到 reportId 的映射，命中后经 {@code findByReportId} 读取已保存的报告；
+ * 进程内未命中时按 (user_id, cache_key) 索引查询，重启或多实例部署下同样有效。
+ * 命中/未命中次数与节省的 API 费用通过 Micrometer 暴露 (moodtrack.ai.report.cache.*)，每个请求只计一次；
+ * LLM 不可用后对离线报告的再次查找单独计入 moodtrack.ai.report.cache.fallback。
+ * </p>
+ */
+@Slf4j
+@Component
+public class AnalysisReportCache {
+
+    @Autowired
+    private AiAnalysisRepository aiAnalysisRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${moodtrack.ai-report-cache.ttl:7d}")
+    private Duration ttl;
+
+    @Value("${moodtrack.ai-report-cache.cache-size:10000}")
+    private long cacheSize;
+
+    private Cache<String, String> reportIdsByKey;
+
+    private Counter hits;
+
+    private Counter misses;
+
+    private Counter savedCost;
+
+    @PostConstruct
+    void init() {
+        reportIdsByKey = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, reportIdsByKey, "aiReportIdsByKey");
+        hits = Counter.builder("moodtrack.ai.report.cache.requests")
+                .tag("result", "hit")
+                .description("AI analysis requests answered from a stored report")
+                .register(meterRegistry);
+        misses = Counter.builder("moodtrack.ai.report.cache.requests")
+                .tag("result", "miss")
+                .description("AI analysis requests that called the LLM")
+                .register(meterRegistry);
+        savedCost = Counter.builder("moodtrack.ai.report.cache.saved.cost")
+                .baseUnit("usd")
+                .description("Estimated LLM API cost avoided by reusing stored reports")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 计算缓存键；dataAnalysis 应为生成报告时实际使用的统计结果。
+     *
+     * @param generationMode llm 或 offline，离线退回生成的报告不会被 LLM 请求复用
+     */
+    public String cacheKey(Long userId, AIAnalysisRequest request, String generationMode,
+                           GeminiAPIService.MoodDataAnalysis dataAnalysis) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder key = new StringBuilder()
+                    .append(userId).append('\n')
+                    .append(request.getAnalysisType().toUpperCase()).append('\n')
+                    .append(request.getDateRange().getStartDate()).append('\n')
+                    .append(request.getDateRange().getEndDate()).append('\n')
+                    .append(objectMapper.writeValueAsString(request.getPreferences())).append('\n')
+                    .append(generationMode).append('\n');
+            digest.update(key.toString().getBytes(StandardCharsets.UTF_8));
+            digest.update(objectMapper.writeValueAsBytes(dataAnalysis));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException("无法计算分析报告缓存键", e);
+        }
+    }
+
+    /**
+     * 查找相同输入生成过的报告，并记录命中/未命中。
+     */
+    public Optional<AiAnalysis> find(Long userId, String cacheKey) {
+        Optional<AiAnalysis> cached = lookup(userId, cacheKey);
+        if (cached.isPresent()) {
+            hits.increment();
+            if (cached.get().getApiCost() != null) {
+                savedCost.increment(cached.get().getApiCost().doubleValue());
+            }
+        } else {
+            misses.increment();
+        }
+        return cached;
+    }
+
+    /**
+     * LLM 不可用后查找相同输入的离线报告。请求已由 {@link #find} 计过一次，这里单独计数；离线报告没有 API 费用，不计入节省的费用。
+     */
+    public Optional<AiAnalysis> findOfflineFallback(Long userId, String cacheKey) {
+        Optional<AiAnalysis> cached = lookup(userId, cacheKey);
+        meterRegistry.counter("moodtrack.ai.report.cache.fallback", "result", cached.isPresent() ? "hit" : "miss").increment();
+        return cached;
+    }
+
+    /**
+     * 记录新生成的报告；cache_key 已随报告一起保存，这里只更新进程内映射。
+     */
+    public void put(String cacheKey, AiAnalysis analysis) {
+        reportIdsByKey.put(cacheKey, analysis.getReportId());
+    }
+
+    private Optional<AiAnalysis> lookup(Long userId, String cacheKey) {
+        String reportId = reportIdsByKey.getIfPresent(cacheKey);
+        if (reportId != null) {
+            Optional<AiAnalysis> analysis = aiAnalysisRepository.findByReportId(reportId)
+                    .filter(a -> a.getUserId().equals(userId));
+            if (analysis.isPresent()) {
+                return analysis;
+            }
+            // 报告所在事务回滚或已被删除
+            reportIdsByKey.invalidate(cacheKey);
+        }
+        Optional<AiAnalysis> stored = aiAnalysisRepository.findFirstByUserIdAndCacheKeyAndCreatedAtAfterOrderByIdDesc(
+                userId, cacheKey, LocalDateTime.now().minus(ttl));
+        stored.ifPresent(analysis -> reportIdsByKey.put(cacheKey, analysis.getReportId()));
+        return stored;
+    }
+}
@@ -1,32 +1,68 @@
 package org.example.service;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.example.dto.AIAnalysisRequest;
 import org.example.dto.AIAnalysisResponse;
+import org.example.dto.AnalysisHistoryCursor;
+import org.example.dto.AnalysisHistoryItem;
+import org.example.dto.AnalysisHistoryResponse;
+import org.example.dto.CursorPaginationInfo;
+import org.example.exception.AiServiceUnavailableException;
+import org.example.exception.GeminiApiException;
 import org.example.exception.InsufficientDataException;
+import org.example.exception.InvalidDateRangeException;
+import org.example.exception.ReportNotFoundException;
 import org.example.model.AiAnalysis;
-import org.example.model.MoodEntry;
+import org.example.model.AnalysisType;
 import org.example.model.User;
+import org.example.model.ai.AnalysisRecommendations;
+import org.example.model.ai.AnalysisSummary;
 import org.example.repository.AiAnalysisRepository;
-import org.example.repository.MoodEntryRepository;
+import org.example.repository.LlmUsageDailyRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.io.IOException;
 import java.math.BigDecimal;
+import java.time.DayOfWeek;
 import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.function.BiConsumer;
 
 @Service("analysisReportService")
-@Transactional
 @Slf4j
 public class AnalysisReportService {
 
+    private static final String LLM = "llm";
+
+    private static final String OFFLINE = "offline";
+
+    /** 流式生成时回调的报告部分名称，与 {@link AIAnalysisResponse.AnalysisResult} 的字段名一致 */
+    static final String SUMMARY = "summary";
+    static final String PATTERNS = "patterns";
+    static final String RECOMMENDATIONS = "recommendations";
+    static final String RISK_ASSESSMENT = "riskAssessment";
+
     @Autowired
-    private MoodEntryRepository moodEntryRepository;
+    private LocalAnalysisEngine localAnalysisEngine;
 
     @Autowired
     private AiAnalysisRepository aiAnalysisRepository;
@@ -34,59 +70,307 @@ public class AnalysisReportService {
     @Autowired
     private GeminiAPIService geminiAPIService;
 
+    @Autowired
+    private AnalysisReportCache analysisReportCache;
+
+    @Autowired
+    private LlmQuotaService llmQuotaService;
+
+    @Autowired
+    private LlmUsageDailyRepository llmUsageDailyRepository;
+
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${moodtrack.ai-report-cache.report-cache-size:1000}")
+    private long reportCacheSize;
+
+    /** 单次分析允许的最大天数，本地统计按范围天数分配数组 */
+    @Value("${moodtrack.ai-analysis.max-range-days:1096}")
+    private int maxRangeDays;
+
+    /** reportId -> 已保存的完整报告 */
+    private Cache<String, StoredReport> reportsById;
+
+    private record StoredReport(Long userId, AIAnalysisResponse response) {
+    }
+
+    /** 本地统计的结果、缓存键和命中的已保存报告 (未命中为 null) */
+    private record Lookup(GeminiAPIService.MoodDataAnalysis dataAnalysis, String cacheKey, AiAnalysis cached) {
+    }
+
+    private TransactionTemplate readOnlyTransaction;
+
+    private TransactionTemplate writeTransaction;
+
+    @PostConstruct
+    void init() {
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        writeTransaction = new TransactionTemplate(transactionManager);
+        reportsById = Caffeine.newBuilder().maximumSize(reportCacheSize).recordStats().build();
+        CaffeineCacheMetrics.monitor(meterRegistry, reportsById, "aiReportsById");
+    }
+
+    /**
+     * 生成分析报告。统计部分 (趋势、模式、触发器、风险) 由 {@link LocalAnalysisEngine} 本地计算；
+     * 关键洞察和建议由 LLM 撰写，mode=offline、超出 LLM 配额 ({@link LlmQuotaService}) 或 LLM 不可用 (熔断、限流、上游错误) 时
+     * 改用本地模板，已有相同输入的离线报告时直接返回它。LLM 调用的 token 用量和费用记入报告和 llm_usage_daily 台账。
+     * <p>
+     * 本地统计和缓存查找在一个短的只读事务中完成，报告和台账在另一个短事务中保存；LLM 调用 (含重试、对冲和流式输出) 期间
+     * 不开启事务，不占用数据库连接。调用方已有的事务会被挂起。
+     * </p>
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public AIAnalysisResponse generateAnalysis(AIAnalysisRequest request, User user) {
-        AIAnalysisRequest processedRequest = processRequest(request);
-        List<MoodEntry> moodData = getMoodData(user.getId(), processedRequest.getDateRange());
-        validateMoodData(moodData);
+        return generate(request, user, null);
+    }
+
+    /**
+     * 与 {@link #generateAnalysis} 相同，但报告的各部分一经确定就以 (名称, 内容) 回调 {@code onSection}：
+     * patterns 和 riskAssessment 在本地计算完成后立即回调，summary (含关键洞察) 和 recommendations
+     * 在 LLM 流式输出中对应字段完整到达时回调。LLM 中途失败而改用离线模板时，summary 和 recommendations 会以离线内容再回调一次，
+     * 以最后一次为准。命中已保存的报告时依次回调全部四个部分。报告仍在最后完整保存。
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public AIAnalysisResponse streamAnalysis(AIAnalysisRequest request, User user, BiConsumer<String, Object> onSection) {
+        return generate(request, user, onSection);
+    }
+
+    private AIAnalysisResponse generate(AIAnalysisRequest request, User user, BiConsumer<String, Object> onSection) {
+        AIAnalysisRequest processedRequest = processRequest(request, user.zoneId());
+        AIAnalysisRequest.DateRange dateRange = processedRequest.getDateRange();
+        boolean offline = OFFLINE.equals(processedRequest.getMode());
+        Lookup lookup = readOnlyTransaction.execute(status -> {
+            GeminiAPIService.MoodDataAnalysis analysis = localAnalysisEngine.analyze(user.getId(), dateRange.getStartDate(), dateRange.getEndDate());
+            validateMoodData(analysis);
+            // 相同输入且数据未变化时直接返回已保存的报告，不调用 LLM
+            String key = analysisReportCache.cacheKey(user.getId(), processedRequest, offline ? OFFLINE : LLM, analysis);
+            return new Lookup(analysis, key, analysisReportCache.find(user.getId(), key).orElse(null));
+        });
+        if (lookup.cached() != null) {
+            return replay(lookup.cached(), onSection);
+        }
+        GeminiAPIService.MoodDataAnalysis dataAnalysis = lookup.dataAnalysis();
+        String cacheKey = lookup.cacheKey();
+
+        if (onSection != null) {
+            onSection.accept(PATTERNS, dataAnalysis.getPatterns());
+            onSection.accept(RISK_ASSESSMENT, dataAnalysis.getRiskAssessment());
+        }
+        GeminiAPIService.Narrative narrative = null;
+        if (!offline) {
+            narrative = callLlm(user.getId(), processedRequest, dataAnalysis, onSection);
+            if (narrative == null) {
+                cacheKey = analysisReportCache.cacheKey(user.getId(), processedRequest, OFFLINE, dataAnalysis);
+                String offlineKey = cacheKey;
+                Optional<AiAnalysis> cached = readOnlyTransaction.execute(status -> analysisReportCache.findOfflineFallback(user.getId(), offlineKey));
+                if (cached.isPresent()) {
+                    return replay(cached.get(), onSection);
+                }
+            }
+        }
+        String generationMode = narrative == null ? OFFLINE : LLM;
+        if (narrative == null) {
+            narrative = new GeminiAPIService.Narrative(localAnalysisEngine.offlineInsights(dataAnalysis),
+                    localAnalysisEngine.offlineRecommendations(dataAnalysis));
+            if (onSection != null) {
+                onSection.accept(SUMMARY, summary(dataAnalysis, narrative.getKeyInsights()));
+                onSection.accept(RECOMMENDATIONS, narrative.getRecommendations());
+            }
+        }
 
-        GeminiAPIService.MoodDataAnalysis dataAnalysis = preprocessMoodData(moodData);
-        String aiResponseJson = geminiAPIService.generateAnalysis(dataAnalysis, processedRequest.getPreferences());
+        AIAnalysisResponse.AnalysisResult analysisResult = AIAnalysisResponse.AnalysisResult.builder()
+                .summary(summary(dataAnalysis, narrative.getKeyInsights()))
+                .patterns(dataAnalysis.getPatterns())
+                .recommendations(narrative.getRecommendations())
+                .riskAssessment(dataAnalysis.getRiskAssessment())
+                .build();
+        GeminiAPIService.TokenUsage usage = narrative.getUsage();
+        String savedKey = cacheKey;
+        AiAnalysis savedAnalysis = writeTransaction.execute(status -> {
+            AiAnalysis saved = saveAnalysisResult(user.getId(), processedRequest, analysisResult, dataAnalysis,
+                    generationMode, usage, savedKey);
+            if (usage != null) {
+                llmUsageDailyRepository.addUsage(user.getId(), LocalDate.now(ZoneOffset.UTC),
+                        usage.getPromptTokens(), usage.getOutputTokens(), usage.getCost());
+            }
+            return saved;
+        });
+        analysisReportCache.put(cacheKey, savedAnalysis);
+        return convertToResponse(savedAnalysis);
+    }
 
+    // 超出配额或 LLM 不可用时返回 null；成功时按实际用量结算配额
+    private GeminiAPIService.Narrative callLlm(Long userId, AIAnalysisRequest processedRequest,
+                                               GeminiAPIService.MoodDataAnalysis dataAnalysis, BiConsumer<String, Object> onSection) {
+        if (!llmQuotaService.tryAcquire(userId)) {
+            log.info("用户 {} 超出 LLM 配额，生成离线分析报告", userId);
+            return null;
+        }
+        GeminiAPIService.Narrative narrative;
         try {
-            AIAnalysisResponse.AnalysisResult analysisResult = objectMapper.readValue(aiResponseJson, AIAnalysisResponse.AnalysisResult.class);
-            AiAnalysis savedAnalysis = saveAnalysisResult(user.getId(), processedRequest, analysisResult, dataAnalysis);
-            return convertToResponse(savedAnalysis);
-        } catch (IOException e) {
-            log.error("Failed to parse AI response", e);
-            throw new RuntimeException("Failed to parse AI response", e);
+            narrative = onSection == null
+                    ? geminiAPIService.generateAnalysis(dataAnalysis, processedRequest.getPreferences(),
+                            usage -> recordDiscardedUsage(userId, usage))
+                    : geminiAPIService.streamAnalysis(dataAnalysis, processedRequest.getPreferences(),
+                            (field, value) -> forwardField(field, value, dataAnalysis, onSection));
+        } catch (AiServiceUnavailableException e) {
+            // 调用未发出
+            llmQuotaService.release(userId);
+            log.warn("LLM 不可用，生成离线分析报告: {}", e.getMessage());
+            return null;
+        } catch (GeminiApiException e) {
+            // 请求可能已被计费，保留预扣的配额
+            log.warn("LLM 不可用，生成离线分析报告: {}", e.getMessage());
+            return null;
         }
+        llmQuotaService.settle(userId, narrative.getUsage());
+        return narrative;
+    }
+
+    // 被丢弃的对冲请求同样计费，在它完成时 (通常已在报告保存之后) 计入配额和当天的用量台账
+    private void recordDiscardedUsage(Long userId, GeminiAPIService.TokenUsage usage) {
+        llmQuotaService.charge(userId, usage);
+        writeTransaction.executeWithoutResult(status -> llmUsageDailyRepository.addUsage(userId,
+                LocalDate.now(ZoneOffset.UTC), usage.getPromptTokens(), usage.getOutputTokens(), usage.getCost()));
     }
 
-    private AIAnalysisRequest processRequest(AIAnalysisRequest request) {
+    // 命中已保存的报告时依次回调全部四个部分
+    private AIAnalysisResponse replay(AiAnalysis analysis, BiConsumer<String, Object> onSection) {
+        AIAnalysisResponse response = convertToResponse(analysis);
+        if (onSection != null) {
+            AIAnalysisResponse.AnalysisResult result = response.getAnalysisResult();
+            onSection.accept(PATTERNS, result.getPatterns());
+            onSection.accept(RISK_ASSESSMENT, result.getRiskAssessment());
+            onSection.accept(SUMMARY, result.getSummary());
+            onSection.accept(RECOMMENDATIONS, result.getRecommendations());
+        }
+        return response;
+    }
+
+    // 模型输出中的 keyInsights 与本地统计组成 summary；字段内容无效时不回调，由最终解析报错并改用离线模板
+    private void forwardField(String field, JsonNode value, GeminiAPIService.MoodDataAnalysis dataAnalysis,
+                              BiConsumer<String, Object> onSection) {
+        try {
+            if ("keyInsights".equals(field)) {
+                List<String> keyInsights = objectMapper.convertValue(value, new TypeReference<>() {
+                });
+                onSection.accept(SUMMARY, summary(dataAnalysis, keyInsights));
+            } else if (RECOMMENDATIONS.equals(field)) {
+                onSection.accept(RECOMMENDATIONS, objectMapper.convertValue(value, AnalysisRecommendations.class));
+            }
+        } catch (IllegalArgumentException e) {
+            log.debug("忽略无效的流式字段 {}: {}", field, e.getMessage());
+        }
+    }
+
+    private static AnalysisSummary summary(GeminiAPIService.MoodDataAnalysis dataAnalysis, List<String> keyInsights) {
+        return AnalysisSummary.builder()
+                .overallTrend(dataAnalysis.getOverallTrend())
+                .averageScore(LocalAnalysisEngine.round(dataAnalysis.getAverageScore()))
+                .keyInsights(keyInsights)
+                .urgencyLevel(dataAnalysis.getUrgencyLevel())
+                .build();
+    }
+
+    /**
+     * 读取完整报告。报告生成后不再修改，按 reportId 缓存在进程内；不开启事务，命中时不占用数据库连接。
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public AIAnalysisResponse getReport(String reportId, User user) {
+        StoredReport report = reportsById.getIfPresent(reportId);
+        if (report == null) {
+            report = aiAnalysisRepository.findByReportId(reportId)
+                    .map(analysis -> new StoredReport(analysis.getUserId(), convertToResponse(analysis)))
+                    .orElse(null);
+            if (report != null) {
+                reportsById.put(reportId, report);
+            }
+        }
+        if (report == null || !report.userId().equals(user.getId())) {
+            throw new ReportNotFoundException("分析报告不存在: " + reportId);
+        }
+        return report.response();
+    }
+
+    /**
+     * 报告历史，按生成时间倒序键集分页，只返回头部字段。
+     *
+     * @param type 分析类型 (weekly/monthly/custom)，为 null 时返回全部
+     */
+    @Transactional(readOnly = true)
+    public AnalysisHistoryResponse getHistory(User user, String cursor, int limit, AnalysisType type) {
+        Long beforeId = cursor != null ? AnalysisHistoryCursor.decode(cursor).getId() : null;
+        // 多取一条用于判断是否还有下一页，不执行 COUNT 查询
+        List<AnalysisHistoryItem> reports = aiAnalysisRepository.findHistory(user.getId(), type, beforeId, limit + 1);
+        boolean hasNext = reports.size() > limit;
+        if (hasNext) {
+            reports = new ArrayList<>(reports.subList(0, limit));
+        }
+
+        CursorPaginationInfo cursorInfo = new CursorPaginationInfo();
+        cursorInfo.setPerPage(limit);
+        cursorInfo.setHasNext(hasNext);
+        if (hasNext) {
+            cursorInfo.setNextCursor(new AnalysisHistoryCursor(reports.get(reports.size() - 1).getId()).encode());
+        }
+
+        AnalysisHistoryResponse response = new AnalysisHistoryResponse();
+        response.setReports(reports);
+        response.setCursor(cursorInfo);
+        return response;
+    }
+
+    /**
+     * 补全默认的日期范围并校验；异步任务也以补全后的请求做去重。
+     * 不带日期的周报取用户时区内上一个完整的周一至周日，与 {@link WeeklyReportPregenerationJob} 预生成的范围相同；
+     * 其他缺省的结束日期为用户时区的今天。
+     */
+    AIAnalysisRequest processRequest(AIAnalysisRequest request, ZoneId zone) {
         if (request.getDateRange() == null) {
             request.setDateRange(new AIAnalysisRequest.DateRange());
         }
+        if (request.getDateRange().getStartDate() == null && request.getDateRange().getEndDate() == null
+                && "weekly".equalsIgnoreCase(request.getAnalysisType())) {
+            LocalDate weekStart = LocalDate.now(zone).with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).minusWeeks(1);
+            request.getDateRange().setStartDate(weekStart);
+            request.getDateRange().setEndDate(weekStart.plusDays(6));
+        }
         if (request.getDateRange().getEndDate() == null) {
-            request.getDateRange().setEndDate(LocalDate.now());
+            request.getDateRange().setEndDate(LocalDate.now(zone));
         }
         if (request.getDateRange().getStartDate() == null) {
-            request.getDateRange().setStartDate(request.getDateRange().getEndDate().minusDays(6));
+            LocalDate endDate = request.getDateRange().getEndDate();
+            request.getDateRange().setStartDate("monthly".equalsIgnoreCase(request.getAnalysisType())
+                    ? endDate.minusMonths(1).plusDays(1) : endDate.minusDays(6));
+        }
+        LocalDate startDate = request.getDateRange().getStartDate();
+        LocalDate endDate = request.getDateRange().getEndDate();
+        if (endDate.isBefore(startDate)) {
+            throw new InvalidDateRangeException("结束日期不能早于开始日期");
+        }
+        if (endDate.toEpochDay() - startDate.toEpochDay() + 1 > maxRangeDays) {
+            throw new InvalidDateRangeException("分析的日期范围不能超过 " + maxRangeDays + " 天");
         }
         return request;
     }
 
-    private List<MoodEntry> getMoodData(Long userId, AIAnalysisRequest.DateRange dateRange) {
-        return moodEntryRepository.findByUserIdAndRecordTimeBetween(userId, dateRange.getStartDate().atStartOfDay(), dateRange.getEndDate().plusDays(1).atStartOfDay());
-    }
-
-    private void validateMoodData(List<MoodEntry> moodData) {
-        if (moodData.size() < 3) {
-            throw new InsufficientDataException("需要至少3天的情绪记录数据才能生成分析报告", 3, moodData.size());
+    private void validateMoodData(GeminiAPIService.MoodDataAnalysis dataAnalysis) {
+        if (dataAnalysis.getTotalEntries() < 3) {
+            throw new InsufficientDataException("需要至少3天的情绪记录数据才能生成分析报告", 3, dataAnalysis.getTotalEntries());
         }
     }
 
-    private GeminiAPIService.MoodDataAnalysis preprocessMoodData(List<MoodEntry> moodData) {
-        double averageScore = moodData.stream().mapToInt(entry -> entry.getEmotionType().ordinal()).average().orElse(0.0);
-        return GeminiAPIService.MoodDataAnalysis.builder()
-                .totalEntries(moodData.size())
-                .averageScore(averageScore)
-                .build();
-    }
-
-    private AiAnalysis saveAnalysisResult(Long userId, AIAnalysisRequest request, AIAnalysisResponse.AnalysisResult result, GeminiAPIService.MoodDataAnalysis dataAnalysis) {
+    private AiAnalysis saveAnalysisResult(Long userId, AIAnalysisRequest request, AIAnalysisResponse.AnalysisResult result,
+                                          GeminiAPIService.MoodDataAnalysis dataAnalysis, String generationMode,
+                                          GeminiAPIService.TokenUsage usage, String cacheKey) {
         AiAnalysis analysis = AiAnalysis.builder()
                 .userId(userId)
                 .reportId(UUID.randomUUID().toString())
@@ -98,8 +382,12 @@ public class AnalysisReportService {
                 .recommendationsData(result.getRecommendations())
                 .riskAssessmentData(result.getRiskAssessment())
                 .dataPoints(dataAnalysis.getTotalEntries())
-                .confidenceScore(new BigDecimal("0.85")) // Mock value
-                .apiCost(new BigDecimal("0.024")) // Mock value
+                .confidenceScore(localAnalysisEngine.confidence(dataAnalysis))
+                .apiCost(usage != null ? usage.getCost() : LLM.equals(generationMode) ? null : BigDecimal.ZERO)
+                .promptTokens(usage != null ? usage.getPromptTokens() : null)
+                .outputTokens(usage != null ? usage.getOutputTokens() : null)
+                .generationMode(generationMode)
+                .cacheKey(cacheKey)
                 .build();
         return aiAnalysisRepository.save(analysis);
     }
@@ -116,6 +404,7 @@ public class AnalysisReportService {
                 .dataPoints(analysis.getDataPoints())
                 .analysisConfidence(analysis.getConfidenceScore())
                 .apiCost(analysis.getApiCost())
+                .generationMode(analysis.getGenerationMode())
                 .build();
 
         return AIAnalysisResponse.builder()
@@ -0,0 +1,119 @@
+package org.example.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.example.dto.AIAnalysisRequest;
+import org.example.dto.AIAnalysisResponse;
+import org.example.exception.AiServiceUnavailableException;
+import org.example.model.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 合并并发的相同分析请求 (single-flight)。
+ * <p>
+ * 以用户和补全默认值后的请求 (类型、日期范围、偏好、模式) 为键：第一个到达的请求在调用线程上执行
+ * {@link AnalysisReportService#generateAnalysis}，执行期间到达的相同请求等待它的结果，
+ * 得到同一份报告 (同一个 reportId)，失败时抛出同一个异常。等待超过 {@code coalesce-wait} 时返回 503，
+ * 而不是再生成一份；结果不在本类中保留，执行结束后的请求 (包括超时后的重试) 由 {@link AnalysisReportCache} 复用已保存的报告。
+ * 只合并本实例内的请求；合并的次数记录在 moodtrack.ai.report.coalesced。
+ * </p>
+ */
+@Component
+public class AnalysisRequestCoalescer {
+
+    static final String REPORT_PENDING = "AI_REPORT_PENDING";
+
+    private static final Duration RETRY_AFTER = Duration.ofSeconds(5);
+
+    @Autowired
+    private AnalysisReportService analysisReportService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${moodtrack.ai-analysis.coalesce-wait:60s}")
+    private Duration coalesceWait;
+
+    private final Map<String, CompletableFuture<AIAnalysisResponse>> inFlight = new ConcurrentHashMap<>();
+
+    private Counter coalesced;
+
+    @PostConstruct
+    void init() {
+        coalesced = Counter.builder("moodtrack.ai.report.coalesced")
+                .description("Analysis requests that joined an identical in-flight request instead of generating a report")
+                .register(meterRegistry);
+        Gauge.builder("moodtrack.ai.report.in.flight", inFlight, Map::size)
+                .description("Distinct analysis requests currently being generated")
+                .register(meterRegistry);
+    }
+
+    public AIAnalysisResponse generateAnalysis(AIAnalysisRequest request, User user) {
+        AIAnalysisRequest processedRequest = analysisReportService.processRequest(request, user.zoneId());
+        String key = key(processedRequest, user);
+        CompletableFuture<AIAnalysisResponse> future = new CompletableFuture<>();
+        CompletableFuture<AIAnalysisResponse> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalesced.increment();
+            return await(existing, coalesceWait);
+        }
+        try {
+            AIAnalysisResponse response = analysisReportService.generateAnalysis(processedRequest, user);
+            future.complete(response);
+            return response;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * 请求的合并键，异步任务也以它去重。
+     */
+    String key(AIAnalysisRequest processedRequest, User user) {
+        try {
+            return user.getId() + ":" + objectMapper.writeValueAsString(processedRequest);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("无法序列化分析请求", e);
+        }
+    }
+
+    // 与执行者抛出相同的异常，使全局异常处理返回相同的错误
+    private static AIAnalysisResponse await(CompletableFuture<AIAnalysisResponse> future, Duration timeout) {
+        try {
+            return future.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new AiServiceUnavailableException(REPORT_PENDING, "相同的分析请求仍在生成，请稍后重试", RETRY_AFTER);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AiServiceUnavailableException(REPORT_PENDING, "等待分析结果时被中断", RETRY_AFTER);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package org.example.service;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * 基于计数滑动窗口的熔断器。
+ * <p>
+ * CLOSED：放行所有调用，记录最近 {@code windowSize} 次结果；样本数达到 {@code minimumCalls}
+ * 且失败率不低于阈值时转为 OPEN。OPEN：直接拒绝，经过 {@code openDuration} 后转为 HALF_OPEN。
+ * HALF_OPEN：只放行 {@code halfOpenCalls} 次试探调用，全部成功则回到 CLOSED，任一失败则重新 OPEN。
+ * 每次获得许可的调用必须以 {@link #onSuccess()}、{@link #onFailure()} 或 {@link #onIgnored()} 之一结束。
+ * </p>
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openNanos;
+    private final int halfOpenCalls;
+    private final LongSupplier nanoTime;
+
+    /** 最近的调用结果，true 为失败 */
+    private final boolean[] window;
+    private int windowCount;
+    private int windowNext;
+    private int windowFailures;
+
+    private State state = State.CLOSED;
+    private long openedAtNanos;
+    private int halfOpenPermitted;
+    private int halfOpenSucceeded;
+
+    /**
+     * @param failureRateThreshold 失败率阈值 (百分比，0-100)
+     */
+    public CircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold,
+                          Duration openDuration, int halfOpenCalls, LongSupplier nanoTime) {
+        this.windowSize = windowSize;
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.halfOpenCalls = halfOpenCalls;
+        this.nanoTime = nanoTime;
+        this.window = new boolean[windowSize];
+    }
+
+    /**
+     * 申请一次调用许可；返回 false 时调用方应直接失败。
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (nanoTime.getAsLong() - openedAtNanos < openNanos) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            halfOpenPermitted = 0;
+            halfOpenSucceeded = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermitted >= halfOpenCalls) {
+                return false;
+            }
+            halfOpenPermitted++;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            if (++halfOpenSucceeded >= halfOpenCalls) {
+                state = State.CLOSED;
+                resetWindow();
+            }
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (windowCount >= minimumCalls && windowFailures * 100.0 / windowCount >= failureRateThreshold) {
+                open();
+            }
+        }
+    }
+
+    /**
+     * 调用结束但结果不计入失败率 (例如请求本身无效)，只归还半开状态下的试探名额。
+     */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN && halfOpenPermitted > halfOpenSucceeded) {
+            halfOpenPermitted--;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * OPEN 状态下距离允许试探调用的剩余时间，其他状态为 0。
+     */
+    public synchronized Duration remainingOpenDuration() {
+        if (state != State.OPEN) {
+            return Duration.ZERO;
+        }
+        return Duration.ofNanos(Math.max(0, openNanos - (nanoTime.getAsLong() - openedAtNanos)));
+    }
+
+    private void record(boolean failure) {
+        if (windowCount == windowSize) {
+            if (window[windowNext]) {
+                windowFailures--;
+            }
+        } else {
+            windowCount++;
+        }
+        window[windowNext] = failure;
+        if (failure) {
+            windowFailures++;
+        }
+        windowNext = (windowNext + 1) % windowSize;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAtNanos = nanoTime.getAsLong();
+        resetWindow();
+    }
+
+    private void resetWindow() {
+        windowCount = 0;
+        windowNext = 0;
+        windowFailures = 0;
+    }
+}
@@ -1,10 +1,31 @@
 package org.example.service;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.example.dto.AIAnalysisRequest;
+import org.example.exception.AiServiceUnavailableException;
+import org.example.exception.GeminiApiException;
+import org.example.exception.GeminiTransientException;
+import org.example.model.ai.AnalysisPatterns;
+import org.example.model.ai.AnalysisRecommendations;
+import org.example.model.ai.RiskAssessment;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
@@ -13,113 +34,653 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.retry.annotation.Backoff;
 import org.springframework.retry.annotation.Retryable;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @Service
 @Slf4j
 public class GeminiAPIService {
 
+    private static final String CIRCUIT_OPEN = "AI_CIRCUIT_OPEN";
+
     @Value("#{systemEnvironment['GEMINI_API_KEY']}")
     private String apiKey;
 
-    @Value("https://generativelanguage.googleapis.com/v1beta/models/gemini-2.0-flash-lite:generateContent")
-    private String apiUrl;
+    /** 模型由 {@link GeminiModelRouter} 按请求选择，请求地址为 {base-url}/{model}:generateContent */
+    @Value("${moodtrack.gemini.base-url:https://generativelanguage.googleapis.com/v1beta/models}")
+    private String baseUrl;
+
+    // 带连接池和超时的专用客户端，见 GeminiClientConfig
+    @Autowired
+    @Qualifier("geminiRestTemplate")
+    private RestTemplate restTemplate;
+
+    @Value("${moodtrack.gemini.circuit.sliding-window-size:20}")
+    private int slidingWindowSize;
+
+    @Value("${moodtrack.gemini.circuit.minimum-calls:10}")
+    private int minimumCalls;
+
+    @Value("${moodtrack.gemini.circuit.failure-rate-threshold:50}")
+    private double failureRateThreshold;
+
+    @Value("${moodtrack.gemini.circuit.open-duration:30s}")
+    private Duration openDuration;
+
+    @Value("${moodtrack.gemini.circuit.half-open-calls:3}")
+    private int halfOpenCalls;
+
+    @Value("${moodtrack.gemini.bulkhead.max-concurrent-calls:8}")
+    private int maxConcurrentCalls;
+
+    @Value("${moodtrack.gemini.bulkhead.max-wait:0ms}")
+    private Duration bulkheadMaxWait;
+
+    /**
+     * 每百万输入 / 输出 token 的价格 (美元)，用于计算每次调用的实际费用；
+     * 单个模型可以用 moodtrack.gemini.pricing.{model}.input-per-million / output-per-million 覆盖
+     */
+    @Value("${moodtrack.gemini.pricing.input-per-million:0.075}")
+    private BigDecimal inputPricePerMillion;
+
+    @Value("${moodtrack.gemini.pricing.output-per-million:0.30}")
+    private BigDecimal outputPricePerMillion;
+
+    @Value("${moodtrack.gemini.hedge.enabled:true}")
+    private boolean hedgeEnabled;
+
+    /** 对冲延迟取该模型近期成功调用耗时的这个分位数 */
+    @Value("${moodtrack.gemini.hedge.percentile:0.95}")
+    private double hedgePercentile;
+
+    /** 样本不足 min-samples 或近期没有样本时使用的对冲延迟 */
+    @Value("${moodtrack.gemini.hedge.initial-delay:5s}")
+    private Duration hedgeInitialDelay;
+
+    @Value("${moodtrack.gemini.hedge.min-delay:500ms}")
+    private Duration hedgeMinDelay;
+
+    @Value("${moodtrack.gemini.hedge.min-samples:20}")
+    private long hedgeMinSamples;
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    /** 分位数只统计最近这段时间内的样本 */
+    @Value("${moodtrack.gemini.hedge.latency-window:5m}")
+    private Duration latencyWindow;
 
-    @Retryable(value = {Exception.class}, maxAttempts = 3, backoff = @Backoff(delay = 1000))
-    public String generateAnalysis(MoodDataAnalysis dataAnalysis, AIAnalysisRequest.AnalysisPreferences preferences) {
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private GeminiModelRouter modelRouter;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PromptFeatureSummarizer promptFeatureSummarizer;
+
+    /** 每个模型一个熔断器，某个模型熔断时仍可改用链中的其他模型 */
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    /** 每个模型成功调用的耗时，决定对冲延迟 */
+    private final Map<String, Timer> latencies = new ConcurrentHashMap<>();
+
+    private Semaphore bulkhead;
+
+    /** 执行可对冲的调用，调用线程等待先成功的一个 */
+    private ThreadPoolExecutor hedgeExecutor;
+
+    @PostConstruct
+    void init() {
+        bulkhead = new Semaphore(maxConcurrentCalls);
+        Gauge.builder("moodtrack.gemini.bulkhead.in.flight", bulkhead, b -> maxConcurrentCalls - b.availablePermits())
+                .description("Gemini calls currently in flight")
+                .register(meterRegistry);
+        // 进行中的尝试 (含对冲) 受并发隔离限制，线程数不必超过许可数的两倍；满时不对冲，在调用线程上直接执行
+        AtomicInteger threadCount = new AtomicInteger();
+        hedgeExecutor = new ThreadPoolExecutor(0, 2 * maxConcurrentCalls, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "gemini-call-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        hedgeExecutor.shutdownNow();
+    }
+
+    /**
+     * 调用 Gemini 生成分析。
+     * <p>
+     * 模型按 {@link GeminiModelRouter} 选出的顺序尝试，前一个模型失败 (熔断打开或 {@link GeminiApiException}) 时改用下一个，
+     * 并发隔离已满时直接失败。对单个模型的调用在等待超过该模型近期耗时的分位数 (moodtrack.gemini.hedge.percentile) 后
+     * 再发出一次相同的请求 (对冲)，取先成功返回的结果；较慢的一次不会被取消，同样计费，它成功返回时 (通常在本方法返回之后)
+     * 在对冲线程上以其用量回调 {@code onDiscardedUsage}，结果被丢弃。
+     * 每次尝试先经过该模型的熔断器和并发隔离：熔断打开或并发已满时立即抛出 {@link AiServiceUnavailableException}，不占用等待时间。
+     * 整条链失败且最后的失败是暂时性的 ({@link GeminiTransientException}：5xx、408、网络错误、超时和其他读取响应失败) 时，以带随机抖动的指数退避重试；
+     * 4xx (包括 429 配额错误) 不重试。5xx、408、429、网络错误和读取响应失败计入熔断失败率，其他 4xx 说明上游正常，不计入。
+     * 返回的叙述带有响应 usageMetadata 中的 token 用量和按所用模型价格计算的费用。
+     * </p>
+     */
+    @Retryable(retryFor = GeminiTransientException.class, maxAttempts = 3,
+            backoff = @Backoff(delay = 1000, multiplier = 2, maxDelay = 4000, random = true))
+    public Narrative generateAnalysis(MoodDataAnalysis dataAnalysis, AIAnalysisRequest.AnalysisPreferences preferences,
+                                      Consumer<TokenUsage> onDiscardedUsage) {
+        String prompt = buildAnalysisPrompt(dataAnalysis, preferences);
+        List<String> models = modelRouter.route(preferences.getDepth(), PromptFeatureSummarizer.estimateTokens(prompt));
+        return withFallback(models, () -> true, model -> {
+            JsonNode response = readResponse(hedgedCall(model, () -> callGemini(model, prompt),
+                    body -> reportDiscardedUsage(model, body, onDiscardedUsage)));
+            Narrative narrative = parseNarrative(text(response));
+            narrative.setUsage(usage(model, response.path("usageMetadata")));
+            return narrative;
+        });
+    }
+
+    /**
+     * 以流式接口 (streamGenerateContent, SSE) 调用 Gemini，模型输出的 JSON 中每个顶层字段完整到达时
+     * 立即以字段名和值回调 {@code onField}，全部到达后返回解析出的叙述。
+     * <p>
+     * 模型选择、熔断、并发隔离和失败分类与 {@link #generateAnalysis} 相同；部分输出已交给调用方后无法透明地重来，
+     * 因此不重试也不对冲，只在还没有回调任何字段时改用链中的下一个模型。
+     * token 用量取自最后一个带 usageMetadata 的数据块 (累计值)。
+     * </p>
+     */
+    public Narrative streamAnalysis(MoodDataAnalysis dataAnalysis, AIAnalysisRequest.AnalysisPreferences preferences,
+                                    BiConsumer<String, JsonNode> onField) {
+        String prompt = buildAnalysisPrompt(dataAnalysis, preferences);
+        List<String> models = modelRouter.route(preferences.getDepth(), PromptFeatureSummarizer.estimateTokens(prompt));
+        AtomicBoolean forwarded = new AtomicBoolean();
+        BiConsumer<String, JsonNode> forwarding = (name, value) -> {
+            forwarded.set(true);
+            onField.accept(name, value);
+        };
+        return withFallback(models, () -> !forwarded.get(), model -> {
+            StreamedOutput output = guardedCall(model, () -> streamGemini(model, prompt, forwarding));
+            Narrative narrative = parseNarrative(output.text());
+            narrative.setUsage(output.usage());
+            return narrative;
+        });
+    }
+
+    /**
+     * 按顺序对每个模型执行 {@code attempt}，返回第一个成功的结果。模型熔断打开或调用失败且 {@code canFallBack} 为真时改用下一个模型；
+     * 并发隔离已满对所有模型相同，直接抛出。
+     */
+    private Narrative withFallback(List<String> models, BooleanSupplier canFallBack, Function<String, Narrative> attempt) {
+        for (int i = 0; ; i++) {
+            String model = models.get(i);
+            RuntimeException failure;
+            try {
+                return attempt.apply(model);
+            } catch (AiServiceUnavailableException e) {
+                if (!CIRCUIT_OPEN.equals(e.getCode())) {
+                    throw e;
+                }
+                failure = e;
+            } catch (GeminiApiException e) {
+                failure = e;
+            }
+            if (i + 1 >= models.size() || !canFallBack.getAsBoolean()) {
+                throw failure;
+            }
+            log.warn("Gemini 模型 {} 不可用 ({})，改用 {}", model, failure.getMessage(), models.get(i + 1));
+            meterRegistry.counter("moodtrack.gemini.model.fallback", "from", model, "to", models.get(i + 1)).increment();
+        }
+    }
+
+    /**
+     * 在对冲线程上执行一次调用；超过对冲延迟仍未返回时再发出一次，返回先成功的结果，两次都失败时抛出后失败的异常。
+     * 线程池已满时不对冲，在调用线程上直接执行。没有被采用的成功响应交给 {@code onDiscarded}。
+     */
+    private String hedgedCall(String model, Supplier<String> call, Consumer<String> onDiscarded) {
+        Supplier<String> attempt = () -> timedCall(model, call);
+        if (!hedgeEnabled) {
+            return attempt.get();
+        }
+        CompletableFuture<String> primary;
+        try {
+            primary = CompletableFuture.supplyAsync(attempt, hedgeExecutor);
+        } catch (RejectedExecutionException e) {
+            return attempt.get();
+        }
         try {
-            String prompt = buildAnalysisPrompt(dataAnalysis, preferences);
+            return primary.get(hedgeDelay(model).toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // 超过对冲延迟，发出第二次请求
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GeminiApiException("等待 Gemini 响应时被中断", e);
+        }
 
-            String requestBody = String.format(
-                    "{\"contents\": [{\"parts\": [{\"text\": \"%s\"}]}]}",
-                    prompt.replace("\"", "\\\"")
-            );
+        CompletableFuture<String> hedge;
+        try {
+            hedge = CompletableFuture.supplyAsync(attempt, hedgeExecutor);
+        } catch (RejectedExecutionException e) {
+            return await(primary);
+        }
+        meterRegistry.counter("moodtrack.gemini.hedge", "model", model, "result", "fired").increment();
+        CompletableFuture<String> winner = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(2);
+        primary.whenComplete((result, error) -> {
+            if (!complete(winner, pending, result, error) && error == null) {
+                onDiscarded.accept(result);
+            }
+        });
+        hedge.whenComplete((result, error) -> {
+            if (complete(winner, pending, result, error)) {
+                meterRegistry.counter("moodtrack.gemini.hedge", "model", model, "result", "won").increment();
+            } else if (error == null) {
+                onDiscarded.accept(result);
+            }
+        });
+        return await(winner);
+    }
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
+    // 成功的结果立即作为最终结果；两次都失败时以后失败的异常结束。返回是否由这次完成了最终结果
+    private static boolean complete(CompletableFuture<String> winner, AtomicInteger pending, String result, Throwable error) {
+        if (error == null) {
+            return winner.complete(result);
+        }
+        return pending.decrementAndGet() == 0 && winner.completeExceptionally(error);
+    }
+
+    // 被丢弃的对冲响应同样计费，取出其用量交给调用方；在对冲线程上执行，失败只记录日志
+    private void reportDiscardedUsage(String model, String body, Consumer<TokenUsage> onDiscardedUsage) {
+        try {
+            TokenUsage usage = usage(model, readResponse(body).path("usageMetadata"));
+            if (usage != null) {
+                onDiscardedUsage.accept(usage);
+            }
+        } catch (RuntimeException e) {
+            log.warn("无法记录模型 {} 被丢弃的对冲响应的用量: {}", model, e.getMessage());
+        }
+    }
 
-            HttpEntity<String> httpEntity = new HttpEntity<>(requestBody, headers);
+    /**
+     * 对冲延迟：该模型最近 latency-window 内成功调用耗时的 percentile 分位数，不低于 min-delay；
+     * 累计样本不足 min-samples 或窗口内没有样本时为 initial-delay。
+     */
+    Duration hedgeDelay(String model) {
+        Timer timer = latency(model);
+        if (timer.count() < hedgeMinSamples) {
+            return hedgeInitialDelay;
+        }
+        ValueAtPercentile[] percentiles = timer.takeSnapshot().percentileValues();
+        long nanos = percentiles.length == 0 ? 0 : (long) percentiles[0].value(TimeUnit.NANOSECONDS);
+        if (nanos <= 0) {
+            return hedgeInitialDelay;
+        }
+        Duration delay = Duration.ofNanos(nanos);
+        return delay.compareTo(hedgeMinDelay) < 0 ? hedgeMinDelay : delay;
+    }
+
+    // 只记录成功调用的耗时；对冲中较慢的一次完成后同样计入，避免分位数只反映较快的一半
+    private String timedCall(String model, Supplier<String> call) {
+        long startNanos = System.nanoTime();
+        String result = guardedCall(model, call);
+        latency(model).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        return result;
+    }
+
+    private Timer latency(String model) {
+        return latencies.computeIfAbsent(model, m -> Timer.builder("moodtrack.gemini.model.latency")
+                .description("Latency of successful Gemini calls per model")
+                .tag("model", m)
+                .publishPercentiles(hedgePercentile)
+                .distributionStatisticExpiry(latencyWindow)
+                .register(meterRegistry));
+    }
+
+    private CircuitBreaker circuitBreaker(String model) {
+        return circuitBreakers.computeIfAbsent(model, m -> {
+            CircuitBreaker breaker = new CircuitBreaker(slidingWindowSize, minimumCalls, failureRateThreshold,
+                    openDuration, halfOpenCalls, System::nanoTime);
+            Gauge.builder("moodtrack.gemini.circuit.state", breaker, b -> b.getState().ordinal())
+                    .description("Gemini circuit breaker state: 0 closed, 1 open, 2 half-open")
+                    .tag("model", m)
+                    .register(meterRegistry);
+            return breaker;
+        });
+    }
 
-            String url = apiUrl + "?key=" + apiKey;
+    private static RuntimeException unwrap(Throwable cause) {
+        if (cause instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        return new GeminiApiException("Gemini 调用失败", cause);
+    }
 
-            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.POST, httpEntity, String.class);
+    private static String await(CompletableFuture<String> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GeminiApiException("等待 Gemini 响应时被中断", e);
+        }
+    }
 
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                return response.getBody();
+    /**
+     * 每次尝试先经过该模型的熔断器和并发隔离，再按响应分类记录熔断结果。
+     */
+    private <T> T guardedCall(String model, Supplier<T> call) {
+        CircuitBreaker circuitBreaker = circuitBreaker(model);
+        if (!circuitBreaker.tryAcquirePermission()) {
+            reject("circuit_open");
+            throw new AiServiceUnavailableException(CIRCUIT_OPEN, "AI分析服务暂时不可用，请稍后重试",
+                    circuitBreaker.remainingOpenDuration());
+        }
+        if (!acquireBulkhead()) {
+            circuitBreaker.onIgnored();
+            reject("bulkhead_full");
+            throw new AiServiceUnavailableException("AI_BULKHEAD_FULL", "AI分析请求过多，请稍后重试", Duration.ofSeconds(1));
+        }
+        try {
+            T result = call.get();
+            circuitBreaker.onSuccess();
+            return result;
+        } catch (HttpStatusCodeException e) {
+            int status = e.getStatusCode().value();
+            log.warn("Gemini API调用失败: {} - {}", status, e.getResponseBodyAsString());
+            if (e.getStatusCode().is5xxServerError() || status == 408) {
+                circuitBreaker.onFailure();
+                throw new GeminiTransientException("Gemini API调用失败: " + status, e);
+            }
+            if (status == 429) {
+                circuitBreaker.onFailure();
             } else {
-                log.error("Gemini API调用失败: {} - {}", response.getStatusCode(), response.getBody());
-                throw new RuntimeException("Gemini API调用失败: " + response.getStatusCode());
+                circuitBreaker.onSuccess();
+            }
+            throw new GeminiApiException("Gemini API调用失败: " + status, e);
+        } catch (ResourceAccessException e) {
+            log.warn("Gemini API网络异常: {}", e.getMessage());
+            circuitBreaker.onFailure();
+            throw new GeminiTransientException("Gemini API网络异常", e);
+        } catch (RestClientException e) {
+            // 其他客户端异常 (读取响应体失败、未知状态码等) 同样说明上游或连接不正常
+            log.warn("Gemini API调用异常: {}", e.getMessage());
+            circuitBreaker.onFailure();
+            throw new GeminiTransientException("Gemini API调用异常", e);
+        } catch (RuntimeException e) {
+            circuitBreaker.onIgnored();
+            throw e;
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    private String callGemini(String model, String prompt) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        HttpEntity<String> httpEntity = new HttpEntity<>(requestBody(prompt), headers);
+
+        String url = baseUrl + "/" + model + ":generateContent?key=" + apiKey;
+
+        ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.POST, httpEntity, String.class);
+
+        if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
+            return response.getBody();
+        }
+        log.error("Gemini API调用失败: {} - {}", response.getStatusCode(), response.getBody());
+        throw new GeminiApiException("Gemini API调用失败: " + response.getStatusCode(), null);
+    }
+
+    private record StreamedOutput(String text, TokenUsage usage) {
+    }
+
+    // SSE 响应中每个 data 行是一个完整的 GenerateContentResponse，其中的 text 是模型输出的下一段
+    private StreamedOutput streamGemini(String model, String prompt, BiConsumer<String, JsonNode> onField) {
+        String url = baseUrl + "/" + model + ":streamGenerateContent?alt=sse&key=" + apiKey;
+        return restTemplate.execute(url, HttpMethod.POST, request -> {
+            request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            request.getBody().write(requestBody(prompt).getBytes(StandardCharsets.UTF_8));
+        }, response -> {
+            StringBuilder text = new StringBuilder();
+            TokenUsage usage = null;
+            JsonFieldScanner scanner = new JsonFieldScanner();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(response.getBody(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.startsWith("data:")) {
+                    continue;
+                }
+                JsonNode data = readResponse(line.substring("data:".length()));
+                TokenUsage chunkUsage = usage(model, data.path("usageMetadata"));
+                if (chunkUsage != null) {
+                    usage = chunkUsage;
+                }
+                String chunk = text(data);
+                text.append(chunk);
+                for (JsonFieldScanner.Field field : scanner.feed(chunk)) {
+                    JsonNode value;
+                    try {
+                        value = objectMapper.readTree(field.json());
+                    } catch (JsonProcessingException e) {
+                        throw new GeminiApiException("无法解析 Gemini 流式响应中的字段 " + field.name(), e);
+                    }
+                    onField.accept(field.name(), value);
+                }
             }
-        } catch (Exception e) {
-            log.error("Gemini API调用异常", e);
-            throw new RuntimeException("AI分析服务暂时不可用", e);
+            return new StreamedOutput(text.toString(), usage);
+        });
+    }
+
+    private String requestBody(String prompt) {
+        return writeJson(Map.of(
+                "contents", List.of(Map.of("parts", List.of(Map.of("text", prompt)))),
+                "generationConfig", Map.of("responseMimeType", "application/json")));
+    }
+
+    // 上游正常但内容无效时不重试
+    private JsonNode readResponse(String body) {
+        try {
+            return objectMapper.readTree(body);
+        } catch (JsonProcessingException e) {
+            throw new GeminiApiException("无法解析 Gemini 响应", e);
         }
     }
 
+    // 取出 candidates[0].content.parts[0].text
+    private static String text(JsonNode response) {
+        return response.path("candidates").path(0).path("content").path("parts").path(0).path("text").asText("");
+    }
+
+    // 输出按 candidatesTokenCount 与 thoughtsTokenCount (思考模型) 之和计费；响应没有用量信息时返回 null
+    private TokenUsage usage(String model, JsonNode usageMetadata) {
+        if (!usageMetadata.has("promptTokenCount")) {
+            return null;
+        }
+        int promptTokens = usageMetadata.path("promptTokenCount").asInt();
+        int outputTokens = usageMetadata.path("candidatesTokenCount").asInt() + usageMetadata.path("thoughtsTokenCount").asInt();
+        BigDecimal inputPrice = environment.getProperty("moodtrack.gemini.pricing." + model + ".input-per-million",
+                BigDecimal.class, inputPricePerMillion);
+        BigDecimal outputPrice = environment.getProperty("moodtrack.gemini.pricing." + model + ".output-per-million",
+                BigDecimal.class, outputPricePerMillion);
+        BigDecimal cost = inputPrice.multiply(BigDecimal.valueOf(promptTokens))
+                .add(outputPrice.multiply(BigDecimal.valueOf(outputTokens)))
+                .divide(BigDecimal.valueOf(1_000_000), 8, RoundingMode.HALF_UP);
+        return new TokenUsage(promptTokens, outputTokens, cost);
+    }
+
+    // 模型输出的文本解析为洞察与建议
+    private Narrative parseNarrative(String text) {
+        try {
+            text = text.strip();
+            if (text.startsWith("```")) {
+                text = text.substring(text.indexOf('\n') + 1, text.lastIndexOf("```")).strip();
+            }
+            Narrative narrative = objectMapper.readValue(text, Narrative.class);
+            if (narrative.getKeyInsights() == null || narrative.getRecommendations() == null) {
+                throw new GeminiApiException("Gemini 响应缺少 keyInsights 或 recommendations", null);
+            }
+            return narrative;
+        } catch (JsonProcessingException | StringIndexOutOfBoundsException e) {
+            throw new GeminiApiException("无法解析 Gemini 响应", e);
+        }
+    }
+
+    private String writeJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("无法序列化 Gemini 请求", e);
+        }
+    }
+
+    private boolean acquireBulkhead() {
+        try {
+            return bulkhead.tryAcquire(bulkheadMaxWait.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void reject(String reason) {
+        meterRegistry.counter("moodtrack.gemini.calls.rejected", "reason", reason).increment();
+    }
+
+    // 统计部分已由 LocalAnalysisEngine 精确算出，经 PromptFeatureSummarizer 压缩到 token 预算内后作为事实提供给模型，
+    // 模型只撰写洞察和建议
     private String buildAnalysisPrompt(MoodDataAnalysis dataAnalysis, AIAnalysisRequest.AnalysisPreferences preferences) {
         String promptTemplate = """
-你是一位专业的心理健康数据分析师。请基于以下7天的情绪数据，生成一份个性化的情绪分析报告。
+你是一位专业的心理健康数据分析师。下面是用户在 %s 至 %s (共 %d 天) 的情绪统计结果 (已精确计算，请勿修改或重新估算)，
+其中 periods 按%s汇总了各时间段的记录数、平均分、最低/最高分和低落记录占比。请基于这些事实撰写个性化的关键洞察和建议，
+范围较长时请关注各时间段之间的变化。
 # 分析要求
 - 语言: %s
 - 分析深度: %s
 - 关注领域: %s
-# 用户数据摘要
-总记录数: %d
-平均情绪分数: %.1f
+# 统计结果 (情绪分数为 0-4 分，0 为非常低落，4 为非常好)
+%s
 # 输出格式
-请严格按照以下JSON格式输出分析结果，不要添加任何额外的解释或文本：
+请严格按照以下JSON格式输出，不要添加任何额外的解释或文本：
 {
-  "summary": {
-    "overallTrend": "improving",
-    "averageScore": 7.2,
-    "keyInsights": ["洞察1", "洞察2"],
-    "urgencyLevel": "low"
-  },
-  "patterns": {
-    "weeklyPattern": {
-      "bestDays": ["Saturday"],
-      "challengingDays": ["Wednesday"],
-      "volatilityIndex": 1.8
-    },
-    "dailyPattern": {
-      "morningAverage": 6.8,
-      "eveningAverage": 7.4,
-      "peakHours": ["19:00-21:00"]
-    },
-    "triggers": {
-      "positive": [{"factor": "运动", "frequency": 4, "impact": 1.5}],
-      "negative": [{"factor": "工作压力", "frequency": 5, "impact": -1.8}]
-    }
-  },
+  "keyInsights": ["洞察1", "洞察2"],
   "recommendations": {
     "immediate": [{"title": "建立晚间放松routine", "description": "在睡前1小时进行冥想或轻度阅读", "priority": "high", "estimatedImpact": "medium"}],
     "shortTerm": [],
     "longTerm": []
-  },
-  "riskAssessment": {
-    "level": "green",
-    "indicators": ["情绪整体趋势向好"],
-    "suggestions": ["继续保持当前的积极生活方式"]
   }
 }
 # 注意事项
 1. 必须使用中文（或指定的语言）输出。
-2. 提供的建议需要具体、可操作。
+2. 提供的建议需要具体、可操作，并与统计结果相符。
 3. 避免使用任何医疗诊断性质的语言。
 4. 整体语调保持积极和正面。
 5. 必须确保输出是严格合法的JSON格式。
 """;
-        return String.format(promptTemplate, preferences.getLanguage(), preferences.getDepth(), String.join(", ", preferences.getFocusAreas()), dataAnalysis.getTotalEntries(), dataAnalysis.getAverageScore());
+        PromptFeatureSummarizer.FeatureSummary summary = promptFeatureSummarizer.summarize(dataAnalysis);
+        return String.format(promptTemplate, dataAnalysis.getStartDate(), dataAnalysis.getEndDate(), summary.getRange().getDays(),
+                summary.getRange().getGranularity().label(), preferences.getLanguage(), preferences.getDepth(),
+                String.join(", ", preferences.getFocusAreas()), writeJson(summary));
     }
 
+    /**
+     * 本地统计分析的结果，也是提供给模型的事实。
+     */
     @Data
     @Builder
     public static class MoodDataAnalysis {
+        private LocalDate startDate;
+        private LocalDate endDate;
         private int totalEntries;
         private double averageScore;
+        private String overallTrend;
+        private String urgencyLevel;
+        private AnalysisPatterns patterns;
+        private RiskAssessment riskAssessment;
+        /** 有记录的日期按日期升序的日汇总 */
+        private List<DailySummary> dailySeries;
+    }
+
+    /**
+     * 单日的情绪汇总，分数为 {@link org.example.model.EmotionType} 的序号。
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class DailySummary {
+        private LocalDate date;
+        private int entries;
+        private long scoreSum;
+        /** bad 与 very_bad 的记录数 */
+        private int lowEntries;
+        private int minScore;
+        private int maxScore;
     }
-}
\ No newline at end of file
+
+    /**
+     * 模型撰写的叙述部分。
+     */
+    @Data
+    @NoArgsConstructor
+    public static class Narrative {
+        private List<String> keyInsights;
+        private AnalysisRecommendations recommendations;
+        /** 生成该叙述的 token 用量，离线模板或响应缺少用量信息时为 null */
+        @JsonIgnore
+        private TokenUsage usage;
+
+        public Narrative(List<String> keyInsights, AnalysisRecommendations recommendations) {
+            this.keyInsights = keyInsights;
+            this.recommendations = recommendations;
+        }
+    }
+
+    /**
+     * 一次调用的 token 用量与按配置价格计算的费用 (美元)。
+     */
+    @Data
+    @AllArgsConstructor
+    public static class TokenUsage {
+        private int promptTokens;
+        private int outputTokens;
+        private BigDecimal cost;
+
+        public int getTotalTokens() {
+            return promptTokens + outputTokens;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.example.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 为每次分析选择 Gemini 模型及其后备顺序。
+ * <p>
+ * 分析深度属于 {@code moodtrack.gemini.routing.strong-depths}，或提示词估算 token 数不少于
+ * {@code strong-min-prompt-tokens} (范围长、特征多) 时使用 strong 链，其余使用 fast 链。
+ * 链中第一个模型不可用 (熔断打开、上游错误、响应无效) 时由 {@link GeminiAPIService} 依次改用后面的模型。
+ * </p>
+ */
+@Component
+public class GeminiModelRouter {
+
+    @Value("${moodtrack.gemini.routing.fast-models:gemini-2.0-flash-lite,gemini-2.0-flash}")
+    private List<String> fastModels;
+
+    @Value("${moodtrack.gemini.routing.strong-models:gemini-2.0-flash,gemini-2.0-flash-lite}")
+    private List<String> strongModels;
+
+    @Value("${moodtrack.gemini.routing.strong-depths:comprehensive}")
+    private Set<String> strongDepths;
+
+    @Value("${moodtrack.gemini.routing.strong-min-prompt-tokens:1600}")
+    private int strongMinPromptTokens;
+
+    /**
+     * @param promptTokens 提示词的估算 token 数，见 {@link PromptFeatureSummarizer#estimateTokens}
+     * @return 按优先顺序排列的模型，至少一个
+     */
+    public List<String> route(String depth, int promptTokens) {
+        boolean strong = promptTokens >= strongMinPromptTokens
+                || (depth != null && strongDepths.contains(depth.toLowerCase(Locale.ROOT)));
+        return strong ? strongModels : fastModels;
+    }
+}
@@ -0,0 +1,104 @@
+package org.example.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 从分段到达的 JSON 对象文本中，按顺序取出已完整到达的顶层字段。
+ * <p>
+ * 只跟踪字符串、转义和括号深度，不校验语法，字段值的原始 JSON 文本由调用方解析。
+ * 对象或数组类型的值在右括号到达时立即返回，不必等待后面的逗号；第一个 '{' 之前的内容 (如 ``` 代码块标记) 被忽略。
+ * 非线程安全，每个响应使用一个实例。
+ * </p>
+ */
+class JsonFieldScanner {
+
+    record Field(String name, String json) {
+    }
+
+    private final StringBuilder buffer = new StringBuilder();
+
+    /** 下一个待扫描字符的位置 */
+    private int position;
+
+    /** 括号深度，0 表示尚未进入顶层对象 */
+    private int depth;
+
+    private boolean inString;
+
+    private boolean escaped;
+
+    private int stringStart;
+
+    private String fieldName;
+
+    /** 当前顶层字段值的起始位置；-1 表示还没读到冒号，-2 表示该值已返回 */
+    private int valueStart = -1;
+
+    private boolean finished;
+
+    List<Field> feed(String chunk) {
+        buffer.append(chunk);
+        List<Field> fields = new ArrayList<>();
+        for (; position < buffer.length() && !finished; position++) {
+            char c = buffer.charAt(position);
+            if (depth == 0) {
+                if (c == '{') {
+                    depth = 1;
+                }
+                continue;
+            }
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                    if (depth == 1 && valueStart == -1) {
+                        fieldName = buffer.substring(stringStart + 1, position);
+                    }
+                }
+                continue;
+            }
+            switch (c) {
+                case '"' -> {
+                    inString = true;
+                    stringStart = position;
+                }
+                case '{', '[' -> depth++;
+                case '}', ']' -> {
+                    depth--;
+                    if (depth == 1 && valueStart >= 0) {
+                        fields.add(new Field(fieldName, buffer.substring(valueStart, position + 1).strip()));
+                        valueStart = -2;
+                    } else if (depth == 0) {
+                        emitPrimitive(fields);
+                        finished = true;
+                    }
+                }
+                case ':' -> {
+                    if (depth == 1 && valueStart == -1) {
+                        valueStart = position + 1;
+                    }
+                }
+                case ',' -> {
+                    if (depth == 1) {
+                        emitPrimitive(fields);
+                        valueStart = -1;
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        return fields;
+    }
+
+    // 字符串、数字、布尔和 null 在逗号或右括号处结束
+    private void emitPrimitive(List<Field> fields) {
+        if (valueStart >= 0) {
+            fields.add(new Field(fieldName, buffer.substring(valueStart, position).strip()));
+        }
+    }
+}
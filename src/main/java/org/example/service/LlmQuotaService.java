@@ -0,0 +1,117 @@
+package org.example.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 按 token 计的 LLM 调用配额：每个用户一个令牌桶，另有一个全局令牌桶，检查完全在进程内完成，不访问数据库。
+ * <p>
+ * 调用前以 {@link #tryAcquire} 从用户桶和全局桶各预扣 {@code reserve-tokens}，任一不足则拒绝，调用方改用已保存或离线的报告；
+ * 调用后以 {@link #settle} 按响应中的实际用量多退少补，调用未发出时以 {@link #release} 退还预扣；
+ * 没有预扣的额外调用 (被丢弃的对冲请求) 以 {@link #charge} 按实际用量扣除。
+ * 用户桶闲置到必然已补满后被回收，之后重新创建的满桶与其等价；配额在每个实例内独立计算。
+ * 被拒绝的次数记录在 moodtrack.ai.quota.rejected。
+ * </p>
+ */
+@Component
+public class LlmQuotaService {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${moodtrack.ai-quota.user.capacity:60000}")
+    private long userCapacity;
+
+    @Value("${moodtrack.ai-quota.user.refill-per-hour:20000}")
+    private long userRefillPerHour;
+
+    @Value("${moodtrack.ai-quota.global.capacity:2000000}")
+    private long globalCapacity;
+
+    @Value("${moodtrack.ai-quota.global.refill-per-hour:1000000}")
+    private long globalRefillPerHour;
+
+    @Value("${moodtrack.ai-quota.reserve-tokens:4000}")
+    private long reserveTokens;
+
+    @Value("${moodtrack.ai-quota.max-users:100000}")
+    private long maxUsers;
+
+    private TokenBucket globalBucket;
+
+    private Cache<Long, TokenBucket> userBuckets;
+
+    @PostConstruct
+    void init() {
+        globalBucket = new TokenBucket(globalCapacity, globalRefillPerHour, System::nanoTime);
+        // 余额最低为 -capacity，闲置 2 * capacity / refill 小时后一定已补满
+        userBuckets = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterAccess(Duration.ofSeconds(2 * userCapacity * 3600 / userRefillPerHour + 1))
+                .build();
+        Gauge.builder("moodtrack.ai.quota.global.available", globalBucket, TokenBucket::available)
+                .description("LLM tokens currently available in the global quota")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 为一次 LLM 调用预扣配额；返回 false 时不应调用 LLM。
+     */
+    public boolean tryAcquire(Long userId) {
+        TokenBucket userBucket = userBucket(userId);
+        if (!userBucket.tryConsume(reserveTokens)) {
+            reject("user");
+            return false;
+        }
+        if (!globalBucket.tryConsume(reserveTokens)) {
+            userBucket.charge(-reserveTokens);
+            reject("global");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 按实际用量结算预扣的配额；用量未知时保留预扣。
+     */
+    public void settle(Long userId, GeminiAPIService.TokenUsage usage) {
+        if (usage == null) {
+            return;
+        }
+        long difference = usage.getTotalTokens() - reserveTokens;
+        userBucket(userId).charge(difference);
+        globalBucket.charge(difference);
+    }
+
+    /**
+     * 按实际用量扣除一次没有预扣的额外调用。
+     */
+    public void charge(Long userId, GeminiAPIService.TokenUsage usage) {
+        userBucket(userId).charge(usage.getTotalTokens());
+        globalBucket.charge(usage.getTotalTokens());
+    }
+
+    /**
+     * 调用未发出 (熔断打开、并发已满) 时退还预扣的配额。
+     */
+    public void release(Long userId) {
+        userBucket(userId).charge(-reserveTokens);
+        globalBucket.charge(-reserveTokens);
+    }
+
+    private TokenBucket userBucket(Long userId) {
+        return userBuckets.get(userId, id -> new TokenBucket(userCapacity, userRefillPerHour, System::nanoTime));
+    }
+
+    private void reject(String scope) {
+        meterRegistry.counter("moodtrack.ai.quota.rejected", "scope", scope).increment();
+    }
+}
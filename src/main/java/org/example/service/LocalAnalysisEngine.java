@@ -0,0 +1,434 @@
+package org.example.service;
+
+import org.example.model.EmotionType;
+import org.example.model.MoodEntry;
+import org.example.model.ai.AnalysisPatterns;
+import org.example.model.ai.AnalysisRecommendations;
+import org.example.model.ai.RiskAssessment;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.TextStyle;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 进程内的情绪统计分析引擎，确定性地计算分析报告中可由数据直接得出的部分。
+ * <p>
+ * 对 {@link MoodHistoryCache} 中的列式快照在日期范围内做一次遍历，按本地日期、星期、小时和触发器累加，
+ * 得出 {@link AnalysisPatterns} (最好/最差星期、波动指数、早晚均值、高峰时段、触发器频率与影响)、
+ * 整体趋势、紧急程度、{@link RiskAssessment} 以及有记录各天的日汇总。LLM 只负责撰写关键洞察和建议；
+ * 离线模式下由 {@link #offlineInsights} 和 {@link #offlineRecommendations} 按模板生成，不调用 LLM。
+ * 分数为 {@link EmotionType} 的序号 (0-4)。
+ * </p>
+ */
+@Service
+public class LocalAnalysisEngine {
+
+    /** 早晨 05:00-11:59，晚间 17:00-22:59 (本地时间) */
+    private static final int MORNING_START = 5;
+    private static final int MORNING_END = 12;
+    private static final int EVENING_START = 17;
+    private static final int EVENING_END = 23;
+
+    /** 高峰时段和触发器至少需要的记录数，避免单条记录决定结论 */
+    private static final int MIN_SAMPLES = 2;
+    private static final int MAX_PEAK_HOURS = 3;
+    private static final int MAX_TRIGGERS = 5;
+
+    /** 每日均值的最小二乘斜率乘以天数超过该值时视为上升或下降 */
+    private static final double TREND_THRESHOLD = 0.3;
+
+    @Autowired
+    private MoodHistoryCache moodHistoryCache;
+
+    @Autowired
+    private TriggerDictionary triggerDictionary;
+
+    public GeminiAPIService.MoodDataAnalysis analyze(Long userId, LocalDate startDate, LocalDate endDate) {
+        int days = (int) (endDate.toEpochDay() - startDate.toEpochDay() + 1);
+        long[] dayCounts = new long[days];
+        long[] daySums = new long[days];
+        long[] dayLowCounts = new long[days];
+        int[] dayMins = new int[days];
+        int[] dayMaxes = new int[days];
+        long[] weekdayCounts = new long[7];
+        long[] weekdaySums = new long[7];
+        long[] hourCounts = new long[24];
+        long[] hourSums = new long[24];
+        long[] emotionCounts = new long[EmotionType.values().length];
+        // 触发器 id -> {记录数, 分数和}
+        Map<Integer, long[]> triggerStats = new HashMap<>();
+
+        MoodHistory history = moodHistoryCache.get(userId);
+        long startEpoch = MoodEntry.recordTimeLowerBound(startDate).toEpochSecond();
+        long endEpoch = MoodEntry.recordTimeUpperBound(endDate).toEpochSecond();
+        long startDay = startDate.toEpochDay();
+        for (int i = history.lowerBound(startEpoch); i < history.size() && history.epochSecond(i) < endEpoch; i++) {
+            long epochDay = history.localEpochDay(i);
+            int day = (int) (epochDay - startDay);
+            if (day < 0 || day >= days) {
+                continue;
+            }
+            int score = history.emotion(i);
+            int hour = history.localHour(i);
+            // 1970-01-01 为星期四 (DayOfWeek 序号 3)
+            int weekday = (int) Math.floorMod(epochDay + 3, 7L);
+            if (dayCounts[day] == 0 || score < dayMins[day]) {
+                dayMins[day] = score;
+            }
+            if (dayCounts[day] == 0 || score > dayMaxes[day]) {
+                dayMaxes[day] = score;
+            }
+            dayCounts[day]++;
+            daySums[day] += score;
+            if (score <= EmotionType.bad.ordinal()) {
+                dayLowCounts[day]++;
+            }
+            weekdayCounts[weekday]++;
+            weekdaySums[weekday] += score;
+            hourCounts[hour]++;
+            hourSums[hour] += score;
+            emotionCounts[score]++;
+            for (int t = history.triggerStart(i); t < history.triggerEnd(i); t++) {
+                long[] stats = triggerStats.computeIfAbsent(history.triggerId(t), id -> new long[2]);
+                stats[0]++;
+                stats[1] += score;
+            }
+        }
+
+        long total = 0;
+        long scoreSum = 0;
+        for (int score = 0; score < emotionCounts.length; score++) {
+            total += emotionCounts[score];
+            scoreSum += score * emotionCounts[score];
+        }
+        double average = total == 0 ? 0.0 : (double) scoreSum / total;
+        String trend = trend(dayCounts, daySums);
+
+        AnalysisPatterns patterns = AnalysisPatterns.builder()
+                .weeklyPattern(weeklyPattern(weekdayCounts, weekdaySums, dayCounts, daySums))
+                .dailyPattern(dailyPattern(hourCounts, hourSums, average))
+                .triggers(triggerAnalysis(triggerStats, total, scoreSum))
+                .build();
+        RiskAssessment riskAssessment = riskAssessment(emotionCounts, total, average, trend);
+
+        // 只保留有记录的日期，由 PromptFeatureSummarizer 按范围长度聚合为周、月等粒度
+        List<GeminiAPIService.DailySummary> dailySeries = new ArrayList<>();
+        for (int day = 0; day < days; day++) {
+            if (dayCounts[day] > 0) {
+                dailySeries.add(new GeminiAPIService.DailySummary(startDate.plusDays(day), (int) dayCounts[day],
+                        daySums[day], (int) dayLowCounts[day], dayMins[day], dayMaxes[day]));
+            }
+        }
+
+        return GeminiAPIService.MoodDataAnalysis.builder()
+                .startDate(startDate)
+                .endDate(endDate)
+                .totalEntries((int) total)
+                .averageScore(average)
+                .overallTrend(trend)
+                .urgencyLevel(urgencyOf(riskAssessment.getLevel()))
+                .patterns(patterns)
+                .riskAssessment(riskAssessment)
+                .dailySeries(dailySeries)
+                .build();
+    }
+
+    /**
+     * 报告的可信度 (0-1)，由数据充分度决定：有记录的天数占范围天数的比例与记录条数 (满 14 条记为 1) 各占一半。
+     */
+    public BigDecimal confidence(GeminiAPIService.MoodDataAnalysis analysis) {
+        long days = analysis.getEndDate().toEpochDay() - analysis.getStartDate().toEpochDay() + 1;
+        double coverage = Math.min(1.0, (double) analysis.getDailySeries().size() / days);
+        double volume = Math.min(1.0, analysis.getTotalEntries() / 14.0);
+        return round((coverage + volume) / 2);
+    }
+
+    /**
+     * 不调用 LLM 时按统计结果生成的关键洞察。
+     */
+    public List<String> offlineInsights(GeminiAPIService.MoodDataAnalysis analysis) {
+        List<String> insights = new ArrayList<>();
+        insights.add(String.format("共 %d 条情绪记录，平均分 %.2f (0-4 分)，整体趋势%s。",
+                analysis.getTotalEntries(), analysis.getAverageScore(), trendLabel(analysis.getOverallTrend())));
+
+        AnalysisPatterns.WeeklyPattern weekly = analysis.getPatterns().getWeeklyPattern();
+        if (!weekly.getBestDays().isEmpty()) {
+            insights.add(String.format("情绪最好的是 %s，相对低落的是 %s。",
+                    String.join("、", weekly.getBestDays()), String.join("、", weekly.getChallengingDays())));
+        }
+        AnalysisPatterns.DailyPattern daily = analysis.getPatterns().getDailyPattern();
+        if (daily.getMorningAverage() != null && daily.getEveningAverage() != null) {
+            int compare = daily.getEveningAverage().compareTo(daily.getMorningAverage());
+            insights.add(String.format("早晨平均 %s 分，晚间平均 %s 分，%s。", daily.getMorningAverage(), daily.getEveningAverage(),
+                    compare > 0 ? "晚间情绪更好" : compare < 0 ? "早晨情绪更好" : "早晚相近"));
+        }
+        AnalysisPatterns.TriggerAnalysis triggers = analysis.getPatterns().getTriggers();
+        if (!triggers.getPositive().isEmpty()) {
+            AnalysisPatterns.Trigger trigger = triggers.getPositive().get(0);
+            insights.add(String.format("「%s」出现 %d 次，相关记录平均高 %s 分。",
+                    trigger.getFactor(), trigger.getFrequency(), trigger.getImpact()));
+        }
+        if (!triggers.getNegative().isEmpty()) {
+            AnalysisPatterns.Trigger trigger = triggers.getNegative().get(0);
+            insights.add(String.format("「%s」出现 %d 次，相关记录平均低 %s 分。",
+                    trigger.getFactor(), trigger.getFrequency(), trigger.getImpact().negate()));
+        }
+        return insights;
+    }
+
+    /**
+     * 不调用 LLM 时按统计结果生成的建议。
+     */
+    public AnalysisRecommendations offlineRecommendations(GeminiAPIService.MoodDataAnalysis analysis) {
+        List<AnalysisRecommendations.Recommendation> immediate = new ArrayList<>();
+        List<AnalysisRecommendations.Recommendation> shortTerm = new ArrayList<>();
+        List<AnalysisRecommendations.Recommendation> longTerm = new ArrayList<>();
+
+        AnalysisPatterns.TriggerAnalysis triggers = analysis.getPatterns().getTriggers();
+        if (!triggers.getNegative().isEmpty()) {
+            AnalysisPatterns.Trigger trigger = triggers.getNegative().get(0);
+            immediate.add(recommendation("留意「" + trigger.getFactor() + "」带来的影响",
+                    "记录「" + trigger.getFactor() + "」出现时的具体情境，提前安排休息或应对方式。",
+                    "high", "medium"));
+        }
+        if (!triggers.getPositive().isEmpty()) {
+            AnalysisPatterns.Trigger trigger = triggers.getPositive().get(0);
+            shortTerm.add(recommendation("多安排「" + trigger.getFactor() + "」",
+                    "「" + trigger.getFactor() + "」与更好的情绪相关，可以有计划地增加它的频率。",
+                    "medium", "medium"));
+        }
+        List<String> challengingDays = analysis.getPatterns().getWeeklyPattern().getChallengingDays();
+        if (!challengingDays.isEmpty()) {
+            shortTerm.add(recommendation("为 " + String.join("、", challengingDays) + " 预留放松时间",
+                    "这些日子的情绪相对低落，可以减少安排或留出独处、运动的时间。",
+                    "medium", "low"));
+        }
+        longTerm.add(recommendation("保持每日记录",
+                "持续记录情绪和触发因素，能让趋势和规律分析更准确。",
+                "low", "medium"));
+
+        return AnalysisRecommendations.builder()
+                .immediate(immediate)
+                .shortTerm(shortTerm)
+                .longTerm(longTerm)
+                .build();
+    }
+
+    private AnalysisPatterns.WeeklyPattern weeklyPattern(long[] weekdayCounts, long[] weekdaySums, long[] dayCounts, long[] daySums) {
+        double best = Double.NEGATIVE_INFINITY;
+        double worst = Double.POSITIVE_INFINITY;
+        for (int weekday = 0; weekday < 7; weekday++) {
+            if (weekdayCounts[weekday] > 0) {
+                double average = (double) weekdaySums[weekday] / weekdayCounts[weekday];
+                best = Math.max(best, average);
+                worst = Math.min(worst, average);
+            }
+        }
+        List<String> bestDays = new ArrayList<>();
+        List<String> challengingDays = new ArrayList<>();
+        // 只有一个星期有数据或各星期均值相同时，不区分最好与最差
+        if (best - worst >= 0.01) {
+            for (int weekday = 0; weekday < 7; weekday++) {
+                if (weekdayCounts[weekday] == 0) {
+                    continue;
+                }
+                double average = (double) weekdaySums[weekday] / weekdayCounts[weekday];
+                String name = DayOfWeek.values()[weekday].getDisplayName(TextStyle.FULL, Locale.ENGLISH);
+                if (average == best) {
+                    bestDays.add(name);
+                } else if (average == worst) {
+                    challengingDays.add(name);
+                }
+            }
+        }
+
+        // 波动指数：有记录的各天日均分的标准差
+        int activeDays = 0;
+        double sum = 0;
+        double sumSquares = 0;
+        for (int day = 0; day < dayCounts.length; day++) {
+            if (dayCounts[day] > 0) {
+                double average = (double) daySums[day] / dayCounts[day];
+                activeDays++;
+                sum += average;
+                sumSquares += average * average;
+            }
+        }
+        double volatility = activeDays == 0 ? 0.0 : Math.sqrt(Math.max(0.0, sumSquares / activeDays - (sum / activeDays) * (sum / activeDays)));
+
+        return AnalysisPatterns.WeeklyPattern.builder()
+                .bestDays(bestDays)
+                .challengingDays(challengingDays)
+                .volatilityIndex(round(volatility))
+                .build();
+    }
+
+    // 高峰时段：记录数足够且均分不低于整体均分的小时中，均分最高的几个
+    private AnalysisPatterns.DailyPattern dailyPattern(long[] hourCounts, long[] hourSums, double average) {
+        List<Integer> hours = new ArrayList<>();
+        for (int hour = 0; hour < 24; hour++) {
+            if (hourCounts[hour] >= MIN_SAMPLES && (double) hourSums[hour] / hourCounts[hour] >= average) {
+                hours.add(hour);
+            }
+        }
+        hours.sort(Comparator.<Integer>comparingDouble(hour -> (double) hourSums[hour] / hourCounts[hour]).reversed()
+                .thenComparing(hour -> hourCounts[hour], Comparator.reverseOrder()));
+        List<Integer> peaks = new ArrayList<>(hours.subList(0, Math.min(MAX_PEAK_HOURS, hours.size())));
+        peaks.sort(Comparator.naturalOrder());
+        List<String> peakHours = new ArrayList<>();
+        for (int hour : peaks) {
+            peakHours.add(String.format("%02d:00-%02d:00", hour, hour + 1));
+        }
+
+        return AnalysisPatterns.DailyPattern.builder()
+                .morningAverage(rangeAverage(hourCounts, hourSums, MORNING_START, MORNING_END))
+                .eveningAverage(rangeAverage(hourCounts, hourSums, EVENING_START, EVENING_END))
+                .peakHours(peakHours)
+                .build();
+    }
+
+    // 影响 = 含该触发器的记录均分 - 不含该触发器的记录均分
+    private AnalysisPatterns.TriggerAnalysis triggerAnalysis(Map<Integer, long[]> triggerStats, long total, long scoreSum) {
+        Map<Integer, String> names = triggerDictionary.namesOf(triggerStats.keySet());
+        List<AnalysisPatterns.Trigger> positive = new ArrayList<>();
+        List<AnalysisPatterns.Trigger> negative = new ArrayList<>();
+        triggerStats.forEach((id, stats) -> {
+            long count = stats[0];
+            if (count < MIN_SAMPLES || count >= total) {
+                return;
+            }
+            double with = (double) stats[1] / count;
+            double without = (double) (scoreSum - stats[1]) / (total - count);
+            BigDecimal impact = round(with - without);
+            AnalysisPatterns.Trigger trigger = AnalysisPatterns.Trigger.builder()
+                    .factor(names.get(id))
+                    .frequency((int) count)
+                    .impact(impact)
+                    .build();
+            if (impact.signum() > 0) {
+                positive.add(trigger);
+            } else if (impact.signum() < 0) {
+                negative.add(trigger);
+            }
+        });
+        Comparator<AnalysisPatterns.Trigger> byFrequency = Comparator.comparing(AnalysisPatterns.Trigger::getFrequency, Comparator.reverseOrder());
+        positive.sort(Comparator.comparing(AnalysisPatterns.Trigger::getImpact, Comparator.reverseOrder())
+                .thenComparing(byFrequency).thenComparing(AnalysisPatterns.Trigger::getFactor));
+        negative.sort(Comparator.comparing(AnalysisPatterns.Trigger::getImpact)
+                .thenComparing(byFrequency).thenComparing(AnalysisPatterns.Trigger::getFactor));
+        return AnalysisPatterns.TriggerAnalysis.builder()
+                .positive(new ArrayList<>(positive.subList(0, Math.min(MAX_TRIGGERS, positive.size()))))
+                .negative(new ArrayList<>(negative.subList(0, Math.min(MAX_TRIGGERS, negative.size()))))
+                .build();
+    }
+
+    // 有记录的各天日均分对天序号做最小二乘回归，斜率乘以范围天数作为整体变化
+    private String trend(long[] dayCounts, long[] daySums) {
+        int points = 0;
+        double sumX = 0;
+        double sumY = 0;
+        double sumXY = 0;
+        double sumXX = 0;
+        for (int day = 0; day < dayCounts.length; day++) {
+            if (dayCounts[day] > 0) {
+                double y = (double) daySums[day] / dayCounts[day];
+                points++;
+                sumX += day;
+                sumY += y;
+                sumXY += day * y;
+                sumXX += (double) day * day;
+            }
+        }
+        double denominator = points * sumXX - sumX * sumX;
+        if (points < 2 || denominator == 0) {
+            return "stable";
+        }
+        double change = (points * sumXY - sumX * sumY) / denominator * dayCounts.length;
+        if (change >= TREND_THRESHOLD) {
+            return "improving";
+        }
+        return change <= -TREND_THRESHOLD ? "declining" : "stable";
+    }
+
+    private RiskAssessment riskAssessment(long[] emotionCounts, long total, double average, String trend) {
+        double veryBadShare = total == 0 ? 0.0 : (double) emotionCounts[EmotionType.very_bad.ordinal()] / total;
+        double lowShare = total == 0 ? 0.0
+                : (double) (emotionCounts[EmotionType.very_bad.ordinal()] + emotionCounts[EmotionType.bad.ordinal()]) / total;
+        List<String> indicators = new ArrayList<>();
+        List<String> suggestions = new ArrayList<>();
+        String level;
+        if (veryBadShare >= 0.3 || average < 1.0) {
+            level = "red";
+            indicators.add(String.format("非常低落的记录占 %.0f%%", veryBadShare * 100));
+            indicators.add(String.format("平均分 %.2f (0-4 分)", average));
+            suggestions.add("如果低落的感受持续存在，建议与信任的人或专业心理咨询师聊一聊");
+            suggestions.add("尽量保持规律的作息和饮食");
+        } else if (lowShare >= 0.4 || ("declining".equals(trend) && average < 2.0)) {
+            level = "yellow";
+            indicators.add(String.format("低落的记录占 %.0f%%", lowShare * 100));
+            if ("declining".equals(trend)) {
+                indicators.add("情绪整体呈下降趋势");
+            }
+            suggestions.add("留意让你感到低落的情境，适当安排休息");
+            suggestions.add("多做让你感到愉快的活动");
+        } else {
+            level = "green";
+            indicators.add("improving".equals(trend) ? "情绪整体趋势向好" : "情绪整体平稳");
+            suggestions.add("继续保持当前的积极生活方式");
+        }
+        return RiskAssessment.builder()
+                .level(level)
+                .indicators(indicators)
+                .suggestions(suggestions)
+                .build();
+    }
+
+    private static String urgencyOf(String riskLevel) {
+        return switch (riskLevel) {
+            case "red" -> "high";
+            case "yellow" -> "medium";
+            default -> "low";
+        };
+    }
+
+    private static String trendLabel(String trend) {
+        return switch (trend) {
+            case "improving" -> "向好";
+            case "declining" -> "下降";
+            default -> "平稳";
+        };
+    }
+
+    private static AnalysisRecommendations.Recommendation recommendation(String title, String description, String priority, String estimatedImpact) {
+        return AnalysisRecommendations.Recommendation.builder()
+                .title(title)
+                .description(description)
+                .priority(priority)
+                .estimatedImpact(estimatedImpact)
+                .build();
+    }
+
+    private static BigDecimal rangeAverage(long[] hourCounts, long[] hourSums, int fromHour, int toHour) {
+        long count = 0;
+        long sum = 0;
+        for (int hour = fromHour; hour < toHour; hour++) {
+            count += hourCounts[hour];
+            sum += hourSums[hour];
+        }
+        return count == 0 ? null : round((double) sum / count);
+    }
+
+    static BigDecimal round(double value) {
+        return BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP);
+    }
+}
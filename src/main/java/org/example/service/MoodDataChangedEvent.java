@@ -0,0 +1,28 @@
+package org.example.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.example.model.MoodEntry;
+
+import java.util.List;
+
+/**
+ * 用户心情数据发生变化时发布，监听方应使用 {@code @TransactionalEventListener} 在提交后处理。
+ * {@code created} 为空表示无法逐条描述的批量变化 (如导入)，监听方应整体失效该用户的派生数据。
+ */
+@Getter
+@AllArgsConstructor
+public class MoodDataChangedEvent {
+
+    private final Long userId;
+
+    private final List<MoodEntry> created;
+
+    public static MoodDataChangedEvent created(Long userId, List<MoodEntry> created) {
+        return new MoodDataChangedEvent(userId, List.copyOf(created));
+    }
+
+    public static MoodDataChangedEvent bulkChange(Long userId) {
+        return new MoodDataChangedEvent(userId, List.of());
+    }
+}
@@ -0,0 +1,41 @@
+package org.example.service;
+
+import org.example.model.User;
+import org.example.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+/**
+ * 维护每个用户的心情数据版本号 ({@code users.mood_data_version})，并据此生成心情列表的强 ETag。
+ * <p>
+ * 版本号在发布 {@link MoodDataChangedEvent} 的事务中同步加一，与心情记录一起提交；
+ * 当前用户实体在每个请求中都会加载，因此读取版本号不需要额外查询，条件请求可以在访问 moods 之前返回 304。
+ * </p>
+ */
+@Service
+public class MoodDataVersionService {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    // 同步监听：在发布方的事务内执行，而不是提交后
+    @EventListener
+    public void onMoodDataChanged(MoodDataChangedEvent event) {
+        userRepository.incrementMoodDataVersion(event.getUserId());
+    }
+
+    /**
+     * 使所有用户的心情列表 ETag 失效，用于分离分区等无法按用户描述的变化。
+     */
+    public void invalidateAll() {
+        userRepository.incrementAllMoodDataVersions();
+    }
+
+    /**
+     * 心情列表的 ETag，只随该用户的心情数据版本变化；不同查询参数对应不同的 URL，由客户端分别缓存。
+     */
+    public String moodsETag(User user) {
+        return "\"moods-" + user.getId() + "-" + user.getMoodDataVersion() + "\"";
+    }
+}
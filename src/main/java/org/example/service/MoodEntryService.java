@@ -1,15 +1,20 @@
 package org.example.service;
 
+import org.example.dto.BatchCreateMoodResponse;
 import org.example.dto.CreateMoodRequest;
 import org.example.dto.PaginatedMoodResponse;
 import org.example.model.EmotionType;
 import org.example.model.MoodEntry;
 import org.example.model.User;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 
 import java.time.LocalDate;
+import java.util.List;
 
 public interface MoodEntryService {
     PaginatedMoodResponse getMoods(User user, Pageable pageable, LocalDate startDate, LocalDate endDate, EmotionType emotionType);
+    PaginatedMoodResponse getMoodsByCursor(User user, String cursor, int limit, Sort.Direction direction, LocalDate startDate, LocalDate endDate, EmotionType emotionType);
     MoodEntry createMood(CreateMoodRequest request, User user);
+    BatchCreateMoodResponse createMoods(List<CreateMoodRequest> requests, User user);
 }
\ No newline at end of file
@@ -1,26 +1,35 @@
 package org.example.service;
 
+import org.example.dto.BatchCreateMoodResponse;
 import org.example.dto.CreateMoodRequest;
+import org.example.dto.CursorPaginationInfo;
+import org.example.dto.MoodCursor;
 import org.example.dto.MoodResponse;
 import org.example.dto.PaginatedMoodResponse;
 import org.example.dto.PaginationInfo;
+import org.example.exception.InvalidCursorException;
 import org.example.model.EmotionType;
 import org.example.model.MoodEntry;
 import org.example.model.User;
 import org.example.repository.MoodEntryRepository;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import jakarta.persistence.criteria.Predicate;
 
 import java.time.LocalDate;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
 
 @Service
 public class MoodEntryServiceImpl implements MoodEntryService {
@@ -28,43 +37,201 @@ public class MoodEntryServiceImpl implements MoodEntryService {
     @Autowired
     private MoodEntryRepository moodEntryRepository;
 
+    @Autowired
+    private MoodRequestValidator moodRequestValidator;
+
+    @Autowired
+    private MoodRollupService moodRollupService;
+
+    @Autowired
+    private TriggerDictionary triggerDictionary;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     @Override
+    @Transactional(readOnly = true)
     public PaginatedMoodResponse getMoods(User user, Pageable pageable, LocalDate startDate, LocalDate endDate, EmotionType emotionType) {
-        Specification<MoodEntry> spec = (root, query, cb) -> {
+        Specification<MoodEntry> spec = buildSpecification(user, startDate, endDate, emotionType);
+
+        List<MoodResponse> moodResponses = moodEntryRepository.findMoodResponses(spec, pageable.getSort(), pageable.getOffset(), pageable.getPageSize());
+        attachTriggers(moodResponses);
+        long totalCount = moodEntryRepository.count(spec);
+        int totalPages = (int) ((totalCount + pageable.getPageSize() - 1) / pageable.getPageSize());
+
+        PaginationInfo paginationInfo = new PaginationInfo();
+        paginationInfo.setCurrentPage(pageable.getPageNumber() + 1);
+        paginationInfo.setPerPage(pageable.getPageSize());
+        paginationInfo.setTotalCount(totalCount);
+        paginationInfo.setTotalPages(totalPages);
+        paginationInfo.setHasNext(pageable.getPageNumber() + 1 < totalPages);
+        paginationInfo.setHasPrev(pageable.getPageNumber() > 0);
+
+        PaginatedMoodResponse response = new PaginatedMoodResponse();
+        response.setMoods(moodResponses);
+        response.setPagination(paginationInfo);
+
+        return response;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public PaginatedMoodResponse getMoodsByCursor(User user, String cursor, int limit, Sort.Direction direction, LocalDate startDate, LocalDate endDate, EmotionType emotionType) {
+        MoodCursor after = cursor != null ? MoodCursor.decode(cursor) : null;
+        // direction 为 null 表示未指定：有游标时沿用游标的方向，否则按时间倒序
+        if (after != null && direction != null && direction != after.getDirection()) {
+            throw new InvalidCursorException("order 与游标的排序方向不一致");
+        }
+        Sort.Direction scanDirection = after != null ? after.getDirection() : direction != null ? direction : Sort.Direction.DESC;
+        Specification<MoodEntry> spec = buildSpecification(user, startDate, endDate, emotionType);
+        if (after != null) {
+            spec = spec.and(afterCursor(after));
+        }
+        Sort sort = Sort.by(scanDirection, "recordTime").and(Sort.by(scanDirection, "id"));
+
+        // 多取一条用于判断是否还有下一页，不执行 COUNT 查询
+        List<MoodResponse> moods = moodEntryRepository.findMoodResponses(spec, sort, 0, limit + 1);
+        boolean hasNext = moods.size() > limit;
+        if (hasNext) {
+            moods = new ArrayList<>(moods.subList(0, limit));
+        }
+        attachTriggers(moods);
+
+        CursorPaginationInfo cursorInfo = new CursorPaginationInfo();
+        cursorInfo.setPerPage(limit);
+        cursorInfo.setHasNext(hasNext);
+        if (hasNext) {
+            MoodResponse last = moods.get(moods.size() - 1);
+            cursorInfo.setNextCursor(new MoodCursor(scanDirection, last.getRecord_time().toInstant(), last.getId()).encode());
+        }
+
+        PaginatedMoodResponse response = new PaginatedMoodResponse();
+        response.setMoods(moods);
+        response.setCursor(cursorInfo);
+        return response;
+    }
+
+    // 用一条 IN 查询加载整页的触发器 id 并在内存中回填，查询次数与页大小无关；id 经词典缓存转换为字符串
+    private void attachTriggers(List<MoodResponse> moods) {
+        if (moods.isEmpty()) {
+            return;
+        }
+        Map<Long, MoodResponse> byId = new LinkedHashMap<>();
+        for (MoodResponse mood : moods) {
+            mood.setTriggers(new ArrayList<>());
+            byId.put(mood.getId(), mood);
+        }
+        List<Object[]> rows = moodEntryRepository.findTriggersByMoodIds(byId.keySet());
+        Set<Integer> triggerIds = new HashSet<>();
+        rows.forEach(row -> triggerIds.add((Integer) row[1]));
+        Map<Integer, String> names = triggerDictionary.namesOf(triggerIds);
+        for (Object[] row : rows) {
+            byId.get((Long) row[0]).getTriggers().add(names.get((Integer) row[1]));
+        }
+    }
+
+    // 日期按用户本地日期 local_date 过滤 (索引 user_id, local_date)；
+    // 另加按最大时区偏移放宽的 record_time 区间 (timestamptz 常量)，分区表上可按月裁剪
+    private Specification<MoodEntry> buildSpecification(User user, LocalDate startDate, LocalDate endDate, EmotionType emotionType) {
+        return (root, query, cb) -> {
             List<Predicate> predicates = new ArrayList<>();
             predicates.add(cb.equal(root.get("user"), user));
             if (startDate != null) {
-                predicates.add(cb.greaterThanOrEqualTo(root.get("recordTime"), startDate.atStartOfDay().atOffset(ZoneOffset.UTC)));
+                predicates.add(cb.greaterThanOrEqualTo(root.get("localDate"), startDate));
+                predicates.add(cb.greaterThanOrEqualTo(root.get("recordTime"), MoodEntry.recordTimeLowerBound(startDate)));
             }
             if (endDate != null) {
-                predicates.add(cb.lessThanOrEqualTo(root.get("recordTime"), endDate.atTime(23, 59, 59).atOffset(ZoneOffset.UTC)));
+                predicates.add(cb.lessThanOrEqualTo(root.get("localDate"), endDate));
+                predicates.add(cb.lessThan(root.get("recordTime"), MoodEntry.recordTimeUpperBound(endDate)));
             }
             if (emotionType != null) {
                 predicates.add(cb.equal(root.get("emotionType"), emotionType));
             }
             return cb.and(predicates.toArray(new Predicate[0]));
         };
+    }
 
-        Page<MoodEntry> page = moodEntryRepository.findAll(spec, pageable);
-        List<MoodResponse> moodResponses = page.getContent().stream().map(this::convertToResponse).collect(Collectors.toList());
+    private Specification<MoodEntry> afterCursor(MoodCursor cursor) {
+        OffsetDateTime recordTime = cursor.getRecordTime().atOffset(ZoneOffset.UTC);
+        // 冗余的 record_time <= t (升序为 >=) 给出索引范围的起点，OR 只在该范围内过滤同一时刻的行
+        return (root, query, cb) -> {
+            if (cursor.getDirection() == Sort.Direction.DESC) {
+                return cb.and(
+                        cb.lessThanOrEqualTo(root.get("recordTime"), recordTime),
+                        cb.or(
+                                cb.lessThan(root.get("recordTime"), recordTime),
+                                cb.lessThan(root.get("id"), cursor.getId())));
+            }
+            return cb.and(
+                    cb.greaterThanOrEqualTo(root.get("recordTime"), recordTime),
+                    cb.or(
+                            cb.greaterThan(root.get("recordTime"), recordTime),
+                            cb.greaterThan(root.get("id"), cursor.getId())));
+        };
+    }
 
-        PaginationInfo paginationInfo = new PaginationInfo();
-        paginationInfo.setCurrentPage(page.getNumber() + 1);
-        paginationInfo.setPerPage(page.getSize());
-        paginationInfo.setTotalCount(page.getTotalElements());
-        paginationInfo.setTotalPages(page.getTotalPages());
-        paginationInfo.setHasNext(page.hasNext());
-        paginationInfo.setHasPrev(page.hasPrevious());
+    @Override
+    @Transactional
+    public MoodEntry createMood(CreateMoodRequest request, User user) {
+        MoodEntry moodEntry = buildMoodEntry(request, user, moodRequestValidator.parseRecordTime(request.getRecordTime()));
+        encodeTriggers(List.of(moodEntry));
+        MoodEntry saved = moodEntryRepository.save(moodEntry);
+        moodRollupService.applyCreated(List.of(saved));
+        eventPublisher.publishEvent(MoodDataChangedEvent.created(user.getId(), List.of(saved)));
+        return saved;
+    }
 
-        PaginatedMoodResponse response = new PaginatedMoodResponse();
-        response.setMoods(moodResponses);
-        response.setPagination(paginationInfo);
+    @Override
+    @Transactional
+    public BatchCreateMoodResponse createMoods(List<CreateMoodRequest> requests, User user) {
+        BatchCreateMoodResponse response = new BatchCreateMoodResponse();
+        List<MoodEntry> toSave = new ArrayList<>();
+        List<BatchCreateMoodResponse.ItemResult> savedItems = new ArrayList<>();
 
+        for (int i = 0; i < requests.size(); i++) {
+            CreateMoodRequest request = requests.get(i);
+            BatchCreateMoodResponse.ItemResult item = new BatchCreateMoodResponse.ItemResult();
+            item.setIndex(i);
+
+            Map<String, String> errors = moodRequestValidator.validate(request);
+            if (errors.isEmpty()) {
+                toSave.add(buildMoodEntry(request, user, moodRequestValidator.parseRecordTime(request.getRecordTime())));
+                savedItems.add(item);
+            } else {
+                item.setSuccess(false);
+                item.setErrors(errors);
+            }
+            response.getResults().add(item);
+        }
+
+        encodeTriggers(toSave);
+        // 序列 ID 按 allocationSize 预取，saveAll 后 flush 时 moods 与 mood_triggers 均以 JDBC 批量写入
+        List<MoodEntry> saved = moodEntryRepository.saveAll(toSave);
+        moodEntryRepository.flush();
+        moodRollupService.applyCreated(saved);
+        if (!saved.isEmpty()) {
+            eventPublisher.publishEvent(MoodDataChangedEvent.created(user.getId(), saved));
+        }
+        for (int i = 0; i < saved.size(); i++) {
+            savedItems.get(i).setSuccess(true);
+            savedItems.get(i).setId(saved.get(i).getId());
+        }
+
+        response.setTotal(requests.size());
+        response.setSucceeded(saved.size());
+        response.setFailed(requests.size() - saved.size());
         return response;
     }
 
-    @Override
-    public MoodEntry createMood(CreateMoodRequest request, User user) {
+    // 整批只解析一次词典，全部命中缓存时不访问数据库
+    private void encodeTriggers(List<MoodEntry> entries) {
+        Set<String> names = new HashSet<>();
+        entries.forEach(entry -> names.addAll(entry.getTriggers()));
+        Map<String, Integer> triggerIds = names.isEmpty() ? Map.of() : triggerDictionary.idsOf(names);
+        entries.forEach(entry -> entry.encodeTriggers(triggerIds));
+    }
+
+    private MoodEntry buildMoodEntry(CreateMoodRequest request, User user, OffsetDateTime recordTime) {
         MoodEntry moodEntry = new MoodEntry();
         moodEntry.setUser(user);
         moodEntry.setEmotionType(request.getMoodType());
@@ -72,20 +239,8 @@ public class MoodEntryServiceImpl implements MoodEntryService {
         moodEntry.setTriggers(request.getTriggers());
         moodEntry.setShareToPublic(request.isShareToPublic());
         moodEntry.setAnonymous(request.isAnonymous());
-        moodEntry.setRecordTime(request.getRecordTime() != null ? OffsetDateTime.parse(request.getRecordTime()) : OffsetDateTime.now());
-        return moodEntryRepository.save(moodEntry);
-    }
-
-    private MoodResponse convertToResponse(MoodEntry moodEntry) {
-        MoodResponse response = new MoodResponse();
-        response.setId(moodEntry.getId());
-        response.setUser_id(moodEntry.getUser().getId());
-        response.setEmotion_type(moodEntry.getEmotionType().name());
-        response.setMood_description(moodEntry.getMoodDescription());
-        response.setTriggers(moodEntry.getTriggers());
-        response.setRecord_time(moodEntry.getRecordTime());
-        response.setCreated_at(moodEntry.getCreatedAt());
-        response.setUpdated_at(moodEntry.getUpdatedAt());
-        return response;
+        moodEntry.setRecordTime(recordTime);
+        moodEntry.applyTimeZone(user.zoneId());
+        return moodEntry;
     }
 }
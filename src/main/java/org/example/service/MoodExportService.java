@@ -0,0 +1,214 @@
+package org.example.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.annotation.PostConstruct;
+import org.example.dto.MoodFileFormat;
+import org.example.dto.MoodResponse;
+import org.example.exception.ExportBusyException;
+import org.example.model.EmotionType;
+import org.example.repository.MoodEntryRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+/**
+ * 将用户的全部心情记录流式导出为 NDJSON 或 CSV。
+ * <p>
+ * 数据通过数据库游标按批读取，逐条写入输出流，不在内存中构建列表，
+ * 因此无论用户有多少条记录，堆内存占用都保持恒定。
+ * </p>
+ * <p>
+ * 游标所在的只读事务在整个下载期间占用一个连接池连接，同时进行的导出数量限制为
+ * {@code moodtrack.export.max-concurrent}，超出时立即以 {@link ExportBusyException} 拒绝，不排队等待。
+ * </p>
+ */
+@Service
+public class MoodExportService {
+
+    @Autowired
+    private MoodEntryRepository moodEntryRepository;
+
+    @Autowired
+    private TriggerDictionary triggerDictionary;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${moodtrack.export.max-concurrent:1}")
+    private int maxConcurrentExports;
+
+    private Semaphore exportPermits;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    @PostConstruct
+    void init() {
+        exportPermits = new Semaphore(maxConcurrentExports);
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * 输出目标，在取得导出许可之后才打开，被拒绝时调用方仍可返回 JSON 错误。
+     */
+    @FunctionalInterface
+    public interface ExportTarget {
+        OutputStream open() throws IOException;
+    }
+
+    /**
+     * @return 导出的心情记录条数。
+     * @throws ExportBusyException 同时进行的导出已达上限
+     */
+    public long export(Long userId, MoodFileFormat format, ExportTarget target) throws IOException {
+        if (!exportPermits.tryAcquire()) {
+            throw new ExportBusyException("当前导出请求过多，请稍后重试");
+        }
+        try {
+            OutputStream outputStream = target.open();
+            return readOnlyTransaction.execute(status -> {
+                try {
+                    return writeAll(userId, format, outputStream);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            exportPermits.release();
+        }
+    }
+
+    private long writeAll(Long userId, MoodFileFormat format, OutputStream outputStream) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        RecordWriter recordWriter = format == MoodFileFormat.csv ? new CsvRecordWriter(writer) : new NdjsonRecordWriter(writer);
+
+        long count = 0;
+        try (Stream<Object[]> rows = moodEntryRepository.streamExportRows(userId)) {
+            Iterator<Object[]> iterator = rows.iterator();
+            MoodResponse current = null;
+            while (iterator.hasNext()) {
+                Object[] row = iterator.next();
+                Long id = (Long) row[0];
+                // 同一心情记录的触发器行是连续的，遇到新 id 时输出上一条
+                if (current == null || !current.getId().equals(id)) {
+                    if (current != null) {
+                        recordWriter.write(current);
+                        count++;
+                    }
+                    current = new MoodResponse(id, userId, (EmotionType) row[1], (String) row[2],
+                            (OffsetDateTime) row[3], (OffsetDateTime) row[4], (OffsetDateTime) row[5]);
+                    current.setTriggers(new ArrayList<>());
+                }
+                if (row[6] != null) {
+                    // 热门词汇命中词典缓存，不需要与 triggers 表连接
+                    current.getTriggers().add(triggerDictionary.nameOf((Integer) row[6]));
+                }
+            }
+            if (current != null) {
+                recordWriter.write(current);
+                count++;
+            }
+        }
+        recordWriter.finish();
+        writer.flush();
+        return count;
+    }
+
+    private interface RecordWriter {
+        void write(MoodResponse mood) throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    private class NdjsonRecordWriter implements RecordWriter {
+        private final Writer writer;
+        private final SequenceWriter sequenceWriter;
+        private boolean empty = true;
+
+        NdjsonRecordWriter(Writer writer) throws IOException {
+            this.writer = writer;
+            // 默认每写一条就 flush，会把缓冲区逐行推给 Servlet 输出流
+            this.sequenceWriter = objectMapper.writer()
+                    .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                    .withRootValueSeparator("\n")
+                    .writeValues(writer);
+        }
+
+        @Override
+        public void write(MoodResponse mood) throws IOException {
+            sequenceWriter.write(mood);
+            empty = false;
+        }
+
+        @Override
+        public void finish() throws IOException {
+            sequenceWriter.flush();
+            if (!empty) {
+                writer.write('\n');
+            }
+        }
+    }
+
+    private static class CsvRecordWriter implements RecordWriter {
+        private final Writer writer;
+
+        CsvRecordWriter(Writer writer) throws IOException {
+            this.writer = writer;
+            writer.write("id,emotion_type,mood_description,triggers,record_time,created_at,updated_at\n");
+        }
+
+        @Override
+        public void write(MoodResponse mood) throws IOException {
+            writer.write(String.valueOf(mood.getId()));
+            writer.write(',');
+            writer.write(mood.getEmotion_type());
+            writer.write(',');
+            writer.write(escape(mood.getMood_description()));
+            writer.write(',');
+            writer.write(escape(String.join(";", mood.getTriggers())));
+            writer.write(',');
+            writer.write(String.valueOf(mood.getRecord_time()));
+            writer.write(',');
+            writer.write(String.valueOf(mood.getCreated_at()));
+            writer.write(',');
+            writer.write(String.valueOf(mood.getUpdated_at()));
+            writer.write('\n');
+        }
+
+        @Override
+        public void finish() {
+        }
+
+        private static String escape(String value) {
+            if (value == null) {
+                return "";
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                return value;
+            }
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+    }
+}
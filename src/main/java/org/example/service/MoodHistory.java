@@ -0,0 +1,202 @@
+package org.example.service;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * 单个用户心情记录的列式快照，按 (记录时间, id) 升序排列。
+ * <p>
+ * 每条记录拆成若干并行的原始类型数组：时间戳 (epoch 秒)、用户时区下的本地小时序号 (local_date 的 epoch 天数 * 24 + local_hour)、
+ * 情绪分数 (EmotionType 序号) 和 id；
+ * 触发器以 {@link TriggerDictionary} 中的词典 id 平铺在 {@code triggerIds} 中，
+ * 第 i 条记录的触发器为 {@code triggerIds[triggerOffsets[i] .. triggerOffsets[i + 1])}。
+ * 实例不可变，合并新记录返回新快照，读者无需加锁。
+ * </p>
+ */
+public final class MoodHistory {
+
+    /** 对象头与数组头的粗略开销 */
+    private static final int BASE_BYTES = 96;
+
+    private static final MoodHistory EMPTY = new MoodHistory(new long[0], new long[0], new int[0], new byte[0], new int[]{0}, new int[0]);
+
+    private final long[] ids;
+    private final long[] epochSeconds;
+    private final int[] localHours;
+    private final byte[] emotions;
+    private final int[] triggerOffsets;
+    private final int[] triggerIds;
+
+    MoodHistory(long[] ids, long[] epochSeconds, int[] localHours, byte[] emotions, int[] triggerOffsets, int[] triggerIds) {
+        this.ids = ids;
+        this.epochSeconds = epochSeconds;
+        this.localHours = localHours;
+        this.emotions = emotions;
+        this.triggerOffsets = triggerOffsets;
+        this.triggerIds = triggerIds;
+    }
+
+    public static MoodHistory empty() {
+        return EMPTY;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public long id(int index) {
+        return ids[index];
+    }
+
+    public long epochSecond(int index) {
+        return epochSeconds[index];
+    }
+
+    /** 本地日期的 epoch 天数 */
+    public long localEpochDay(int index) {
+        return Math.floorDiv(localHours[index], 24);
+    }
+
+    /** 本地小时 (0-23) */
+    public int localHour(int index) {
+        return Math.floorMod(localHours[index], 24);
+    }
+
+    public int emotion(int index) {
+        return emotions[index];
+    }
+
+    public int triggerStart(int index) {
+        return triggerOffsets[index];
+    }
+
+    public int triggerEnd(int index) {
+        return triggerOffsets[index + 1];
+    }
+
+    public int triggerId(int position) {
+        return triggerIds[position];
+    }
+
+    /**
+     * 第一条记录时间 >= epochSecond 的下标，不存在时返回 {@link #size()}。
+     */
+    public int lowerBound(long epochSecond) {
+        int low = 0;
+        int high = epochSeconds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (epochSeconds[mid] < epochSecond) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 估算的内存占用 (字节)，用作缓存权重。
+     */
+    public int estimatedBytes() {
+        long bytes = BASE_BYTES + (long) ids.length * (Long.BYTES * 2 + Integer.BYTES * 2 + 1) + (long) triggerIds.length * Integer.BYTES;
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+
+    /**
+     * 将另一份按 (时间, id) 排序的快照合并进来并返回新快照，一次遍历完成，耗时与两者大小之和成正比；
+     * 已存在的 id 被忽略，没有新记录时返回自身。
+     * 新记录通常追加在末尾，补录的历史记录会插入到对应位置。
+     */
+    MoodHistory merged(MoodHistory added) {
+        Builder builder = new Builder();
+        boolean changed = false;
+        int i = 0;
+        int j = 0;
+        while (i < ids.length || j < added.ids.length) {
+            if (j == added.ids.length || (i < ids.length && compare(this, i, added, j) <= 0)) {
+                builder.addEntry(this, i++);
+            } else if (added.ids[j] == builder.lastId()) {
+                j++;
+            } else {
+                builder.addEntry(added, j++);
+                changed = true;
+            }
+        }
+        return changed ? builder.build() : this;
+    }
+
+    private static int compare(MoodHistory a, int i, MoodHistory b, int j) {
+        int result = Long.compare(a.epochSeconds[i], b.epochSeconds[j]);
+        return result != 0 ? result : Long.compare(a.ids[i], b.ids[j]);
+    }
+
+    /**
+     * 本地日期与小时合成的本地小时序号。
+     */
+    static int localHourOf(LocalDate localDate, int localHour) {
+        return Math.toIntExact(localDate.toEpochDay() * 24 + localHour);
+    }
+
+    /**
+     * 按 (时间, id) 顺序逐条构建快照，用于从数据库加载。
+     */
+    static final class Builder {
+
+        private long[] ids = new long[64];
+        private long[] epochSeconds = new long[64];
+        private int[] localHours = new int[64];
+        private byte[] emotions = new byte[64];
+        private int[] triggerOffsets = new int[65];
+        private int[] triggerIds = new int[64];
+        private int size;
+        private int triggerCount;
+
+        void addEntry(long id, long epochSecond, int localHour, int emotion) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                epochSeconds = Arrays.copyOf(epochSeconds, capacity);
+                localHours = Arrays.copyOf(localHours, capacity);
+                emotions = Arrays.copyOf(emotions, capacity);
+                triggerOffsets = Arrays.copyOf(triggerOffsets, capacity + 1);
+            }
+            ids[size] = id;
+            epochSeconds[size] = epochSecond;
+            localHours[size] = localHour;
+            emotions[size] = (byte) emotion;
+            triggerOffsets[size] = triggerCount;
+            triggerOffsets[size + 1] = triggerCount;
+            size++;
+        }
+
+        /** 复制另一份快照中的一条记录及其触发器 */
+        void addEntry(MoodHistory source, int index) {
+            addEntry(source.ids[index], source.epochSeconds[index], source.localHours[index], source.emotions[index]);
+            for (int position = source.triggerOffsets[index]; position < source.triggerOffsets[index + 1]; position++) {
+                addTrigger(source.triggerIds[position]);
+            }
+        }
+
+        /** 为最近一次 {@link #addEntry} 的记录追加触发器 */
+        void addTrigger(int triggerId) {
+            if (triggerCount == triggerIds.length) {
+                triggerIds = Arrays.copyOf(triggerIds, triggerCount * 2);
+            }
+            triggerIds[triggerCount++] = triggerId;
+            triggerOffsets[size] = triggerCount;
+        }
+
+        long lastId() {
+            return size == 0 ? Long.MIN_VALUE : ids[size - 1];
+        }
+
+        MoodHistory build() {
+            if (size == 0) {
+                return EMPTY;
+            }
+            return new MoodHistory(Arrays.copyOf(ids, size), Arrays.copyOf(epochSeconds, size), Arrays.copyOf(localHours, size), Arrays.copyOf(emotions, size),
+                    Arrays.copyOf(triggerOffsets, size + 1), Arrays.copyOf(triggerIds, triggerCount));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package org.example.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.example.model.EmotionType;
+import org.example.model.MoodEntry;
+import org.example.model.MoodTrigger;
+import org.example.repository.MoodEntryRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 活跃用户心情记录的进程内列式缓存 ({@link MoodHistory})，供统计分析读取，命中时不访问数据库。
+ * <p>
+ * 未命中时从数据库流式加载该用户的全部记录；新建记录在事务提交后整批合并到已缓存的快照，
+ * 导入等批量变化则直接失效。按估算字节数做权重淘汰，并设置写入过期以限制多实例部署下的陈旧时间。
+ * 命中/未命中/淘汰次数与占用字节数通过 Micrometer 暴露 (cache.* 与 moodtrack.mood.history.cache.weight)。
+ * </p>
+ */
+@Slf4j
+@Service
+public class MoodHistoryCache {
+
+    private static final String CACHE_NAME = "moodHistory";
+
+    @Autowired
+    private MoodEntryRepository moodEntryRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${moodtrack.history-cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    @Value("${moodtrack.history-cache.expire-after-write:10m}")
+    private Duration expireAfterWrite;
+
+    private Cache<Long, MoodHistory> cache;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    @PostConstruct
+    void init() {
+        cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Long userId, MoodHistory history) -> history.estimatedBytes())
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        Gauge.builder("moodtrack.mood.history.cache.weight", cache,
+                        c -> c.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L))
+                .baseUnit("bytes")
+                .description("Estimated bytes held by the mood history cache")
+                .register(meterRegistry);
+
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * 获取用户的心情快照，未缓存时从数据库加载。
+     */
+    public MoodHistory get(Long userId) {
+        return cache.get(userId, this::load);
+    }
+
+    public void invalidate(Long userId) {
+        cache.invalidate(userId);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMoodDataChanged(MoodDataChangedEvent event) {
+        if (event.getCreated().isEmpty()) {
+            cache.invalidate(event.getUserId());
+            return;
+        }
+        // 仅更新已缓存的用户；未缓存的用户下次读取时会完整加载。整批记录排序后与快照一次合并
+        cache.asMap().computeIfPresent(event.getUserId(), (userId, history) -> history.merged(snapshotOf(event.getCreated())));
+    }
+
+    private static MoodHistory snapshotOf(List<MoodEntry> entries) {
+        List<MoodEntry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparingLong((MoodEntry entry) -> entry.getRecordTime().toEpochSecond())
+                .thenComparing(MoodEntry::getId));
+        MoodHistory.Builder builder = new MoodHistory.Builder();
+        for (MoodEntry entry : sorted) {
+            builder.addEntry(entry.getId(), entry.getRecordTime().toEpochSecond(),
+                    localHourOf(entry.getRecordTime(), entry.getLocalDate(), entry.getLocalHour()),
+                    entry.getEmotionType().ordinal());
+            for (MoodTrigger trigger : entry.getTriggerRows()) {
+                builder.addTrigger(trigger.getTriggerId());
+            }
+        }
+        return builder.build();
+    }
+
+    // 尚未回填 local_date 的旧记录按 UTC 计算
+    private static int localHourOf(OffsetDateTime recordTime, LocalDate localDate, Short localHour) {
+        if (localDate == null || localHour == null) {
+            OffsetDateTime utc = recordTime.withOffsetSameInstant(ZoneOffset.UTC);
+            return MoodHistory.localHourOf(utc.toLocalDate(), utc.getHour());
+        }
+        return MoodHistory.localHourOf(localDate, localHour);
+    }
+
+    private MoodHistory load(Long userId) {
+        long startNanos = System.nanoTime();
+        MoodHistory history = readOnlyTransaction.execute(status -> {
+            MoodHistory.Builder builder = new MoodHistory.Builder();
+            try (Stream<Object[]> rows = moodEntryRepository.streamHistoryRows(userId)) {
+                rows.forEach(row -> {
+                    long id = (Long) row[0];
+                    if (id != builder.lastId()) {
+                        OffsetDateTime recordTime = (OffsetDateTime) row[1];
+                        builder.addEntry(id, recordTime.toEpochSecond(),
+                                localHourOf(recordTime, (LocalDate) row[4], (Short) row[5]),
+                                ((EmotionType) row[2]).ordinal());
+                    }
+                    if (row[3] != null) {
+                        builder.addTrigger((Integer) row[3]);
+                    }
+                });
+            }
+            return builder.build();
+        });
+        log.debug("加载用户 {} 心情缓存: {} 条, 约 {} 字节, 耗时 {} ms",
+                userId, history.size(), history.estimatedBytes(), (System.nanoTime() - startNanos) / 1_000_000);
+        return history;
+    }
+}
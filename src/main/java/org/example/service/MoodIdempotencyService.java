@@ -0,0 +1,196 @@
+package org.example.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.example.exception.IdempotencyKeyMismatchException;
+import org.example.exception.InvalidIdempotencyKeyException;
+import org.example.model.MoodIdempotencyKey;
+import org.example.repository.MoodIdempotencyKeyRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.HexFormat;
+import java.util.function.Supplier;
+
+/**
+ * 基于客户端 Idempotency-Key 请求头的幂等执行。
+ * <p>
+ * 最近的键及其首次响应保存在有界的进程内缓存中，按键的 created_at 与数据库中的记录同时过期，重试命中缓存时不访问数据库。
+ * 缓存未命中时在一个事务中先占用 mood_idempotency_keys 中的主键，再执行创建并保存响应；
+ * 并发的同键请求会在唯一约束上等待，待首个请求提交后返回其响应，因此不会重复插入心情记录。
+ * 同一个键用于不同的请求体时返回 422。
+ * </p>
+ */
+@Slf4j
+@Service
+public class MoodIdempotencyService {
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    @Autowired
+    private MoodIdempotencyKeyRepository idempotencyKeyRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${moodtrack.idempotency.ttl:24h}")
+    private Duration ttl;
+
+    @Value("${moodtrack.idempotency.cache-size:10000}")
+    private long cacheSize;
+
+    private Cache<String, StoredResponse> recentKeys;
+
+    @PostConstruct
+    void init() {
+        recentKeys = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfter(new Expiry<String, StoredResponse>() {
+                    @Override
+                    public long expireAfterCreate(String key, StoredResponse value, long currentTime) {
+                        return remainingNanos(value);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, StoredResponse value, long currentTime, long currentDuration) {
+                        return remainingNanos(value);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, StoredResponse value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, recentKeys, "moodIdempotencyKeys");
+    }
+
+    /**
+     * 以幂等方式执行 action：同一用户的同一个键只会真正执行一次，之后返回首次执行结果的 JSON。
+     *
+     * @param operation 操作名，参与请求指纹计算，防止同一个键跨接口复用
+     * @param request   请求体，用于计算请求指纹
+     * @param action    实际的创建逻辑，在占用键的同一个事务中执行
+     */
+    public Result execute(Long userId, String key, String operation, Object request, Supplier<?> action) {
+        validateKey(key);
+        String requestHash = hash(operation, request);
+        String cacheKey = userId + ":" + key;
+
+        StoredResponse cached = recentKeys.getIfPresent(cacheKey);
+        if (cached != null) {
+            return replay(cached, requestHash);
+        }
+
+        OffsetDateTime expiredBefore = OffsetDateTime.now().minus(ttl);
+        StoredResponse stored = transactionTemplate.execute(status -> {
+            OffsetDateTime claimedAt = OffsetDateTime.now();
+            if (idempotencyKeyRepository.claim(userId, key, requestHash, expiredBefore) == 0) {
+                MoodIdempotencyKey existing = idempotencyKeyRepository.findById(new MoodIdempotencyKey.KeyId(userId, key))
+                        .orElseThrow(() -> new IllegalStateException("幂等键已被占用但记录不存在"));
+                return new StoredResponse(existing.getRequestHash(), readTree(existing.getResponseBody()), existing.getCreatedAt(), true);
+            }
+            JsonNode data = objectMapper.valueToTree(action.get());
+            idempotencyKeyRepository.saveResponse(userId, key, data.toString());
+            return new StoredResponse(requestHash, data, claimedAt, false);
+        });
+
+        recentKeys.put(cacheKey, stored);
+        if (stored.replayed) {
+            return replay(stored, requestHash);
+        }
+        return new Result(stored.data, false);
+    }
+
+    @Scheduled(cron = "${moodtrack.idempotency.cleanup-cron:0 40 * * * *}")
+    @Transactional
+    public void deleteExpiredKeys() {
+        int deleted = idempotencyKeyRepository.deleteExpired(OffsetDateTime.now().minus(ttl));
+        if (deleted > 0) {
+            log.info("清理过期幂等键 {} 个", deleted);
+        }
+    }
+
+    private Result replay(StoredResponse stored, String requestHash) {
+        if (!stored.requestHash.equals(requestHash)) {
+            throw new IdempotencyKeyMismatchException("Idempotency-Key 已用于内容不同的请求");
+        }
+        return new Result(stored.data, true);
+    }
+
+    private void validateKey(String key) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new InvalidIdempotencyKeyException("Idempotency-Key 长度必须在 1 到 " + MAX_KEY_LENGTH + " 个字符之间");
+        }
+    }
+
+    private String hash(String operation, Object request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(operation.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            digest.update(objectMapper.writeValueAsBytes(request));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException("无法计算请求指纹", e);
+        }
+    }
+
+    // 缓存项与数据库中的键同时过期：从键的 created_at 而不是放入缓存的时刻开始计算 TTL
+    private long remainingNanos(StoredResponse stored) {
+        Duration remaining = Duration.between(OffsetDateTime.now(), stored.createdAt.plus(ttl));
+        return remaining.isNegative() ? 0 : remaining.toNanos();
+    }
+
+    private JsonNode readTree(String json) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("幂等键保存的响应无法解析", e);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Result {
+        /** 响应中 data 字段的内容 */
+        private final JsonNode data;
+        /** 是否为重试请求的重放 */
+        private final boolean replayed;
+    }
+
+    @AllArgsConstructor
+    private static class StoredResponse {
+        private final String requestHash;
+        private final JsonNode data;
+        /** 键在数据库中的 created_at，缓存据此过期 */
+        private final OffsetDateTime createdAt;
+        private final boolean replayed;
+    }
+}
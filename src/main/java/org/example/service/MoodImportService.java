@@ -0,0 +1,437 @@
+package org.example.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.example.dto.CreateMoodRequest;
+import org.example.dto.MoodFileFormat;
+import org.example.dto.MoodImportReport;
+import org.example.exception.InvalidImportFileException;
+import org.example.model.EmotionType;
+import org.example.model.MoodEntry;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 心情记录批量导入 (CSV / NDJSON)。
+ * <p>
+ * 文件逐行流式解析，并按 {@link CreateMoodRequest} 的规则逐条校验；合法的行按块累积，
+ * 每块通过 PostgreSQL COPY 协议写入 moods 和 mood_triggers。不合法的行记入导入报告。
+ * 整个文件在同一个事务中写入：文件本身无法解析 (如引号未闭合) 或写入失败时什么也不提交，
+ * 因此失败的导入可以原样重新上传而不会产生重复记录；成功的导入再次上传则会重复写入。
+ * 每日汇总在提交后按月重算一次，而不是逐行维护。
+ * </p>
+ * <p>
+ * CSV 需包含表头，列名与创建接口的 JSON 字段一致：mood_type (也接受导出文件中的 emotion_type)、
+ * mood_description、triggers (以 ; 分隔)、record_time、share_to_public、is_anonymous。
+ * </p>
+ */
+@Service
+@Slf4j
+public class MoodImportService {
+
+    private static final int MAX_REPORTED_REJECTIONS = 1000;
+
+    private static final String COPY_MOODS_SQL = "COPY moods (id, user_id, emotion_type, mood_description, share_to_public, "
+            + "is_anonymous, record_time, local_date, local_hour, created_at, updated_at) FROM STDIN WITH (FORMAT csv)";
+
+    private static final String COPY_TRIGGERS_SQL = "COPY mood_triggers (mood_id, trigger_id, record_time) FROM STDIN WITH (FORMAT csv)";
+
+    @Autowired
+    private MoodRequestValidator moodRequestValidator;
+
+    @Autowired
+    private MoodRollupService moodRollupService;
+
+    @Autowired
+    private TriggerDictionary triggerDictionary;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${moodtrack.import.chunk-size:5000}")
+    private int chunkSize;
+
+    /**
+     * @param zone 用户时区，用于计算每条记录的 local_date / local_hour
+     */
+    public MoodImportReport importMoods(Long userId, ZoneId zone, MoodFileFormat format, InputStream inputStream) throws IOException {
+        MoodImportReport report = new MoodImportReport();
+        ImportState state = new ImportState();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            transactionTemplate.executeWithoutResult(status -> {
+                try {
+                    importRows(userId, zone, format, reader, report, state);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        refreshRollups(userId, state);
+        if (state.minDate != null) {
+            eventPublisher.publishEvent(MoodDataChangedEvent.bulkChange(userId));
+        }
+
+        log.info("用户 {} 导入心情记录完成: 共 {} 行, 成功 {} 行, 拒绝 {} 行, {} 个块",
+                userId, report.getTotalRows(), report.getImportedRows(), report.getRejectedRows(), report.getCopiedChunks());
+        return report;
+    }
+
+    private void importRows(Long userId, ZoneId zone, MoodFileFormat format, BufferedReader reader,
+                            MoodImportReport report, ImportState state) throws IOException {
+        List<CreateMoodRequest> chunk = new ArrayList<>(chunkSize);
+        RowSource source = format == MoodFileFormat.csv ? new CsvRowSource(reader) : new NdjsonRowSource(reader);
+        ParsedRow row;
+        while ((row = source.next()) != null) {
+            report.setTotalRows(report.getTotalRows() + 1);
+            Map<String, String> errors = row.errors != null ? row.errors : moodRequestValidator.validate(row.request);
+            if (!errors.isEmpty()) {
+                reject(report, row.line, errors);
+                continue;
+            }
+            chunk.add(row.request);
+            if (chunk.size() >= chunkSize) {
+                copyChunk(userId, zone, chunk, report, state);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            copyChunk(userId, zone, chunk, report, state);
+        }
+    }
+
+    private void reject(MoodImportReport report, long line, Map<String, String> errors) {
+        report.setRejectedRows(report.getRejectedRows() + 1);
+        if (report.getRejected().size() < MAX_REPORTED_REJECTIONS) {
+            MoodImportReport.RejectedRow rejected = new MoodImportReport.RejectedRow();
+            rejected.setLine(line);
+            rejected.setErrors(errors);
+            report.getRejected().add(rejected);
+        } else {
+            report.setRejectedTruncated(true);
+        }
+    }
+
+    private void copyChunk(Long userId, ZoneId zone, List<CreateMoodRequest> chunk, MoodImportReport report, ImportState state) {
+        OffsetDateTime now = OffsetDateTime.now();
+        StringBuilder moods = new StringBuilder(chunk.size() * 128);
+        StringBuilder triggers = new StringBuilder();
+
+        long[] ids = allocateIds(chunk.size());
+        Set<String> triggerNames = new HashSet<>();
+        chunk.stream().filter(request -> request.getTriggers() != null).forEach(request -> triggerNames.addAll(request.getTriggers()));
+        Map<String, Integer> triggerIds = triggerNames.isEmpty() ? Map.of() : triggerDictionary.idsOf(triggerNames);
+        for (int i = 0; i < chunk.size(); i++) {
+            CreateMoodRequest request = chunk.get(i);
+            OffsetDateTime recordTime = moodRequestValidator.parseRecordTime(request.getRecordTime());
+            ZonedDateTime local = recordTime.atZoneSameInstant(zone);
+            appendCsvRow(moods, ids[i], userId, request.getMoodType().name(), request.getMoodDescription(),
+                    request.isShareToPublic(), request.isAnonymous(), recordTime, local.toLocalDate(), local.getHour(), now, now);
+            if (request.getTriggers() != null) {
+                for (String trigger : request.getTriggers()) {
+                    appendCsvRow(triggers, ids[i], triggerIds.get(trigger), recordTime);
+                }
+            }
+            state.include(local.toLocalDate());
+        }
+
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+            try {
+                copyManager.copyIn(COPY_MOODS_SQL, new StringReader(moods.toString()));
+                if (triggers.length() > 0) {
+                    copyManager.copyIn(COPY_TRIGGERS_SQL, new StringReader(triggers.toString()));
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("COPY 写入失败", e);
+            }
+            return null;
+        });
+
+        report.setImportedRows(report.getImportedRows() + chunk.size());
+        report.setCopiedChunks(report.getCopiedChunks() + 1);
+    }
+
+    // 与 Hibernate 的 pooled 优化器共用 moods_seq：每次 nextval 返回 v 即独占 (v - 步长, v] 这一段 ID
+    private long[] allocateIds(int count) {
+        int blocks = (count + MoodEntry.ID_ALLOCATION_SIZE - 1) / MoodEntry.ID_ALLOCATION_SIZE;
+        List<Long> highValues = jdbcTemplate.queryForList("SELECT nextval('moods_seq') FROM generate_series(1, ?)", Long.class, blocks);
+        long[] ids = new long[count];
+        int index = 0;
+        for (Long high : highValues) {
+            for (long id = Math.max(1, high - MoodEntry.ID_ALLOCATION_SIZE + 1); id <= high && index < count; id++) {
+                ids[index++] = id;
+            }
+        }
+        if (index < count) {
+            throw new IllegalStateException("moods_seq 分配的 ID 不足");
+        }
+        return ids;
+    }
+
+    // 按月分段重算，避免一次加载整个导入区间的原始数据
+    private void refreshRollups(Long userId, ImportState state) {
+        if (state.minDate == null) {
+            return;
+        }
+        LocalDate start = state.minDate;
+        while (!start.isAfter(state.maxDate)) {
+            LocalDate monthEnd = start.withDayOfMonth(start.lengthOfMonth());
+            LocalDate end = monthEnd.isAfter(state.maxDate) ? state.maxDate : monthEnd;
+            moodRollupService.refreshDays(userId, start, end);
+            start = end.plusDays(1);
+        }
+    }
+
+    private static void appendCsvRow(StringBuilder target, Object... values) {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                target.append(',');
+            }
+            Object value = values[i];
+            if (value == null) {
+                // COPY CSV 中未加引号的空字段表示 NULL
+                continue;
+            }
+            if (value instanceof String text) {
+                target.append('"').append(text.replace("\"", "\"\"")).append('"');
+            } else {
+                target.append(value);
+            }
+        }
+        target.append('\n');
+    }
+
+    private static class ImportState {
+        private LocalDate minDate;
+        private LocalDate maxDate;
+
+        void include(LocalDate date) {
+            if (minDate == null || date.isBefore(minDate)) {
+                minDate = date;
+            }
+            if (maxDate == null || date.isAfter(maxDate)) {
+                maxDate = date;
+            }
+        }
+    }
+
+    private static class ParsedRow {
+        private final long line;
+        private final CreateMoodRequest request;
+        private final Map<String, String> errors;
+
+        ParsedRow(long line, CreateMoodRequest request, Map<String, String> errors) {
+            this.line = line;
+            this.request = request;
+            this.errors = errors;
+        }
+    }
+
+    private interface RowSource {
+        ParsedRow next() throws IOException;
+    }
+
+    private class NdjsonRowSource implements RowSource {
+        private final BufferedReader reader;
+        private long line;
+
+        NdjsonRowSource(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public ParsedRow next() throws IOException {
+            String text;
+            while ((text = reader.readLine()) != null) {
+                line++;
+                if (text.isBlank()) {
+                    continue;
+                }
+                try {
+                    return new ParsedRow(line, objectMapper.readValue(text, CreateMoodRequest.class), null);
+                } catch (JsonProcessingException e) {
+                    return new ParsedRow(line, null, Map.of("line", "JSON 解析失败: " + e.getOriginalMessage()));
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class CsvRowSource implements RowSource {
+        private final BufferedReader reader;
+        private final Map<String, Integer> columns = new HashMap<>();
+        private long line;
+
+        CsvRowSource(BufferedReader reader) throws IOException {
+            this.reader = reader;
+            List<String> header = readRecord();
+            if (header == null) {
+                throw new InvalidImportFileException("CSV 文件为空");
+            }
+            for (int i = 0; i < header.size(); i++) {
+                columns.put(header.get(i).replace("\uFEFF", "").trim().toLowerCase(), i);
+            }
+            if (!columns.containsKey("mood_type") && columns.containsKey("emotion_type")) {
+                columns.put("mood_type", columns.get("emotion_type"));
+            }
+            if (!columns.containsKey("mood_type")) {
+                throw new InvalidImportFileException("CSV 表头缺少 mood_type 列");
+            }
+        }
+
+        @Override
+        public ParsedRow next() throws IOException {
+            long startLine = line + 1;
+            List<String> record = readRecord();
+            while (record != null && record.size() == 1 && record.get(0).isEmpty()) {
+                startLine = line + 1;
+                record = readRecord();
+            }
+            if (record == null) {
+                return null;
+            }
+
+            Map<String, String> errors = new LinkedHashMap<>();
+            CreateMoodRequest request = new CreateMoodRequest();
+            String moodType = value(record, "mood_type");
+            if (moodType != null) {
+                try {
+                    request.setMoodType(EmotionType.valueOf(moodType));
+                } catch (IllegalArgumentException e) {
+                    errors.put("mood_type", "无效的情绪类型: " + moodType);
+                }
+            }
+            request.setMoodDescription(value(record, "mood_description"));
+            String triggers = value(record, "triggers");
+            if (triggers != null) {
+                request.setTriggers(Arrays.stream(triggers.split(";")).map(String::trim).filter(t -> !t.isEmpty()).collect(Collectors.toList()));
+            }
+            request.setRecordTime(value(record, "record_time"));
+            Boolean shareToPublic = booleanValue(record, "share_to_public", errors);
+            if (shareToPublic != null) {
+                request.setShareToPublic(shareToPublic);
+            }
+            Boolean anonymous = booleanValue(record, "is_anonymous", errors);
+            if (anonymous != null) {
+                request.setAnonymous(anonymous);
+            }
+            return new ParsedRow(startLine, request, errors.isEmpty() ? null : errors);
+        }
+
+        private String value(List<String> record, String column) {
+            Integer index = columns.get(column);
+            if (index == null || index >= record.size()) {
+                return null;
+            }
+            String value = record.get(index).trim();
+            return value.isEmpty() ? null : value;
+        }
+
+        // 只接受 true / false，"yes"、"1" 或拼写错误记为该行的错误，而不是当作 false
+        private Boolean booleanValue(List<String> record, String column, Map<String, String> errors) {
+            String value = value(record, column);
+            if (value == null) {
+                return null;
+            }
+            if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")) {
+                return Boolean.valueOf(value);
+            }
+            errors.put(column, "必须为 true 或 false: " + value);
+            return null;
+        }
+
+        // 读取一条 CSV 记录，支持引号转义以及引号内的换行
+        private List<String> readRecord() throws IOException {
+            String text = reader.readLine();
+            if (text == null) {
+                return null;
+            }
+            line++;
+            long startLine = line;
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            int i = 0;
+            while (true) {
+                if (i >= text.length()) {
+                    if (quoted) {
+                        String next = reader.readLine();
+                        if (next == null) {
+                            throw new InvalidImportFileException("CSV 第 " + startLine + " 行的引号未闭合");
+                        }
+                        line++;
+                        field.append('\n');
+                        text = next;
+                        i = 0;
+                        continue;
+                    }
+                    break;
+                }
+                char c = text.charAt(i++);
+                if (quoted) {
+                    if (c == '"') {
+                        if (i < text.length() && text.charAt(i) == '"') {
+                            field.append('"');
+                            i++;
+                        } else {
+                            quoted = false;
+                        }
+                    } else {
+                        field.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else {
+                    field.append(c);
+                }
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package org.example.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * moods / mood_triggers 按月范围分区的维护任务。
+ * <p>
+ * 表结构需先通过 {@code db/partitioning/convert-moods-to-partitioned.sql} 转换为分区表，
+ * 再开启 {@code moodtrack.partitioning.enabled}。之后在启动时和每天定时：
+ * 预先创建当前月及未来若干个月的分区，并将超出保留期的旧分区 DETACH 为独立表 (不删除数据，便于归档)。
+ * </p>
+ */
+@Service
+@Slf4j
+public class MoodPartitionMaintenanceService {
+
+    private static final DateTimeFormatter SUFFIX_FORMAT = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    // 创建时先父表 moods；DETACH 时先引用方 mood_triggers，避免外键检查失败
+    private static final List<String> PARTITIONED_TABLES = List.of("moods", "mood_triggers");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MoodDataVersionService moodDataVersionService;
+
+    @Value("${moodtrack.partitioning.enabled:false}")
+    private boolean enabled;
+
+    @Value("${moodtrack.partitioning.premake-months:3}")
+    private int premakeMonths;
+
+    @Value("${moodtrack.partitioning.retention-months:0}")
+    private int retentionMonths;
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${moodtrack.partitioning.maintenance-cron:0 15 2 * * *}")
+    public void maintainPartitions() {
+        if (!enabled) {
+            return;
+        }
+        if (!isPartitioned("moods")) {
+            log.warn("moodtrack.partitioning.enabled=true 但 moods 不是分区表，请先执行分区转换脚本");
+            return;
+        }
+
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+        for (int i = 0; i <= premakeMonths; i++) {
+            for (String table : PARTITIONED_TABLES) {
+                createPartition(table, current.plusMonths(i));
+            }
+        }
+        if (retentionMonths > 0) {
+            YearMonth oldestKept = current.minusMonths(retentionMonths);
+            int detached = 0;
+            for (int i = PARTITIONED_TABLES.size() - 1; i >= 0; i--) {
+                detached += detachPartitionsBefore(PARTITIONED_TABLES.get(i), oldestKept);
+            }
+            if (detached > 0) {
+                // 分离的分区中可能包含任意用户的记录
+                moodDataVersionService.invalidateAll();
+            }
+        }
+    }
+
+    private boolean isPartitioned(String table) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM pg_partitioned_table pt JOIN pg_class c ON c.oid = pt.partrelid WHERE c.relname = ? AND pg_table_is_visible(c.oid)",
+                Integer.class, table);
+        return count != null && count > 0;
+    }
+
+    private void createPartition(String table, YearMonth month) {
+        String partition = table + "_" + month.format(SUFFIX_FORMAT);
+        String sql = String.format("CREATE TABLE IF NOT EXISTS %s PARTITION OF %s FOR VALUES FROM ('%s') TO ('%s')",
+                partition, table, month.atDay(1) + " 00:00:00+00", month.plusMonths(1).atDay(1) + " 00:00:00+00");
+        try {
+            jdbcTemplate.execute(sql);
+        } catch (RuntimeException e) {
+            // 常见原因：DEFAULT 分区中已有落在该范围内的行，需要人工迁移后重试
+            log.error("创建分区 {} 失败", partition, e);
+        }
+    }
+
+    private int detachPartitionsBefore(String table, YearMonth oldestKept) {
+        List<String> partitions = jdbcTemplate.queryForList(
+                "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid JOIN pg_class p ON p.oid = i.inhparent WHERE p.relname = ? AND pg_table_is_visible(p.oid)",
+                String.class, table);
+        int detached = 0;
+        for (String partition : partitions) {
+            YearMonth month = monthOf(table, partition);
+            if (month != null && month.isBefore(oldestKept)) {
+                jdbcTemplate.execute(String.format("ALTER TABLE %s DETACH PARTITION %s", table, partition));
+                log.info("已将分区 {} 从 {} 中分离", partition, table);
+                detached++;
+            }
+        }
+        return detached;
+    }
+
+    private YearMonth monthOf(String table, String partition) {
+        String prefix = table + "_";
+        if (!partition.startsWith(prefix)) {
+            return null;
+        }
+        try {
+            return YearMonth.parse(partition.substring(prefix.length()), SUFFIX_FORMAT);
+        } catch (DateTimeParseException e) {
+            // 例如 DEFAULT 分区 moods_default
+            return null;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package org.example.service;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.example.dto.CreateMoodRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 逐条校验 {@link CreateMoodRequest}，用于批量创建和文件导入等需要按条目报告错误的场景。
+ * <p>
+ * 除 Bean Validation 注解外，还检查 record_time 是否为合法的 ISO-8601 时间。
+ * </p>
+ */
+@Component
+public class MoodRequestValidator {
+
+    @Autowired
+    private Validator validator;
+
+    /**
+     * @return 字段名到错误信息的映射，校验通过时为空。
+     */
+    public Map<String, String> validate(CreateMoodRequest request) {
+        Map<String, String> errors = new LinkedHashMap<>();
+        if (request == null) {
+            errors.put("mood", "心情记录不能为空");
+            return errors;
+        }
+        for (ConstraintViolation<CreateMoodRequest> violation : validator.validate(request)) {
+            errors.put(violation.getPropertyPath().toString(), violation.getMessage());
+        }
+        if (request.getRecordTime() != null) {
+            try {
+                OffsetDateTime.parse(request.getRecordTime());
+            } catch (DateTimeParseException e) {
+                errors.put("record_time", "记录时间格式错误，应为 ISO-8601 格式");
+            }
+        }
+        return errors;
+    }
+
+    public OffsetDateTime parseRecordTime(String recordTime) {
+        return recordTime != null ? OffsetDateTime.parse(recordTime) : OffsetDateTime.now();
+    }
+}
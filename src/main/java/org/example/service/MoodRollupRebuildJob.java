@@ -0,0 +1,41 @@
+package org.example.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 从原始心情记录全量重建每日情绪汇总。
+ * <p>
+ * 用于首次上线回填历史数据或修复不一致，按用户逐个在独立事务中重建。
+ * 默认不调度，通过 {@code moodtrack.rollup.rebuild-cron} 配置 cron 表达式启用。
+ * </p>
+ */
+@Component
+@Slf4j
+public class MoodRollupRebuildJob {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MoodRollupService moodRollupService;
+
+    @Scheduled(cron = "${moodtrack.rollup.rebuild-cron:-}")
+    public void rebuildAll() {
+        long startedAt = System.currentTimeMillis();
+        int users = 0;
+        int days = 0;
+        for (Long userId : userRepository.findAllIds()) {
+            try {
+                days += moodRollupService.rebuildUser(userId);
+                users++;
+            } catch (RuntimeException e) {
+                log.error("重建用户 {} 的情绪汇总失败", userId, e);
+            }
+        }
+        log.info("情绪汇总重建完成: {} 个用户, {} 天, 耗时 {} ms", users, days, System.currentTimeMillis() - startedAt);
+    }
+}
@@ -0,0 +1,168 @@
+package org.example.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.dto.MoodCalendarDay;
+import org.example.model.EmotionType;
+import org.example.model.MoodDailyRollup;
+import org.example.model.MoodEntry;
+import org.example.repository.MoodDailyRollupRepository;
+import org.example.repository.MoodEntryRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 维护 {@link MoodDailyRollup} 每日情绪汇总。
+ * <p>
+ * 汇总日期为心情记录的 local_date (用户时区下的日期)。
+ * 写入路径在心情记录所在事务中调用 {@link #applyCreated(Collection)} 做增量合并；
+ * 修改或删除心情记录的路径应调用 {@link #refreshDays(Long, LocalDate, LocalDate)} 从原始数据重算受影响的日期；
+ * {@link #rebuildUser(Long)} 用于全量重建 (见 {@link MoodRollupRebuildJob})。
+ * 日历接口通过 {@link #getCalendar} 读取汇总，不扫描原始心情记录。
+ * </p>
+ */
+@Service
+public class MoodRollupService {
+
+    @Autowired
+    private MoodDailyRollupRepository rollupRepository;
+
+    @Autowired
+    private MoodEntryRepository moodEntryRepository;
+
+    @Autowired
+    private TriggerDictionary triggerDictionary;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void applyCreated(Collection<MoodEntry> entries) {
+        Map<MoodDailyRollup.RollupId, RollupDelta> deltas = new LinkedHashMap<>();
+        for (MoodEntry entry : entries) {
+            MoodDailyRollup.RollupId key = new MoodDailyRollup.RollupId(entry.getUser().getId(), entry.getLocalDate());
+            deltas.computeIfAbsent(key, k -> new RollupDelta()).add(entry.getEmotionType(), entry.getTriggers());
+        }
+        deltas.forEach(this::merge);
+    }
+
+    @Transactional(readOnly = true)
+    public List<MoodDailyRollup> getRollups(Long userId, LocalDate startDate, LocalDate endDate) {
+        return rollupRepository.findByUserIdAndLocalDateBetweenOrderByLocalDate(userId, startDate, endDate);
+    }
+
+    /**
+     * 日历视图：区间内有记录的每一天一行，只读取汇总表的 O(天数) 行。
+     */
+    @Transactional(readOnly = true)
+    public List<MoodCalendarDay> getCalendar(Long userId, LocalDate startDate, LocalDate endDate) {
+        List<MoodCalendarDay> days = new ArrayList<>();
+        for (MoodDailyRollup rollup : getRollups(userId, startDate, endDate)) {
+            MoodCalendarDay day = new MoodCalendarDay();
+            day.setDate(rollup.getLocalDate());
+            day.setEntryCount(rollup.getEntryCount());
+            day.setAverageScore(Math.round(rollup.getAverageScore() * 100.0) / 100.0);
+            day.setLowestEmotion(EmotionType.values()[rollup.getMinScore()].name());
+            day.setHighestEmotion(EmotionType.values()[rollup.getMaxScore()].name());
+            day.getEmotionHistogram().put(EmotionType.very_bad.name(), rollup.getVeryBadCount());
+            day.getEmotionHistogram().put(EmotionType.bad.name(), rollup.getBadCount());
+            day.getEmotionHistogram().put(EmotionType.neutral.name(), rollup.getNeutralCount());
+            day.getEmotionHistogram().put(EmotionType.good.name(), rollup.getGoodCount());
+            day.getEmotionHistogram().put(EmotionType.very_good.name(), rollup.getVeryGoodCount());
+            day.getTriggerCounts().putAll(rollup.getTriggerCounts());
+            days.add(day);
+        }
+        return days;
+    }
+
+    @Transactional
+    public void refreshDays(Long userId, LocalDate startDate, LocalDate endDate) {
+        rollupRepository.deleteByUserIdAndLocalDateBetween(userId, startDate, endDate);
+        aggregate(userId, startDate, endDate);
+    }
+
+    @Transactional
+    public int rebuildUser(Long userId) {
+        rollupRepository.deleteByUserId(userId);
+        LocalDate first = moodEntryRepository.findFirstLocalDate(userId);
+        LocalDate last = moodEntryRepository.findLastLocalDate(userId);
+        if (first == null) {
+            return 0;
+        }
+        return aggregate(userId, first, last);
+    }
+
+    // 汇总日期即心情记录的 local_date，按 (user_id, local_date) 索引做范围扫描
+    private int aggregate(Long userId, LocalDate start, LocalDate end) {
+        List<Object[]> triggerRows = moodEntryRepository.findRollupTriggerRows(userId, start, end);
+        Set<Integer> triggerIds = new HashSet<>();
+        triggerRows.forEach(row -> triggerIds.add((Integer) row[1]));
+        Map<Integer, String> triggerNames = triggerDictionary.namesOf(triggerIds);
+        Map<Long, List<String>> triggersByMood = new HashMap<>();
+        for (Object[] row : triggerRows) {
+            triggersByMood.computeIfAbsent((Long) row[0], id -> new ArrayList<>()).add(triggerNames.get((Integer) row[1]));
+        }
+
+        Map<MoodDailyRollup.RollupId, RollupDelta> deltas = new LinkedHashMap<>();
+        for (Object[] row : moodEntryRepository.findRollupRows(userId, start, end)) {
+            MoodDailyRollup.RollupId key = new MoodDailyRollup.RollupId(userId, (LocalDate) row[1]);
+            deltas.computeIfAbsent(key, k -> new RollupDelta()).add((EmotionType) row[2], triggersByMood.get((Long) row[0]));
+        }
+        deltas.forEach(this::merge);
+        return deltas.size();
+    }
+
+    private void merge(MoodDailyRollup.RollupId key, RollupDelta delta) {
+        String triggerCounts;
+        try {
+            triggerCounts = objectMapper.writeValueAsString(delta.triggerCounts);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize trigger counts", e);
+        }
+        rollupRepository.mergeDelta(key.getUserId(), key.getLocalDate(), delta.entryCount,
+                delta.emotionCounts[EmotionType.very_bad.ordinal()],
+                delta.emotionCounts[EmotionType.bad.ordinal()],
+                delta.emotionCounts[EmotionType.neutral.ordinal()],
+                delta.emotionCounts[EmotionType.good.ordinal()],
+                delta.emotionCounts[EmotionType.very_good.ordinal()],
+                delta.scoreSum, delta.minScore, delta.maxScore, triggerCounts);
+    }
+
+    /**
+     * 同一 (用户, 日期) 的一组心情记录累积出的增量。
+     */
+    private static class RollupDelta {
+        private int entryCount;
+        private final int[] emotionCounts = new int[EmotionType.values().length];
+        private long scoreSum;
+        private int minScore = Integer.MAX_VALUE;
+        private int maxScore = Integer.MIN_VALUE;
+        private final Map<String, Integer> triggerCounts = new HashMap<>();
+
+        void add(EmotionType emotionType, List<String> triggers) {
+            int score = emotionType.ordinal();
+            entryCount++;
+            emotionCounts[score]++;
+            scoreSum += score;
+            minScore = Math.min(minScore, score);
+            maxScore = Math.max(maxScore, score);
+            if (triggers != null) {
+                for (String trigger : triggers) {
+                    triggerCounts.merge(trigger, 1, Integer::sum);
+                }
+            }
+        }
+    }
+}
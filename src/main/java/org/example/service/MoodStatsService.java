@@ -0,0 +1,153 @@
+package org.example.service;
+
+import org.example.dto.MoodStatsResponse;
+import org.example.model.EmotionType;
+import org.example.model.MoodEntry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.TextStyle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * 心情统计。
+ * <p>
+ * 所有指标都由 {@link MoodHistoryCache} 中的列式快照一次遍历得出：先二分定位时间范围，
+ * 再顺序扫描原始类型数组并按分数、小时、星期和触发器 id 累加计数。缓存命中时不访问数据库。
+ * 日期范围、小时和星期均按记录写入时用户所在时区的本地日期与小时计算。
+ * </p>
+ */
+@Service
+public class MoodStatsService {
+
+    private static final int EMOTION_TYPES = EmotionType.values().length;
+
+    @Autowired
+    private MoodHistoryCache moodHistoryCache;
+
+    @Autowired
+    private TriggerDictionary triggerDictionary;
+
+    public MoodStatsResponse getStats(Long userId, LocalDate startDate, LocalDate endDate, int topTriggerLimit) {
+        long[] emotionCounts = new long[EMOTION_TYPES];
+        long[] hourCounts = new long[24];
+        long[] hourScoreSums = new long[24];
+        long[] weekdayCounts = new long[7];
+        long[] weekdayScoreSums = new long[7];
+
+        MoodHistory history = moodHistoryCache.get(userId);
+        int[] rangeTriggerIds = new int[16];
+        int rangeTriggerCount = 0;
+        // 快照按 UTC 时间排序：先用覆盖所有时区的放宽区间定位，再按本地日期精确过滤
+        long startEpoch = MoodEntry.recordTimeLowerBound(startDate).toEpochSecond();
+        long endEpoch = MoodEntry.recordTimeUpperBound(endDate).toEpochSecond();
+        long startDay = startDate.toEpochDay();
+        long endDay = endDate.toEpochDay();
+        for (int i = history.lowerBound(startEpoch); i < history.size() && history.epochSecond(i) < endEpoch; i++) {
+            long epochDay = history.localEpochDay(i);
+            if (epochDay < startDay || epochDay > endDay) {
+                continue;
+            }
+            int score = history.emotion(i);
+            int hour = history.localHour(i);
+            // 1970-01-01 为星期四 (DayOfWeek 序号 3)
+            int weekday = (int) Math.floorMod(epochDay + 3, 7L);
+            emotionCounts[score]++;
+            hourCounts[hour]++;
+            hourScoreSums[hour] += score;
+            weekdayCounts[weekday]++;
+            weekdayScoreSums[weekday] += score;
+            for (int t = history.triggerStart(i); t < history.triggerEnd(i); t++) {
+                if (rangeTriggerCount == rangeTriggerIds.length) {
+                    rangeTriggerIds = Arrays.copyOf(rangeTriggerIds, rangeTriggerCount * 2);
+                }
+                rangeTriggerIds[rangeTriggerCount++] = history.triggerId(t);
+            }
+        }
+
+        MoodStatsResponse response = new MoodStatsResponse();
+        response.setStartDate(startDate);
+        response.setEndDate(endDate);
+
+        // 分数只有 5 个离散取值，均值和方差可以直接由直方图得出
+        long total = 0;
+        long scoreSum = 0;
+        for (int score = 0; score < EMOTION_TYPES; score++) {
+            total += emotionCounts[score];
+            scoreSum += score * emotionCounts[score];
+            response.getEmotionHistogram().put(EmotionType.values()[score].name(), (int) emotionCounts[score]);
+        }
+        double mean = total == 0 ? 0.0 : (double) scoreSum / total;
+        double variance = 0.0;
+        for (int score = 0; score < EMOTION_TYPES && total > 0; score++) {
+            variance += emotionCounts[score] * (score - mean) * (score - mean) / total;
+        }
+        response.setTotalEntries((int) total);
+        response.setMean(round(mean));
+        response.setVolatility(round(Math.sqrt(variance)));
+
+        for (int hour = 0; hour < 24; hour++) {
+            response.getByHourOfDay().add(bucket(String.format("%02d:00", hour), hourCounts[hour], hourScoreSums[hour]));
+        }
+        for (DayOfWeek day : DayOfWeek.values()) {
+            response.getByWeekday().add(bucket(day.getDisplayName(TextStyle.FULL, Locale.ENGLISH), weekdayCounts[day.ordinal()], weekdayScoreSums[day.ordinal()]));
+        }
+        response.getTopTriggers().addAll(topTriggers(Arrays.copyOf(rangeTriggerIds, rangeTriggerCount), topTriggerLimit));
+        return response;
+    }
+
+    // 词典 id 是全局的，不适合作为计数数组下标；排序后按连续段计数
+    private List<MoodStatsResponse.TriggerStat> topTriggers(int[] triggerIds, int limit) {
+        Arrays.sort(triggerIds);
+        Map<Integer, Integer> counts = new HashMap<>();
+        for (int start = 0, end; start < triggerIds.length; start = end) {
+            end = start + 1;
+            while (end < triggerIds.length && triggerIds[end] == triggerIds[start]) {
+                end++;
+            }
+            counts.put(triggerIds[start], end - start);
+        }
+        Map<Integer, String> names = triggerDictionary.namesOf(counts.keySet());
+        // 词典中查不到名称的 id (词条已被删除) 无法展示，排序前剔除
+        counts.keySet().retainAll(names.keySet());
+
+        PriorityQueue<Integer> top = new PriorityQueue<>(Comparator.<Integer>comparingInt(counts::get)
+                .thenComparing(names::get, Comparator.reverseOrder()));
+        for (Integer id : counts.keySet()) {
+            top.offer(id);
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+        List<MoodStatsResponse.TriggerStat> topTriggers = new ArrayList<>();
+        while (!top.isEmpty()) {
+            int id = top.poll();
+            MoodStatsResponse.TriggerStat stat = new MoodStatsResponse.TriggerStat();
+            stat.setTrigger(names.get(id));
+            stat.setCount(counts.get(id));
+            topTriggers.add(0, stat);
+        }
+        return topTriggers;
+    }
+
+    private MoodStatsResponse.BucketStat bucket(String label, long count, long scoreSum) {
+        MoodStatsResponse.BucketStat bucket = new MoodStatsResponse.BucketStat();
+        bucket.setLabel(label);
+        bucket.setCount((int) count);
+        bucket.setAverageScore(count == 0 ? null : round((double) scoreSum / count));
+        return bucket;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100.0) / 100.0;
+    }
+}
@@ -0,0 +1,284 @@
+package org.example.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.example.model.ai.AnalysisPatterns;
+import org.example.model.ai.RiskAssessment;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 将本地统计结果压缩为提供给模型的分层特征摘要，使提示词大小不随日期范围线性增长。
+ * <p>
+ * 整体统计和规律 (星期、早晚、触发器、风险) 始终保留；按时间段的明细按范围长度选择粒度：
+ * 两周以内按天，约三个月以内按周 (周一开始)，两年以内按自然月，更长按季度。
+ * 摘要序列化后估算的 token 数超过 {@code moodtrack.gemini.prompt.max-tokens} 时依次降级：
+ * 换用更粗的粒度，减少每类触发器的个数，最后只保留最近的若干时间段并注明省略了多少个。
+ * 降级只影响提示词，报告中保存的统计结果不变。
+ * </p>
+ */
+@Component
+public class PromptFeatureSummarizer {
+
+    private static final int MAX_TRIGGERS = 5;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${moodtrack.gemini.prompt.max-tokens:1500}")
+    private int maxTokens;
+
+    public FeatureSummary summarize(GeminiAPIService.MoodDataAnalysis analysis) {
+        LocalDate startDate = analysis.getStartDate();
+        LocalDate endDate = analysis.getEndDate();
+        int days = (int) ChronoUnit.DAYS.between(startDate, endDate) + 1;
+        Granularity granularity = Granularity.forRange(days);
+        int triggerLimit = MAX_TRIGGERS;
+        List<PeriodFeature> periods = periods(analysis.getDailySeries(), granularity, startDate, endDate);
+        int omitted = 0;
+
+        FeatureSummary summary;
+        int tokens;
+        while (true) {
+            summary = FeatureSummary.builder()
+                    .range(new DateRange(startDate, endDate, days, granularity))
+                    .totalEntries(analysis.getTotalEntries())
+                    .averageScore(LocalAnalysisEngine.round(analysis.getAverageScore()))
+                    .overallTrend(analysis.getOverallTrend())
+                    .urgencyLevel(analysis.getUrgencyLevel())
+                    .patterns(limitTriggers(analysis.getPatterns(), triggerLimit))
+                    .riskAssessment(analysis.getRiskAssessment())
+                    .periods(periods.subList(omitted, periods.size()))
+                    .omittedPeriods(omitted == 0 ? null : omitted)
+                    .build();
+            tokens = estimateTokens(writeJson(summary));
+            if (tokens <= maxTokens) {
+                break;
+            }
+            if (granularity.coarser() != null) {
+                granularity = granularity.coarser();
+                periods = periods(analysis.getDailySeries(), granularity, startDate, endDate);
+            } else if (triggerLimit > 1) {
+                triggerLimit--;
+            } else if (omitted < periods.size() - 1) {
+                // 较早的时间段仍体现在整体统计中，明细只保留最近的部分
+                omitted++;
+            } else {
+                break;
+            }
+        }
+
+        DistributionSummary.builder("moodtrack.gemini.prompt.feature.tokens")
+                .description("Estimated tokens of the mood feature summary sent to Gemini")
+                .tag("granularity", granularity.name().toLowerCase())
+                .register(meterRegistry)
+                .record(tokens);
+        return summary;
+    }
+
+    /**
+     * 粗略估算 token 数：中日韩字符和全角符号按每字 1 个，其余字符按每 4 个 1 个，偏保守。
+     */
+    static int estimateTokens(String text) {
+        int wide = 0;
+        int narrow = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            if (codePoint >= 0x2E80) {
+                wide++;
+            } else {
+                narrow++;
+            }
+            i += Character.charCount(codePoint);
+        }
+        return wide + (narrow + 3) / 4;
+    }
+
+    static List<PeriodFeature> periods(List<GeminiAPIService.DailySummary> dailySeries, Granularity granularity,
+                                       LocalDate startDate, LocalDate endDate) {
+        List<PeriodFeature> periods = new ArrayList<>();
+        PeriodAccumulator current = null;
+        // dailySeries 按日期升序，同一时间段的日期相邻
+        for (GeminiAPIService.DailySummary day : dailySeries) {
+            LocalDate periodStart = granularity.periodStart(day.getDate());
+            if (current == null || !current.start.equals(periodStart)) {
+                if (current != null) {
+                    periods.add(current.toFeature(granularity, startDate, endDate));
+                }
+                current = new PeriodAccumulator(periodStart);
+            }
+            current.add(day);
+        }
+        if (current != null) {
+            periods.add(current.toFeature(granularity, startDate, endDate));
+        }
+        return periods;
+    }
+
+    private static AnalysisPatterns limitTriggers(AnalysisPatterns patterns, int limit) {
+        AnalysisPatterns.TriggerAnalysis triggers = patterns.getTriggers();
+        return AnalysisPatterns.builder()
+                .weeklyPattern(patterns.getWeeklyPattern())
+                .dailyPattern(patterns.getDailyPattern())
+                .triggers(AnalysisPatterns.TriggerAnalysis.builder()
+                        .positive(triggers.getPositive().subList(0, Math.min(limit, triggers.getPositive().size())))
+                        .negative(triggers.getNegative().subList(0, Math.min(limit, triggers.getNegative().size())))
+                        .build())
+                .build();
+    }
+
+    private String writeJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("无法序列化特征摘要", e);
+        }
+    }
+
+    public enum Granularity {
+        DAY("天"), WEEK("周"), MONTH("月"), QUARTER("季度");
+
+        private final String label;
+
+        Granularity(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+
+        static Granularity forRange(int days) {
+            if (days <= 14) {
+                return DAY;
+            }
+            if (days <= 93) {
+                return WEEK;
+            }
+            return days <= 731 ? MONTH : QUARTER;
+        }
+
+        Granularity coarser() {
+            return this == QUARTER ? null : values()[ordinal() + 1];
+        }
+
+        LocalDate periodStart(LocalDate date) {
+            return switch (this) {
+                case DAY -> date;
+                case WEEK -> date.minusDays(date.getDayOfWeek().getValue() - 1L);
+                case MONTH -> date.withDayOfMonth(1);
+                case QUARTER -> date.with(IsoFields.DAY_OF_QUARTER, 1);
+            };
+        }
+
+        LocalDate periodEnd(LocalDate periodStart) {
+            return switch (this) {
+                case DAY -> periodStart;
+                case WEEK -> periodStart.plusDays(6);
+                case MONTH -> periodStart.plusMonths(1).minusDays(1);
+                case QUARTER -> periodStart.plusMonths(3).minusDays(1);
+            };
+        }
+    }
+
+    private static class PeriodAccumulator {
+        private final LocalDate start;
+        private int activeDays;
+        private int entries;
+        private long scoreSum;
+        private int lowEntries;
+        private int minScore = Integer.MAX_VALUE;
+        private int maxScore = Integer.MIN_VALUE;
+
+        PeriodAccumulator(LocalDate start) {
+            this.start = start;
+        }
+
+        void add(GeminiAPIService.DailySummary day) {
+            activeDays++;
+            entries += day.getEntries();
+            scoreSum += day.getScoreSum();
+            lowEntries += day.getLowEntries();
+            minScore = Math.min(minScore, day.getMinScore());
+            maxScore = Math.max(maxScore, day.getMaxScore());
+        }
+
+        // 首尾时间段截取到分析范围内
+        PeriodFeature toFeature(Granularity granularity, LocalDate rangeStart, LocalDate rangeEnd) {
+            LocalDate from = start.isBefore(rangeStart) ? rangeStart : start;
+            LocalDate end = granularity.periodEnd(start);
+            LocalDate to = end.isAfter(rangeEnd) ? rangeEnd : end;
+            return PeriodFeature.builder()
+                    .period(from.equals(to) ? from.toString() : from + "~" + to)
+                    .activeDays(granularity == Granularity.DAY ? null : activeDays)
+                    .entries(entries)
+                    .averageScore(LocalAnalysisEngine.round((double) scoreSum / entries))
+                    .minScore(minScore)
+                    .maxScore(maxScore)
+                    .lowShare(LocalAnalysisEngine.round((double) lowEntries / entries))
+                    .build();
+        }
+    }
+
+    /**
+     * 提供给模型的特征摘要。
+     */
+    @Data
+    @Builder
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class FeatureSummary {
+        private DateRange range;
+        private int totalEntries;
+        private BigDecimal averageScore;
+        private String overallTrend;
+        private String urgencyLevel;
+        private AnalysisPatterns patterns;
+        private RiskAssessment riskAssessment;
+        private List<PeriodFeature> periods;
+        /** 因 token 预算省略的较早时间段个数 */
+        private Integer omittedPeriods;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class DateRange {
+        private LocalDate startDate;
+        private LocalDate endDate;
+        private int days;
+        private Granularity granularity;
+    }
+
+    @Data
+    @Builder
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class PeriodFeature {
+        private String period;
+        /** 有记录的天数，按天汇总时省略 */
+        private Integer activeDays;
+        private int entries;
+        private BigDecimal averageScore;
+        private int minScore;
+        private int maxScore;
+        /** bad 与 very_bad 记录的占比 */
+        private BigDecimal lowShare;
+    }
+}
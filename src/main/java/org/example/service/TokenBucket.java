@@ -0,0 +1,53 @@
+package org.example.service;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 令牌桶：容量为 {@code capacity}，按每小时 {@code refillPerHour} 的速率连续补充，初始为满。
+ * <p>
+ * {@link #tryConsume} 余额不足时拒绝且不扣减；{@link #charge} 无条件扣减 (负数为退还)，余额最低到 -capacity，
+ * 用于按实际用量结算预扣的令牌，超出部分以欠额形式由之后的补充抵消。
+ * </p>
+ */
+class TokenBucket {
+
+    private final long capacity;
+    private final double tokensPerNano;
+    private final LongSupplier nanoTime;
+
+    private double tokens;
+    private long refilledAtNanos;
+
+    TokenBucket(long capacity, long refillPerHour, LongSupplier nanoTime) {
+        this.capacity = capacity;
+        this.tokensPerNano = refillPerHour / 3_600_000_000_000.0;
+        this.nanoTime = nanoTime;
+        this.tokens = capacity;
+        this.refilledAtNanos = nanoTime.getAsLong();
+    }
+
+    synchronized boolean tryConsume(long amount) {
+        refill();
+        if (tokens < amount) {
+            return false;
+        }
+        tokens -= amount;
+        return true;
+    }
+
+    synchronized void charge(long amount) {
+        refill();
+        tokens = Math.max(-capacity, Math.min(capacity, tokens - amount));
+    }
+
+    synchronized long available() {
+        refill();
+        return (long) tokens;
+    }
+
+    private void refill() {
+        long now = nanoTime.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - refilledAtNanos) * tokensPerNano);
+        refilledAtNanos = now;
+    }
+}
@@ -0,0 +1,158 @@
+package org.example.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * 触发器词典：triggers 表中触发器字符串与整数 id 的双向映射，热门词汇缓存在进程内。
+ * <p>
+ * 两个方向各有一个有界 Caffeine 缓存，未命中的部分合并为 IN 查询。词条只增不改，缓存无需失效。
+ * 新词条以 INSERT ... ON CONFLICT DO NOTHING 追加，并发写入同一新词时等待对方提交；
+ * 事务中解析出的字符串到 id 的映射在提交后才放入缓存，避免回滚后缓存指向不存在的 id。
+ * </p>
+ */
+@Component
+public class TriggerDictionary {
+
+    private static final int BATCH_SIZE = 1000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${moodtrack.trigger-dictionary.cache-size:100000}")
+    private long cacheSize;
+
+    private Cache<String, Integer> idsByName;
+
+    private Cache<Integer, String> namesById;
+
+    @PostConstruct
+    void init() {
+        idsByName = Caffeine.newBuilder().maximumSize(cacheSize).recordStats().build();
+        namesById = Caffeine.newBuilder().maximumSize(cacheSize).recordStats().build();
+        CaffeineCacheMetrics.monitor(meterRegistry, idsByName, "triggerIdsByName");
+        CaffeineCacheMetrics.monitor(meterRegistry, namesById, "triggerNamesById");
+    }
+
+    /**
+     * 将触发器字符串转换为词典 id，不存在的词条会被创建。应在写入心情记录的事务中调用。
+     *
+     * @return 包含 names 中每个不同字符串的映射
+     */
+    public Map<String, Integer> idsOf(Collection<String> names) {
+        Map<String, Integer> ids = new HashMap<>(idsByName.getAllPresent(names));
+        // 排序后插入，使并发事务按相同顺序获取唯一索引上的锁
+        TreeSet<String> missing = new TreeSet<>(names);
+        missing.removeAll(ids.keySet());
+        if (missing.isEmpty()) {
+            return ids;
+        }
+
+        Map<String, Integer> loaded = new HashMap<>();
+        for (List<String> batch : batches(missing)) {
+            loadOrCreate(batch, loaded);
+        }
+
+        loaded.forEach((name, id) -> namesById.put(id, name));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    idsByName.putAll(loaded);
+                }
+            });
+        } else {
+            idsByName.putAll(loaded);
+        }
+        ids.putAll(loaded);
+        return ids;
+    }
+
+    /**
+     * 将词典 id 转换为触发器字符串。
+     *
+     * @return 包含 ids 中每个存在的 id 的映射
+     */
+    public Map<Integer, String> namesOf(Collection<Integer> ids) {
+        Map<Integer, String> names = new HashMap<>(namesById.getAllPresent(ids));
+        TreeSet<Integer> missing = new TreeSet<>(ids);
+        missing.removeAll(names.keySet());
+        if (missing.isEmpty()) {
+            return names;
+        }
+        Map<String, Integer> loaded = new HashMap<>();
+        for (List<Integer> batch : batches(missing)) {
+            selectWhereIn("SELECT id, name FROM triggers WHERE id IN ", batch, loaded);
+        }
+        loaded.forEach((name, id) -> {
+            namesById.put(id, name);
+            names.put(id, name);
+        });
+        return names;
+    }
+
+    public String nameOf(int id) {
+        String name = namesOf(List.of(id)).get(id);
+        if (name == null) {
+            throw new IllegalStateException("触发器词典中不存在 id " + id);
+        }
+        return name;
+    }
+
+    private void loadOrCreate(List<String> names, Map<String, Integer> target) {
+        List<String> missing = new ArrayList<>(names);
+        // 先查询再插入，避免已存在的词条在 ON CONFLICT 时消耗序列值
+        selectWhereIn("SELECT id, name FROM triggers WHERE name IN ", missing, target);
+        missing.removeAll(target.keySet());
+        if (missing.isEmpty()) {
+            return;
+        }
+        String sql = "INSERT INTO triggers (name) VALUES " + String.join(", ", Collections.nCopies(missing.size(), "(?)"))
+                + " ON CONFLICT (name) DO NOTHING RETURNING id, name";
+        jdbcTemplate.query(sql, rs -> {
+            target.put(rs.getString(2), rs.getInt(1));
+        }, missing.toArray());
+        missing.removeAll(target.keySet());
+        if (!missing.isEmpty()) {
+            // 在 INSERT 之前由并发事务提交的词条
+            selectWhereIn("SELECT id, name FROM triggers WHERE name IN ", missing, target);
+        }
+    }
+
+    private void selectWhereIn(String sqlPrefix, Collection<?> values, Map<String, Integer> target) {
+        String sql = sqlPrefix + "(" + String.join(", ", Collections.nCopies(values.size(), "?")) + ")";
+        jdbcTemplate.query(sql, rs -> {
+            target.put(rs.getString(2), rs.getInt(1));
+        }, values.toArray());
+    }
+
+    // 控制单条语句的绑定参数个数 (PostgreSQL 上限为 32767)
+    private static <T> List<List<T>> batches(Collection<T> values) {
+        List<T> list = new ArrayList<>(values);
+        List<List<T>> batches = new ArrayList<>();
+        for (int i = 0; i < list.size(); i += BATCH_SIZE) {
+            batches.add(list.subList(i, Math.min(i + BATCH_SIZE, list.size())));
+        }
+        return batches;
+    }
+}
@@ -0,0 +1,311 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.dto.AIAnalysisRequest;
+import org.example.dto.AIAnalysisResponse;
+import org.example.exception.InsufficientDataException;
+import org.example.model.MoodEntry;
+import org.example.model.User;
+import org.example.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 在低峰时段预先生成上一周的周报，使周一的按需请求直接命中已保存的报告。
+ * <p>
+ * 由 {@code moodtrack.ai-pregeneration.cron} 在低峰窗口内多次触发 (按 {@code moodtrack.ai-pregeneration.zone} 解释)。
+ * 每次触发在独立线程上运行至多 {@code max-run-time}，按用户 id 升序分批处理上一周 (周一至周日) 至少有 3 条记录的用户，
+ * 与 {@code validateMoodData} 的规则相同。不带日期的周报请求默认分析用户时区内上一个完整的周一至周日，
+ * 与这里预生成的范围相同，因此 {@link AnalysisReportCache} 的缓存键相同，之后的默认周报请求直接返回已保存的报告。
+ * </p>
+ * <p>
+ * 每批由有界线程池并发生成，所有工作线程共享一个按分钟限速的 LLM 调用配额。每批结束后将已连续处理完的最大用户 id
+ * 写入检查点表 ai_report_pregeneration；超时、LLM 不可用 (报告退回离线模式) 或进程中断后，下一次触发从检查点继续。
+ * 检查点行同时作为租约，多实例部署时同一周只有一个实例在处理。
+ * 时区晚于参考时区、上一周尚未结束的用户会被跳过，仍按需生成。
+ * </p>
+ */
+@Component
+@Slf4j
+public class WeeklyReportPregenerationJob {
+
+    private static final int MIN_ENTRIES = 3;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private AnalysisRequestCoalescer analysisRequestCoalescer;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${moodtrack.ai-pregeneration.zone:UTC}")
+    private ZoneId zone;
+
+    @Value("${moodtrack.ai-pregeneration.threads:2}")
+    private int threads;
+
+    @Value("${moodtrack.ai-pregeneration.batch-size:50}")
+    private int batchSize;
+
+    @Value("${moodtrack.ai-pregeneration.llm-calls-per-minute:30}")
+    private int llmCallsPerMinute;
+
+    @Value("${moodtrack.ai-pregeneration.max-run-time:25m}")
+    private Duration maxRunTime;
+
+    private ExecutorService coordinator;
+
+    private ThreadPoolExecutor workers;
+
+    private RateLimiter rateLimiter;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    enum Outcome {
+        GENERATED, INSUFFICIENT_DATA, WEEK_NOT_OVER, FAILED,
+        /** 未处理，下一次触发时重试 */
+        DEFERRED
+    }
+
+    @PostConstruct
+    void init() {
+        coordinator = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ai-pregeneration");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger threadCount = new AtomicInteger();
+        // 每批最多 batchSize 个任务，队列不会无限增长
+        workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ai-pregeneration-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        rateLimiter = new RateLimiter(llmCallsPerMinute);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        coordinator.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    // 在独立线程上运行，避免长时间占用共享的调度线程
+    @Scheduled(cron = "${moodtrack.ai-pregeneration.cron:-}", zone = "${moodtrack.ai-pregeneration.zone:UTC}")
+    public void trigger() {
+        if (!running.compareAndSet(false, true)) {
+            log.info("上一次周报预生成仍在运行，跳过本次触发");
+            return;
+        }
+        coordinator.execute(() -> {
+            try {
+                pregenerate(LocalDate.now(zone).with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).minusWeeks(1));
+            } catch (RuntimeException e) {
+                log.error("周报预生成失败", e);
+            } finally {
+                running.set(false);
+            }
+        });
+    }
+
+    void pregenerate(LocalDate weekStart) {
+        LocalDate weekEnd = weekStart.plusDays(6);
+        String owner = UUID.randomUUID().toString();
+        Long lastUserId = claim(weekStart, owner);
+        if (lastUserId == null) {
+            return;
+        }
+        long startedAt = System.currentTimeMillis();
+        long deadlineNanos = System.nanoTime() + maxRunTime.toNanos();
+        AtomicBoolean stop = new AtomicBoolean();
+        boolean finished = false;
+        int generated = 0;
+        try {
+            while (!stop.get() && System.nanoTime() - deadlineNanos < 0) {
+                List<Long> userIds = eligibleUsers(weekStart, weekEnd, lastUserId);
+                if (userIds.isEmpty()) {
+                    finished = true;
+                    break;
+                }
+                List<Outcome> outcomes = runBatch(userIds, weekStart, weekEnd, deadlineNanos, stop);
+
+                // 检查点只前进到连续处理完的前缀，DEFERRED 之后的用户下次重新处理 (已生成的会命中报告缓存)
+                int batchGenerated = 0;
+                int batchFailed = 0;
+                for (int i = 0; i < outcomes.size() && outcomes.get(i) != Outcome.DEFERRED; i++) {
+                    lastUserId = userIds.get(i);
+                    if (outcomes.get(i) == Outcome.GENERATED) {
+                        batchGenerated++;
+                    } else if (outcomes.get(i) == Outcome.FAILED) {
+                        batchFailed++;
+                    }
+                }
+                jdbcTemplate.update("UPDATE ai_report_pregeneration SET last_user_id = ?, generated = generated + ?, failed = failed + ?, updated_at = now() "
+                        + "WHERE week_start = ? AND lease_owner = ?", lastUserId, batchGenerated, batchFailed, weekStart, owner);
+                generated += batchGenerated;
+                if (outcomes.contains(Outcome.DEFERRED)) {
+                    break;
+                }
+            }
+        } finally {
+            jdbcTemplate.update("UPDATE ai_report_pregeneration SET status = ?, lease_owner = NULL, lease_until = NULL, updated_at = now() "
+                    + "WHERE week_start = ? AND lease_owner = ?", finished ? "DONE" : "RUNNING", weekStart, owner);
+        }
+        log.info("周报预生成 ({} 周) {}: 本次生成 {} 份, 检查点用户 {}, 耗时 {} ms", weekStart, finished ? "完成" : "暂停",
+                generated, lastUserId, System.currentTimeMillis() - startedAt);
+    }
+
+    /**
+     * 创建或接管该周的检查点租约。
+     *
+     * @return 已处理到的用户 id；该周已完成或租约由其他实例持有时返回 null
+     */
+    private Long claim(LocalDate weekStart, String owner) {
+        jdbcTemplate.update("INSERT INTO ai_report_pregeneration (week_start) VALUES (?) ON CONFLICT (week_start) DO NOTHING", weekStart);
+        // 租约比单次运行时长多留出进行中的 LLM 调用 (含重试) 的时间
+        List<Long> claimed = jdbcTemplate.query("UPDATE ai_report_pregeneration SET lease_owner = ?, lease_until = now() + make_interval(secs => ?), updated_at = now() "
+                        + "WHERE week_start = ? AND status = 'RUNNING' AND (lease_until IS NULL OR lease_until < now()) RETURNING last_user_id",
+                (rs, rowNum) -> rs.getLong(1), owner, maxRunTime.plusMinutes(5).toSeconds(), weekStart);
+        return claimed.isEmpty() ? null : claimed.get(0);
+    }
+
+    private List<Long> eligibleUsers(LocalDate weekStart, LocalDate weekEnd, long afterUserId) {
+        // record_time 条件只用于分区裁剪
+        return jdbcTemplate.queryForList("SELECT user_id FROM moods WHERE user_id > ? AND local_date BETWEEN ? AND ? "
+                        + "AND record_time >= ? AND record_time < ? GROUP BY user_id HAVING COUNT(*) >= ? ORDER BY user_id LIMIT ?",
+                Long.class, afterUserId, weekStart, weekEnd,
+                MoodEntry.recordTimeLowerBound(weekStart), MoodEntry.recordTimeUpperBound(weekEnd), MIN_ENTRIES, batchSize);
+    }
+
+    private List<Outcome> runBatch(List<Long> userIds, LocalDate weekStart, LocalDate weekEnd, long deadlineNanos, AtomicBoolean stop) {
+        List<Callable<Outcome>> tasks = new ArrayList<>();
+        for (Long userId : userIds) {
+            tasks.add(() -> generate(userId, weekStart, weekEnd, deadlineNanos, stop));
+        }
+        List<Outcome> outcomes = new ArrayList<>();
+        try {
+            for (Future<Outcome> future : workers.invokeAll(tasks)) {
+                outcomes.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop.set(true);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("周报预生成任务失败", e.getCause());
+        }
+        while (outcomes.size() < userIds.size()) {
+            outcomes.add(Outcome.DEFERRED);
+        }
+        return outcomes;
+    }
+
+    private Outcome generate(Long userId, LocalDate weekStart, LocalDate weekEnd, long deadlineNanos, AtomicBoolean stop) {
+        Outcome outcome = Outcome.DEFERRED;
+        try {
+            outcome = doGenerate(userId, weekStart, weekEnd, deadlineNanos, stop);
+        } catch (InsufficientDataException e) {
+            outcome = Outcome.INSUFFICIENT_DATA;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop.set(true);
+        } catch (RuntimeException e) {
+            outcome = Outcome.FAILED;
+            log.warn("预生成用户 {} 的周报失败: {}", userId, e.getMessage());
+        }
+        meterRegistry.counter("moodtrack.ai.pregeneration.users", "outcome", outcome.name().toLowerCase()).increment();
+        return outcome;
+    }
+
+    private Outcome doGenerate(Long userId, LocalDate weekStart, LocalDate weekEnd, long deadlineNanos, AtomicBoolean stop)
+            throws InterruptedException {
+        if (stop.get()) {
+            return Outcome.DEFERRED;
+        }
+        User user = userRepository.findById(userId).orElse(null);
+        if (user == null) {
+            return Outcome.FAILED;
+        }
+        if (!LocalDate.now(user.zoneId()).isAfter(weekEnd)) {
+            return Outcome.WEEK_NOT_OVER;
+        }
+        if (!rateLimiter.acquire(deadlineNanos)) {
+            return Outcome.DEFERRED;
+        }
+        AIAnalysisRequest request = AIAnalysisRequest.builder()
+                .analysisType("weekly")
+                .dateRange(new AIAnalysisRequest.DateRange(weekStart, weekEnd))
+                .build();
+        AIAnalysisResponse response = analysisRequestCoalescer.generateAnalysis(request, user);
+        if ("offline".equals(response.getMetadata().getGenerationMode())) {
+            // LLM 不可用：停止本次运行，留到下一次触发重试，不消耗后续用户的配额
+            stop.set(true);
+            return Outcome.DEFERRED;
+        }
+        return Outcome.GENERATED;
+    }
+
+    /**
+     * 按固定间隔发放许可的限速器，所有工作线程共享。
+     */
+    static class RateLimiter {
+
+        private final long intervalNanos;
+
+        private long nextFreeNanos = System.nanoTime();
+
+        RateLimiter(int permitsPerMinute) {
+            this.intervalNanos = TimeUnit.MINUTES.toNanos(1) / permitsPerMinute;
+        }
+
+        /**
+         * 等待下一个许可。
+         *
+         * @return 截止时间之前拿不到许可时立即返回 false，不占用许可
+         */
+        boolean acquire(long deadlineNanos) throws InterruptedException {
+            long waitNanos;
+            synchronized (this) {
+                long now = System.nanoTime();
+                long slot = nextFreeNanos - now > 0 ? nextFreeNanos : now;
+                if (slot - deadlineNanos > 0) {
+                    return false;
+                }
+                nextFreeNanos = slot + intervalNanos;
+                waitNanos = slot - now;
+            }
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+            return true;
+        }
+    }
+}
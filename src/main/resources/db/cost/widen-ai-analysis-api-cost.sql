@@ -0,0 +1,9 @@
+-- One-off migration: widen ai_analysis.api_cost to hold the real per-call cost (fractions of a cent).
+--
+-- Run with psql after deploying the version that records the Gemini cost of each call:
+--   psql "$SPRING_DATASOURCE_URL" -f widen-ai-analysis-api-cost.sql
+-- Databases created by that version already have NUMERIC(12, 8) from Hibernate; older ones were created with scale 2,
+-- so costs are rounded to whole cents until this script has run.
+-- ALTER COLUMN ... TYPE rewrites the table under an ACCESS EXCLUSIVE lock; run it during a quiet period.
+
+ALTER TABLE ai_analysis ALTER COLUMN api_cost TYPE NUMERIC(12, 8);
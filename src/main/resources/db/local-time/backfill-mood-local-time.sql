@@ -0,0 +1,29 @@
+-- One-off migration: backfill moods.local_date / local_hour from record_time in each user's time zone.
+--
+-- Run with psql after deploying the version that maps MoodEntry.localDate / localHour and User.timeZone:
+--   psql "$SPRING_DATASOURCE_URL" -f backfill-mood-local-time.sql
+-- Existing users get time_zone 'UTC' from the column default. Until this script has run, rows written by the
+-- previous version have local_date NULL and are skipped by date-range filters and daily rollups.
+-- Afterwards trigger a rollup rebuild once (moodtrack.rollup.rebuild-cron) so mood_daily_rollup is keyed by local date.
+-- Can be run before or after convert-moods-to-partitioned.sql.
+
+BEGIN;
+
+ALTER TABLE users ADD COLUMN IF NOT EXISTS time_zone varchar(64) NOT NULL DEFAULT 'UTC';
+ALTER TABLE moods ADD COLUMN IF NOT EXISTS local_date date;
+ALTER TABLE moods ADD COLUMN IF NOT EXISTS local_hour smallint;
+
+UPDATE moods m
+SET local_date = (m.record_time AT TIME ZONE u.time_zone)::date,
+    local_hour = extract(hour FROM m.record_time AT TIME ZONE u.time_zone)::smallint
+FROM users u
+WHERE u.id = m.user_id AND m.local_date IS NULL;
+
+ALTER TABLE moods ALTER COLUMN local_date SET NOT NULL;
+ALTER TABLE moods ALTER COLUMN local_hour SET NOT NULL;
+
+CREATE INDEX IF NOT EXISTS idx_moods_user_local_date ON moods (user_id, local_date);
+
+COMMIT;
+
+ANALYZE moods;
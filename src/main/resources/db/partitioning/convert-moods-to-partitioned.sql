@@ -0,0 +1,64 @@
+-- One-off migration: convert moods and mood_triggers into tables range-partitioned by month of record_time.
+--
+-- Run with psql during a maintenance window while the application is stopped:
+--   psql "$SPRING_DATASOURCE_URL" -f convert-moods-to-partitioned.sql
+-- Afterwards set spring.jpa.hibernate.ddl-auto=none (Hibernate's schema update does not understand the
+-- composite keys below) and moodtrack.partitioning.enabled=true so that MoodPartitionMaintenanceService
+-- keeps future partitions created. The original heap tables are kept as moods_heap / mood_triggers_heap
+-- for rollback and can be dropped once the new layout is verified.
+-- mood_triggers must already be dictionary-encoded (db/triggers/dictionary-encode-mood-triggers.sql).
+
+BEGIN;
+
+-- mood_triggers.record_time is the partition key; rows written before it was mapped are backfilled here.
+UPDATE mood_triggers t SET record_time = m.record_time FROM moods m WHERE m.id = t.mood_id AND t.record_time IS NULL;
+
+ALTER TABLE mood_triggers RENAME TO mood_triggers_heap;
+ALTER TABLE moods RENAME TO moods_heap;
+ALTER INDEX IF EXISTS idx_moods_user_record_time_id RENAME TO idx_moods_heap_user_record_time_id;
+ALTER INDEX IF EXISTS idx_moods_user_local_date RENAME TO idx_moods_heap_user_local_date;
+
+CREATE TABLE moods (LIKE moods_heap INCLUDING DEFAULTS) PARTITION BY RANGE (record_time);
+-- A primary key on a partitioned table must contain the partition key.
+ALTER TABLE moods ADD PRIMARY KEY (id, record_time);
+ALTER TABLE moods ADD CONSTRAINT fk_moods_user FOREIGN KEY (user_id) REFERENCES users (id);
+CREATE INDEX idx_moods_user_record_time_id ON moods (user_id, record_time, id);
+CREATE INDEX idx_moods_user_local_date ON moods (user_id, local_date);
+
+CREATE TABLE mood_triggers (
+    mood_id     bigint      NOT NULL,
+    trigger_id  integer     NOT NULL,
+    record_time timestamptz NOT NULL
+) PARTITION BY RANGE (record_time);
+ALTER TABLE mood_triggers ADD CONSTRAINT fk_mood_triggers_mood FOREIGN KEY (mood_id, record_time) REFERENCES moods (id, record_time);
+ALTER TABLE mood_triggers ADD CONSTRAINT fk_mood_triggers_trigger FOREIGN KEY (trigger_id) REFERENCES triggers (id);
+CREATE INDEX idx_mood_triggers_mood_id ON mood_triggers (mood_id);
+
+-- Monthly partitions covering the existing data plus three months ahead.
+DO $$
+DECLARE
+    month_start date := date_trunc('month', COALESCE((SELECT MIN(record_time) FROM moods_heap), now()) AT TIME ZONE 'UTC');
+    last_month  date := date_trunc('month', now() AT TIME ZONE 'UTC') + interval '3 months';
+    suffix      text;
+BEGIN
+    WHILE month_start <= last_month LOOP
+        suffix := to_char(month_start, 'YYYY_MM');
+        EXECUTE format('CREATE TABLE moods_%s PARTITION OF moods FOR VALUES FROM (%L) TO (%L)',
+                       suffix, month_start::text || ' 00:00:00+00', (month_start + interval '1 month')::date::text || ' 00:00:00+00');
+        EXECUTE format('CREATE TABLE mood_triggers_%s PARTITION OF mood_triggers FOR VALUES FROM (%L) TO (%L)',
+                       suffix, month_start::text || ' 00:00:00+00', (month_start + interval '1 month')::date::text || ' 00:00:00+00');
+        month_start := month_start + interval '1 month';
+    END LOOP;
+END $$;
+
+-- Catch-all for rows outside the pre-created months (e.g. far-future record_time).
+CREATE TABLE moods_default PARTITION OF moods DEFAULT;
+CREATE TABLE mood_triggers_default PARTITION OF mood_triggers DEFAULT;
+
+INSERT INTO moods SELECT * FROM moods_heap;
+INSERT INTO mood_triggers (mood_id, trigger_id, record_time) SELECT mood_id, trigger_id, record_time FROM mood_triggers_heap;
+
+COMMIT;
+
+ANALYZE moods;
+ANALYZE mood_triggers;
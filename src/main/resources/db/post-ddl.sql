@@ -0,0 +1,17 @@
+-- Executed on every startup after Hibernate's ddl-auto=update, so every statement must be idempotent.
+
+-- moods.id switched from IDENTITY to the pooled sequence moods_seq (allocationSize = 50).
+-- Keep the sequence ahead of any id already handed out by the old identity column.
+SELECT setval('moods_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM moods) + 50, (SELECT last_value FROM moods_seq)));
+
+-- Progress checkpoint and lease for WeeklyReportPregenerationJob, one row per pre-generated week.
+CREATE TABLE IF NOT EXISTS ai_report_pregeneration (
+    week_start   DATE PRIMARY KEY,
+    status       VARCHAR(16) NOT NULL DEFAULT 'RUNNING',
+    last_user_id BIGINT NOT NULL DEFAULT 0,
+    generated    INTEGER NOT NULL DEFAULT 0,
+    failed       INTEGER NOT NULL DEFAULT 0,
+    lease_owner  VARCHAR(64),
+    lease_until  TIMESTAMPTZ,
+    updated_at   TIMESTAMPTZ NOT NULL DEFAULT now()
+);
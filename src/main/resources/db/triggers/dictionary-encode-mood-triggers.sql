@@ -0,0 +1,31 @@
+-- One-off migration: replace the free-text mood_triggers.trigger column with trigger_id referencing the triggers dictionary.
+--
+-- Run with psql while the application is stopped, after deploying the version that maps MoodTrigger.triggerId:
+--   psql "$SPRING_DATASOURCE_URL" -f dictionary-encode-mood-triggers.sql
+-- Rows written before this script have trigger_id NULL; until it has run, those triggers are left out of mood lists,
+-- exports, rollups and analytics (the moods themselves are still returned).
+-- If moods are also to be partitioned, run this script first; convert-moods-to-partitioned.sql expects trigger_id.
+
+BEGIN;
+
+CREATE TABLE IF NOT EXISTS triggers (
+    id   integer GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name varchar(50) NOT NULL UNIQUE
+);
+ALTER TABLE mood_triggers ADD COLUMN IF NOT EXISTS trigger_id integer;
+
+INSERT INTO triggers (name)
+SELECT DISTINCT trigger FROM mood_triggers WHERE trigger IS NOT NULL ORDER BY 1
+ON CONFLICT (name) DO NOTHING;
+
+UPDATE mood_triggers t SET trigger_id = d.id FROM triggers d WHERE d.name = t.trigger AND t.trigger_id IS NULL;
+DELETE FROM mood_triggers WHERE trigger_id IS NULL;
+
+ALTER TABLE mood_triggers DROP COLUMN trigger;
+ALTER TABLE mood_triggers ALTER COLUMN trigger_id SET NOT NULL;
+ALTER TABLE mood_triggers ADD CONSTRAINT fk_mood_triggers_trigger FOREIGN KEY (trigger_id) REFERENCES triggers (id);
+
+COMMIT;
+
+ANALYZE triggers;
+ANALYZE mood_triggers;
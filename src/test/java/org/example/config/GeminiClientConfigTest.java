@@ -0,0 +1,145 @@
+package org.example.config;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 针对本地桩服务器验证 Gemini 传输：gzip 响应被解压，读取超时与总时长截止能及时中断变慢的上游，
+ * 且连接池与每次尝试的指标被记录。
+ */
+class GeminiClientConfigTest {
+
+    private HttpServer server;
+
+    private ExecutorService serverExecutor;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private HttpComponentsClientHttpRequestFactory requestFactory;
+
+    private RestTemplate restTemplate;
+
+    private String baseUrl;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/fast", exchange -> {
+            byte[] body = gzip("{\"ok\":true}");
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/stalled", exchange -> {
+            sleep(2_000);
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        // 每 100ms 写出一个字节：不会触发读取超时，只能由总时长截止中断
+        server.createContext("/trickle", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int i = 0; i < 50; i++) {
+                    out.write('x');
+                    out.flush();
+                    sleep(100);
+                }
+            } catch (IOException e) {
+                // 客户端已取消
+            }
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        GeminiClientConfig config = new GeminiClientConfig();
+        ReflectionTestUtils.setField(config, "maxConnections", 4);
+        ReflectionTestUtils.setField(config, "maxConnectionsPerRoute", 2);
+        ReflectionTestUtils.setField(config, "connectTimeout", Duration.ofSeconds(1));
+        ReflectionTestUtils.setField(config, "readTimeout", Duration.ofMillis(500));
+        ReflectionTestUtils.setField(config, "totalTimeout", Duration.ofMillis(1_500));
+        ReflectionTestUtils.setField(config, "connectionRequestTimeout", Duration.ofSeconds(1));
+        ReflectionTestUtils.setField(config, "connectionTtl", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(config, "idleEviction", Duration.ofSeconds(30));
+        meterRegistry = new SimpleMeterRegistry();
+        requestFactory = config.geminiRequestFactory(meterRegistry);
+        restTemplate = config.geminiRestTemplate(requestFactory, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        requestFactory.destroy();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    void decompressesGzipResponsesAndRecordsMetrics() {
+        assertEquals("{\"ok\":true}", restTemplate.getForObject(baseUrl + "/fast", String.class));
+        assertEquals("{\"ok\":true}", restTemplate.getForObject(baseUrl + "/fast", String.class));
+
+        assertEquals(2, meterRegistry.get("moodtrack.gemini.http.attempts").tag("outcome", "SUCCESS").timer().count());
+        assertNotNull(meterRegistry.find("httpcomponents.httpclient.pool.total.max").gauge());
+        assertEquals(2.0, meterRegistry.get("httpcomponents.httpclient.pool.route.max.default").gauge().value());
+    }
+
+    @Test
+    void readTimeoutInterruptsStalledUpstream() {
+        long startNanos = System.nanoTime();
+        assertThrows(ResourceAccessException.class, () -> restTemplate.getForObject(baseUrl + "/stalled", String.class));
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+
+        assertTrue(elapsedMillis < 1_500, "elapsed " + elapsedMillis + " ms");
+        assertEquals(1, meterRegistry.get("moodtrack.gemini.http.attempts").tag("outcome", "SocketTimeoutException").timer().count());
+    }
+
+    @Test
+    void totalTimeoutInterruptsTricklingResponse() {
+        long startNanos = System.nanoTime();
+        assertThrows(ResourceAccessException.class, () -> restTemplate.getForObject(baseUrl + "/trickle", String.class));
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+
+        assertTrue(elapsedMillis < 3_000, "elapsed " + elapsedMillis + " ms");
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.example.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.dto.AIAnalysisRequest;
+import org.example.dto.AIAnalysisResponse;
+import org.example.exception.AiServiceUnavailableException;
+import org.example.model.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 验证并发的相同分析请求只生成一次报告，并在请求不同或执行结束后不再合并。
+ */
+class AnalysisRequestCoalescerTest {
+
+    private AnalysisReportService analysisReportService;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private AnalysisRequestCoalescer coalescer;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        analysisReportService = mock(AnalysisReportService.class);
+        when(analysisReportService.processRequest(any(), any())).thenAnswer(invocation -> invocation.getArgument(0));
+        meterRegistry = new SimpleMeterRegistry();
+        coalescer = new AnalysisRequestCoalescer();
+        ReflectionTestUtils.setField(coalescer, "analysisReportService", analysisReportService);
+        ReflectionTestUtils.setField(coalescer, "objectMapper", new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS));
+        ReflectionTestUtils.setField(coalescer, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(coalescer, "coalesceWait", Duration.ofSeconds(5));
+        coalescer.init();
+        user = new User();
+        user.setId(7L);
+    }
+
+    @Test
+    void concurrentDuplicatesShareOneReport() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AIAnalysisResponse report = AIAnalysisResponse.builder().reportId("r-1").build();
+        when(analysisReportService.generateAnalysis(any(), any())).thenAnswer(invocation -> {
+            started.countDown();
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            return report;
+        });
+
+        CompletableFuture<AIAnalysisResponse> leader = CompletableFuture.supplyAsync(() -> coalescer.generateAnalysis(request(), user));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<AIAnalysisResponse> follower = CompletableFuture.supplyAsync(() -> coalescer.generateAnalysis(request(), user));
+        while (meterRegistry.counter("moodtrack.ai.report.coalesced").count() < 1) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+
+        assertSame(report, leader.get(5, TimeUnit.SECONDS));
+        assertSame(report, follower.get(5, TimeUnit.SECONDS));
+        verify(analysisReportService, times(1)).generateAnalysis(any(), any());
+    }
+
+    @Test
+    void followersSeeTheLeadersFailureAndLaterRequestsRunAgain() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(analysisReportService.generateAnalysis(any(), any())).thenAnswer(invocation -> {
+            started.countDown();
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            throw new IllegalStateException("boom");
+        });
+
+        CompletableFuture<AIAnalysisResponse> leader = CompletableFuture.supplyAsync(() -> coalescer.generateAnalysis(request(), user));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Throwable> follower = CompletableFuture.supplyAsync(() ->
+                assertThrows(IllegalStateException.class, () -> coalescer.generateAnalysis(request(), user)));
+        while (meterRegistry.counter("moodtrack.ai.report.coalesced").count() < 1) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+
+        assertEquals("boom", follower.get(5, TimeUnit.SECONDS).getMessage());
+        assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS));
+        // 执行结束后不再合并
+        assertThrows(IllegalStateException.class, () -> coalescer.generateAnalysis(request(), user));
+        verify(analysisReportService, times(2)).generateAnalysis(any(), any());
+    }
+
+    @Test
+    void followerGivesUpWithServiceUnavailableWhenTheLeaderIsSlow() throws Exception {
+        ReflectionTestUtils.setField(coalescer, "coalesceWait", Duration.ofMillis(50));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AIAnalysisResponse report = AIAnalysisResponse.builder().reportId("r-1").build();
+        when(analysisReportService.generateAnalysis(any(), any())).thenAnswer(invocation -> {
+            started.countDown();
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            return report;
+        });
+
+        CompletableFuture<AIAnalysisResponse> leader = CompletableFuture.supplyAsync(() -> coalescer.generateAnalysis(request(), user));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        AiServiceUnavailableException e = assertThrows(AiServiceUnavailableException.class,
+                () -> coalescer.generateAnalysis(request(), user));
+        assertEquals(AnalysisRequestCoalescer.REPORT_PENDING, e.getCode());
+        release.countDown();
+
+        // 超时的请求不会另外生成报告
+        assertSame(report, leader.get(5, TimeUnit.SECONDS));
+        verify(analysisReportService, times(1)).generateAnalysis(any(), any());
+    }
+
+    private static AIAnalysisRequest request() {
+        return AIAnalysisRequest.builder()
+                .dateRange(new AIAnalysisRequest.DateRange(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 7)))
+                .build();
+    }
+}
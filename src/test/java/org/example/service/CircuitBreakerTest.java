@@ -0,0 +1,104 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 验证熔断器按滑动窗口失败率打开，打开期间快速拒绝，并经半开试探后关闭或重新打开。
+ */
+class CircuitBreakerTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final CircuitBreaker breaker = new CircuitBreaker(4, 4, 50, Duration.ofSeconds(10), 2, now::get);
+
+    @Test
+    void opensWhenFailureRateReachesThresholdOverWindow() {
+        call(false);
+        call(true);
+        call(false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        // 窗口 [成功, 失败, 成功, 失败]，失败率 50%
+        call(true);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquirePermission());
+        assertEquals(Duration.ofSeconds(10), breaker.remainingOpenDuration());
+    }
+
+    @Test
+    void slidingWindowForgetsOldFailures() {
+        call(true);
+        call(false);
+        call(false);
+        call(false);
+        // 最早的失败滑出窗口
+        call(true);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void halfOpenClosesAfterSuccessfulProbes() {
+        tripOpen();
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+
+        assertTrue(breaker.tryAcquirePermission());
+        assertTrue(breaker.tryAcquirePermission());
+        assertFalse(breaker.tryAcquirePermission());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        breaker.onSuccess();
+        breaker.onSuccess();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquirePermission());
+    }
+
+    @Test
+    void halfOpenFailureReopens() {
+        tripOpen();
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+
+        assertTrue(breaker.tryAcquirePermission());
+        breaker.onFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquirePermission());
+    }
+
+    @Test
+    void ignoredCallReturnsHalfOpenPermit() {
+        tripOpen();
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertTrue(breaker.tryAcquirePermission());
+        assertTrue(breaker.tryAcquirePermission());
+
+        breaker.onIgnored();
+
+        assertTrue(breaker.tryAcquirePermission());
+    }
+
+    private void tripOpen() {
+        for (int i = 0; i < 4; i++) {
+            call(true);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    private void call(boolean failure) {
+        assertTrue(breaker.tryAcquirePermission());
+        if (failure) {
+            breaker.onFailure();
+        } else {
+            breaker.onSuccess();
+        }
+    }
+}
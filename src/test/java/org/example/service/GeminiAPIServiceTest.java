@@ -0,0 +1,250 @@
+package org.example.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.dto.AIAnalysisRequest;
+import org.example.model.ai.AnalysisPatterns;
+import org.example.model.ai.RiskAssessment;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 针对本地桩服务器验证模型后备链、对冲请求，以及对冲延迟随模型耗时分位数变化。
+ */
+class GeminiAPIServiceTest {
+
+    private static final String RESPONSE = """
+            {"candidates":[{"content":{"parts":[{"text":"{\\"keyInsights\\":[\\"%s\\"],\\"recommendations\\":{\\"immediate\\":[],\\"shortTerm\\":[],\\"longTerm\\":[]}}"}]}}],
+             "usageMetadata":{"promptTokenCount":1000,"candidatesTokenCount":200}}
+            """;
+
+    private HttpServer server;
+
+    private ExecutorService serverExecutor;
+
+    /** 每个模型收到的请求数 */
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private GeminiModelRouter router;
+
+    private GeminiAPIService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // 路径为 /models/{model}:generateContent；broken 总是返回 503，truncated 的响应体不完整，slow 的第一个请求 1.5 秒后才返回
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/models/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            String model = path.substring("/models/".length(), path.indexOf(':'));
+            int count = requests.computeIfAbsent(model, m -> new AtomicInteger()).incrementAndGet();
+            if (model.equals("broken")) {
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+                return;
+            }
+            if (model.equals("truncated")) {
+                // 声明的长度比实际发送的多，客户端读取响应体时连接被关闭
+                exchange.sendResponseHeaders(200, 1_000);
+                exchange.getResponseBody().write("{\"candidates\"".getBytes(StandardCharsets.UTF_8));
+                exchange.close();
+                return;
+            }
+            if (model.equals("slow") && count == 1) {
+                sleep(1_500);
+            }
+            respond(exchange, String.format(RESPONSE, model + "-" + count));
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        meterRegistry = new SimpleMeterRegistry();
+        ObjectMapper objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+        PromptFeatureSummarizer summarizer = new PromptFeatureSummarizer();
+        ReflectionTestUtils.setField(summarizer, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(summarizer, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(summarizer, "maxTokens", 1500);
+
+        router = new GeminiModelRouter();
+        ReflectionTestUtils.setField(router, "strongModels", List.of("strong"));
+        ReflectionTestUtils.setField(router, "strongDepths", Set.of("comprehensive"));
+        ReflectionTestUtils.setField(router, "strongMinPromptTokens", 100_000);
+
+        service = new GeminiAPIService();
+        ReflectionTestUtils.setField(service, "apiKey", "test");
+        ReflectionTestUtils.setField(service, "baseUrl", "http://127.0.0.1:" + server.getAddress().getPort() + "/models");
+        ReflectionTestUtils.setField(service, "restTemplate", new RestTemplate());
+        ReflectionTestUtils.setField(service, "slidingWindowSize", 20);
+        ReflectionTestUtils.setField(service, "minimumCalls", 10);
+        ReflectionTestUtils.setField(service, "failureRateThreshold", 50.0);
+        ReflectionTestUtils.setField(service, "openDuration", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(service, "halfOpenCalls", 3);
+        ReflectionTestUtils.setField(service, "maxConcurrentCalls", 8);
+        ReflectionTestUtils.setField(service, "bulkheadMaxWait", Duration.ZERO);
+        ReflectionTestUtils.setField(service, "inputPricePerMillion", new BigDecimal("0.075"));
+        ReflectionTestUtils.setField(service, "outputPricePerMillion", new BigDecimal("0.30"));
+        // 只在对冲测试中开启，避免首个测试的冷启动耗时触发对冲
+        ReflectionTestUtils.setField(service, "hedgeEnabled", false);
+        ReflectionTestUtils.setField(service, "hedgePercentile", 0.95);
+        ReflectionTestUtils.setField(service, "hedgeInitialDelay", Duration.ofMillis(200));
+        ReflectionTestUtils.setField(service, "hedgeMinDelay", Duration.ofMillis(50));
+        ReflectionTestUtils.setField(service, "hedgeMinSamples", 20L);
+        ReflectionTestUtils.setField(service, "latencyWindow", Duration.ofMinutes(5));
+        ReflectionTestUtils.setField(service, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(service, "environment", new StandardEnvironment());
+        ReflectionTestUtils.setField(service, "modelRouter", router);
+        ReflectionTestUtils.setField(service, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(service, "promptFeatureSummarizer", summarizer);
+        service.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    void fallsBackToNextModelInChain() {
+        ReflectionTestUtils.setField(router, "fastModels", List.of("broken", "healthy"));
+
+        GeminiAPIService.Narrative narrative = service.generateAnalysis(analysis(), preferences("detailed"), usage -> {
+        });
+
+        assertEquals(List.of("healthy-1"), narrative.getKeyInsights());
+        assertEquals(1, requests.get("broken").get());
+        assertEquals(1.0, meterRegistry.get("moodtrack.gemini.model.fallback").tag("from", "broken").counter().count());
+        // 1000 * 0.075 / 1e6 + 200 * 0.30 / 1e6
+        assertEquals(new BigDecimal("0.00013500"), narrative.getUsage().getCost());
+    }
+
+    @Test
+    void fallsBackWhenResponseBodyCannotBeRead() {
+        ReflectionTestUtils.setField(router, "fastModels", List.of("truncated", "healthy"));
+
+        GeminiAPIService.Narrative narrative = service.generateAnalysis(analysis(), preferences("detailed"), usage -> {
+        });
+
+        assertEquals(List.of("healthy-1"), narrative.getKeyInsights());
+        assertEquals(1.0, meterRegistry.get("moodtrack.gemini.model.fallback").tag("from", "truncated").counter().count());
+    }
+
+    @Test
+    void routesByDepth() {
+        ReflectionTestUtils.setField(router, "fastModels", List.of("healthy"));
+
+        GeminiAPIService.Narrative narrative = service.generateAnalysis(analysis(), preferences("comprehensive"), usage -> {
+        });
+
+        assertEquals(List.of("strong-1"), narrative.getKeyInsights());
+    }
+
+    @Test
+    void hedgedRequestAnswersBeforeSlowPrimary() throws Exception {
+        ReflectionTestUtils.setField(router, "fastModels", List.of("slow"));
+        ReflectionTestUtils.setField(service, "hedgeEnabled", true);
+
+        CompletableFuture<GeminiAPIService.TokenUsage> discarded = new CompletableFuture<>();
+
+        long startNanos = System.nanoTime();
+        GeminiAPIService.Narrative narrative = service.generateAnalysis(analysis(), preferences("detailed"), discarded::complete);
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+
+        assertEquals(List.of("slow-2"), narrative.getKeyInsights());
+        assertTrue(elapsedMillis < 1_000, "elapsed " + elapsedMillis + " ms");
+        assertEquals(1.0, meterRegistry.get("moodtrack.gemini.hedge").tag("result", "fired").counter().count());
+        assertEquals(1.0, meterRegistry.get("moodtrack.gemini.hedge").tag("result", "won").counter().count());
+        // 较慢的第一次请求返回后，它的用量同样交给调用方
+        assertEquals(new BigDecimal("0.00013500"), discarded.get(5, TimeUnit.SECONDS).getCost());
+    }
+
+    @Test
+    void hedgeDelayFollowsModelLatencyPercentile() {
+        assertEquals(Duration.ofMillis(200), service.hedgeDelay("healthy"));
+
+        Timer latency = meterRegistry.get("moodtrack.gemini.model.latency").tag("model", "healthy").timer();
+        for (int i = 0; i < 20; i++) {
+            latency.record(1, TimeUnit.SECONDS);
+        }
+        Duration delay = service.hedgeDelay("healthy");
+
+        assertTrue(delay.compareTo(Duration.ofMillis(900)) > 0 && delay.compareTo(Duration.ofMillis(1_500)) < 0,
+                "delay " + delay);
+    }
+
+    private static AIAnalysisRequest.AnalysisPreferences preferences(String depth) {
+        return AIAnalysisRequest.AnalysisPreferences.builder().depth(depth).build();
+    }
+
+    private static GeminiAPIService.MoodDataAnalysis analysis() {
+        LocalDate startDate = LocalDate.of(2024, 1, 1);
+        return GeminiAPIService.MoodDataAnalysis.builder()
+                .startDate(startDate)
+                .endDate(startDate.plusDays(6))
+                .totalEntries(2)
+                .averageScore(2.0)
+                .overallTrend("stable")
+                .urgencyLevel("low")
+                .patterns(AnalysisPatterns.builder()
+                        .weeklyPattern(AnalysisPatterns.WeeklyPattern.builder()
+                                .bestDays(List.of()).challengingDays(List.of()).volatilityIndex(BigDecimal.ZERO).build())
+                        .dailyPattern(AnalysisPatterns.DailyPattern.builder().peakHours(List.of()).build())
+                        .triggers(AnalysisPatterns.TriggerAnalysis.builder().positive(List.of()).negative(List.of()).build())
+                        .build())
+                .riskAssessment(RiskAssessment.builder().level("green").indicators(List.of()).suggestions(List.of()).build())
+                .dailySeries(List.of(new GeminiAPIService.DailySummary(startDate, 2, 4, 1, 0, 4)))
+                .build();
+    }
+
+    private static void respond(HttpExchange exchange, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 验证分段到达的模型输出中，顶层字段在完整到达时被取出，且不受分段位置、字符串中的括号和转义影响。
+ */
+class JsonFieldScannerTest {
+
+    private static final String TEXT = "```json\n{\"keyInsights\": [\"周一 {较低}\", \"说 \\\"放松\\\" ]\"],"
+            + " \"count\": 2, \"recommendations\": {\"immediate\": [{\"title\": \"散步\"}], \"shortTerm\": []}}\n```";
+
+    @Test
+    void emitsEachTopLevelFieldOnceComplete() {
+        List<JsonFieldScanner.Field> fields = new JsonFieldScanner().feed(TEXT);
+
+        assertEquals(3, fields.size());
+        assertEquals(new JsonFieldScanner.Field("keyInsights", "[\"周一 {较低}\", \"说 \\\"放松\\\" ]\"]"), fields.get(0));
+        assertEquals(new JsonFieldScanner.Field("count", "2"), fields.get(1));
+        assertEquals("recommendations", fields.get(2).name());
+        assertTrue(fields.get(2).json().startsWith("{\"immediate\"") && fields.get(2).json().endsWith("[]}"));
+    }
+
+    @Test
+    void chunkBoundariesDoNotMatter() {
+        JsonFieldScanner scanner = new JsonFieldScanner();
+        List<JsonFieldScanner.Field> fields = new ArrayList<>();
+        int keyInsightsEnd = TEXT.indexOf("],") + 1;
+        for (int i = 0; i < TEXT.length(); i++) {
+            fields.addAll(scanner.feed(TEXT.substring(i, i + 1)));
+            if (i + 1 == keyInsightsEnd) {
+                // 数组闭合时立即返回，不等待后面的逗号
+                assertEquals(1, fields.size());
+            }
+        }
+
+        assertEquals(new JsonFieldScanner().feed(TEXT), fields);
+    }
+}
@@ -0,0 +1,104 @@
+package org.example.service;
+
+import org.example.model.ai.AnalysisPatterns;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * 用一周的手工数据验证本地分析引擎的各项统计：星期模式、早晚均值、高峰时段、触发器影响、趋势与风险等级。
+ */
+@ExtendWith(MockitoExtension.class)
+class LocalAnalysisEngineTest {
+
+    private static final int WORK = 1;
+    private static final int SPORT = 2;
+
+    @Mock
+    private MoodHistoryCache moodHistoryCache;
+
+    @Mock
+    private TriggerDictionary triggerDictionary;
+
+    @InjectMocks
+    private LocalAnalysisEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        MoodHistory.Builder builder = new MoodHistory.Builder();
+        // 范围之前的记录不应计入
+        add(builder, 1, LocalDateTime.of(2023, 12, 31, 10, 0), 0);
+        // 2024-01-01 为星期一
+        add(builder, 2, LocalDateTime.of(2024, 1, 1, 8, 0), 1, WORK);
+        add(builder, 3, LocalDateTime.of(2024, 1, 1, 20, 0), 3, SPORT);
+        add(builder, 4, LocalDateTime.of(2024, 1, 2, 8, 0), 1, WORK);
+        add(builder, 5, LocalDateTime.of(2024, 1, 2, 20, 0), 3, SPORT);
+        add(builder, 6, LocalDateTime.of(2024, 1, 6, 9, 0), 2);
+        add(builder, 7, LocalDateTime.of(2024, 1, 6, 20, 0), 4, SPORT);
+        when(moodHistoryCache.get(42L)).thenReturn(builder.build());
+        when(triggerDictionary.namesOf(any())).thenReturn(Map.of(WORK, "work", SPORT, "sport"));
+    }
+
+    @Test
+    void computesPatternsFromMoodsInRange() {
+        GeminiAPIService.MoodDataAnalysis analysis = engine.analyze(42L, LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 7));
+
+        assertEquals(6, analysis.getTotalEntries());
+        assertEquals(14.0 / 6, analysis.getAverageScore(), 1e-9);
+        assertEquals("improving", analysis.getOverallTrend());
+        assertEquals("low", analysis.getUrgencyLevel());
+        assertEquals("green", analysis.getRiskAssessment().getLevel());
+
+        AnalysisPatterns.WeeklyPattern weekly = analysis.getPatterns().getWeeklyPattern();
+        assertEquals(List.of("Saturday"), weekly.getBestDays());
+        assertEquals(List.of("Monday", "Tuesday"), weekly.getChallengingDays());
+        assertEquals(new BigDecimal("0.47"), weekly.getVolatilityIndex());
+
+        AnalysisPatterns.DailyPattern daily = analysis.getPatterns().getDailyPattern();
+        assertEquals(new BigDecimal("1.33"), daily.getMorningAverage());
+        assertEquals(new BigDecimal("3.33"), daily.getEveningAverage());
+        assertEquals(List.of("20:00-21:00"), daily.getPeakHours());
+
+        AnalysisPatterns.TriggerAnalysis triggers = analysis.getPatterns().getTriggers();
+        assertEquals(1, triggers.getPositive().size());
+        assertEquals("sport", triggers.getPositive().get(0).getFactor());
+        assertEquals(3, triggers.getPositive().get(0).getFrequency());
+        assertEquals(new BigDecimal("2.00"), triggers.getPositive().get(0).getImpact());
+        assertEquals(1, triggers.getNegative().size());
+        assertEquals("work", triggers.getNegative().get(0).getFactor());
+        assertEquals(new BigDecimal("-2.00"), triggers.getNegative().get(0).getImpact());
+    }
+
+    @Test
+    void offlineNarrativeCoversInsightsAndRecommendations() {
+        GeminiAPIService.MoodDataAnalysis analysis = engine.analyze(42L, LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 7));
+
+        assertFalse(engine.offlineInsights(analysis).isEmpty());
+        assertEquals(1, engine.offlineRecommendations(analysis).getImmediate().size());
+        assertFalse(engine.offlineRecommendations(analysis).getLongTerm().isEmpty());
+    }
+
+    // 测试数据使用 UTC，本地时间与记录时间相同
+    private static void add(MoodHistory.Builder builder, long id, LocalDateTime time, int emotion, int... triggerIds) {
+        builder.addEntry(id, time.toEpochSecond(ZoneOffset.UTC),
+                MoodHistory.localHourOf(time.toLocalDate(), time.getHour()), emotion);
+        for (int triggerId : triggerIds) {
+            builder.addTrigger(triggerId);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * 验证列式快照的合并保持 (时间, id) 顺序、触发器偏移正确，且重复合并同一 id 不产生重复记录。
+ */
+class MoodHistoryTest {
+
+    @Test
+    void mergesInTimeOrderAndKeepsTriggerOffsets() {
+        MoodHistory.Builder builder = new MoodHistory.Builder();
+        builder.addEntry(1, 100, 10, 2);
+        builder.addTrigger(7);
+        builder.addEntry(2, 300, 30, 4);
+        builder.addTrigger(8);
+        builder.addTrigger(9);
+        MoodHistory history = builder.build();
+
+        // 一批已按时间排序的新记录，其中 id 2 已存在
+        MoodHistory.Builder added = new MoodHistory.Builder();
+        added.addEntry(3, 200, 20, 0);
+        added.addTrigger(5);
+        added.addEntry(2, 300, 30, 4);
+        added.addEntry(4, 400, 41, 1);
+        MoodHistory updated = history.merged(added.build());
+
+        assertEquals(4, updated.size());
+        assertArrayEquals(new long[]{1, 3, 2, 4}, new long[]{updated.id(0), updated.id(1), updated.id(2), updated.id(3)});
+        assertArrayEquals(new int[]{10, 20, 6, 17}, new int[]{updated.localHour(0), updated.localHour(1), updated.localHour(2), updated.localHour(3)});
+        assertEquals(1, updated.localEpochDay(3));
+        assertArrayEquals(new int[]{7}, triggersOf(updated, 0));
+        assertArrayEquals(new int[]{5}, triggersOf(updated, 1));
+        assertArrayEquals(new int[]{8, 9}, triggersOf(updated, 2));
+        assertArrayEquals(new int[0], triggersOf(updated, 3));
+        assertEquals(1, updated.lowerBound(150));
+        assertEquals(4, updated.lowerBound(401));
+        assertEquals(2, history.size());
+    }
+
+    @Test
+    void ignoresAlreadyPresentId() {
+        MoodHistory history = MoodHistory.empty().merged(single(10, 500, 0, 3, 1));
+
+        assertEquals(1, history.size());
+        assertSame(history, history.merged(single(10, 500, 0, 3, 1)));
+    }
+
+    private static MoodHistory single(long id, long epochSecond, int localHour, int emotion, int... triggerIds) {
+        MoodHistory.Builder builder = new MoodHistory.Builder();
+        builder.addEntry(id, epochSecond, localHour, emotion);
+        for (int triggerId : triggerIds) {
+            builder.addTrigger(triggerId);
+        }
+        return builder.build();
+    }
+
+    private static int[] triggersOf(MoodHistory history, int index) {
+        int[] triggers = new int[history.triggerEnd(index) - history.triggerStart(index)];
+        for (int i = 0; i < triggers.length; i++) {
+            triggers[i] = history.triggerId(history.triggerStart(index) + i);
+        }
+        return triggers;
+    }
+}
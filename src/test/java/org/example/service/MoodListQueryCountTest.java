@@ -0,0 +1,129 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.example.dto.PaginatedMoodResponse;
+import org.example.model.EmotionType;
+import org.example.model.MoodEntry;
+import org.example.model.Trigger;
+import org.example.model.User;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.validation.ValidationAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 验证心情列表的读取路径：无论页大小如何，SQL 语句数固定，且不加载任何实体。
+ * 触发器词典缓存在准备数据时已预热，与线上热门词汇的情况一致。
+ */
+@DataJpaTest(properties = {
+        "spring.sql.init.mode=never",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@Import({MoodEntryServiceImpl.class, MoodRequestValidator.class, TriggerDictionary.class, SimpleMeterRegistry.class})
+@ImportAutoConfiguration(ValidationAutoConfiguration.class)
+class MoodListQueryCountTest {
+
+    @Autowired
+    private MoodEntryService moodEntryService;
+
+    @MockBean
+    private MoodRollupService moodRollupService;
+
+    @Autowired
+    private TriggerDictionary triggerDictionary;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        user = new User();
+        user.setUsername("query-count");
+        user.setEmail("query-count@example.com");
+        user.setPassword("secret");
+        user.setRegistrationDate(LocalDateTime.now());
+        entityManager.persist(user);
+
+        Trigger work = trigger("工作压力");
+        Trigger exercise = trigger("运动");
+        Map<String, Integer> triggerIds = Map.of(work.getName(), work.getId(), exercise.getName(), exercise.getId());
+
+        OffsetDateTime base = OffsetDateTime.now().minusDays(1);
+        for (int i = 0; i < 120; i++) {
+            MoodEntry entry = new MoodEntry();
+            entry.setUser(user);
+            entry.setEmotionType(EmotionType.values()[i % EmotionType.values().length]);
+            entry.setTriggers(List.of("工作压力", "运动"));
+            entry.setRecordTime(base.plusMinutes(i));
+            entry.encodeTriggers(triggerIds);
+            entityManager.persist(entry);
+        }
+        entityManager.flush();
+        entityManager.clear();
+        triggerDictionary.namesOf(triggerIds.values());
+    }
+
+    @Test
+    void cursorPageUsesTwoStatementsRegardlessOfSize() {
+        for (int limit : new int[]{1, 20, 100}) {
+            Statistics statistics = resetStatistics();
+            PaginatedMoodResponse page = moodEntryService.getMoodsByCursor(user, null, limit, Sort.Direction.DESC, null, null, null);
+
+            assertEquals(limit, page.getMoods().size());
+            assertEquals(2, statistics.getPrepareStatementCount(), "limit=" + limit);
+            assertEquals(0, statistics.getEntityLoadCount(), "limit=" + limit);
+            assertTrue(page.getMoods().stream().allMatch(m -> m.getTriggers().size() == 2));
+        }
+    }
+
+    @Test
+    void offsetPageUsesThreeStatementsRegardlessOfSize() {
+        for (int limit : new int[]{1, 20, 100}) {
+            Statistics statistics = resetStatistics();
+            PaginatedMoodResponse page = moodEntryService.getMoods(user, PageRequest.of(0, limit, Sort.by(Sort.Direction.DESC, "recordTime")), null, null, null);
+
+            assertEquals(limit, page.getMoods().size());
+            assertEquals(120, page.getPagination().getTotalCount());
+            assertEquals(3, statistics.getPrepareStatementCount(), "limit=" + limit);
+            assertEquals(0, statistics.getEntityLoadCount(), "limit=" + limit);
+        }
+    }
+
+    private Trigger trigger(String name) {
+        Trigger trigger = new Trigger();
+        trigger.setName(name);
+        entityManager.persist(trigger);
+        return trigger;
+    }
+
+    private Statistics resetStatistics() {
+        entityManager.clear();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        return statistics;
+    }
+}
@@ -0,0 +1,118 @@
+package org.example.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.model.ai.AnalysisPatterns;
+import org.example.model.ai.RiskAssessment;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 验证特征摘要按范围长度选择粒度，并在超出 token 预算时降级。
+ */
+class PromptFeatureSummarizerTest {
+
+    private PromptFeatureSummarizer summarizer;
+
+    @BeforeEach
+    void setUp() {
+        summarizer = new PromptFeatureSummarizer();
+        ReflectionTestUtils.setField(summarizer, "objectMapper", new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS));
+        ReflectionTestUtils.setField(summarizer, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(summarizer, "maxTokens", 1500);
+    }
+
+    @Test
+    void choosesGranularityByRangeLength() {
+        assertGranularity(PromptFeatureSummarizer.Granularity.DAY, 7);
+        assertGranularity(PromptFeatureSummarizer.Granularity.WEEK, 30);
+        assertGranularity(PromptFeatureSummarizer.Granularity.MONTH, 365);
+    }
+
+    @Test
+    void weeklyPeriodsStartOnMondayAndAreClippedToRange() {
+        // 2024-01-03 为星期三
+        GeminiAPIService.MoodDataAnalysis analysis = analysis(LocalDate.of(2024, 1, 3), 30);
+        PromptFeatureSummarizer.FeatureSummary summary = summarizer.summarize(analysis);
+
+        List<PromptFeatureSummarizer.PeriodFeature> periods = summary.getPeriods();
+        assertEquals("2024-01-03~2024-01-07", periods.get(0).getPeriod());
+        assertEquals(5, periods.get(0).getActiveDays());
+        assertEquals(10, periods.get(0).getEntries());
+        assertEquals("2024-01-08~2024-01-14", periods.get(1).getPeriod());
+        assertEquals("2024-01-29~2024-02-01", periods.get(periods.size() - 1).getPeriod());
+        assertEquals(0, periods.get(0).getMinScore());
+        assertEquals(4, periods.get(0).getMaxScore());
+        assertEquals(new BigDecimal("0.50"), periods.get(0).getLowShare());
+    }
+
+    @Test
+    void staysWithinTokenBudgetForLongRanges() {
+        ReflectionTestUtils.setField(summarizer, "maxTokens", 400);
+        GeminiAPIService.MoodDataAnalysis analysis = analysis(LocalDate.of(2020, 1, 1), 4 * 365);
+        PromptFeatureSummarizer.FeatureSummary summary = summarizer.summarize(analysis);
+
+        assertEquals(PromptFeatureSummarizer.Granularity.QUARTER, summary.getRange().getGranularity());
+        assertTrue(summary.getOmittedPeriods() != null && summary.getOmittedPeriods() > 0);
+        assertEquals(16, summary.getOmittedPeriods() + summary.getPeriods().size());
+        assertEquals(1, summary.getPatterns().getTriggers().getPositive().size());
+        // 降级不改变原始统计结果
+        assertEquals(5, analysis.getPatterns().getTriggers().getPositive().size());
+    }
+
+    @Test
+    void shortRangeKeepsDailyDetail() {
+        PromptFeatureSummarizer.FeatureSummary summary = summarizer.summarize(analysis(LocalDate.of(2024, 1, 1), 7));
+
+        assertEquals(7, summary.getPeriods().size());
+        assertEquals("2024-01-01", summary.getPeriods().get(0).getPeriod());
+        assertNull(summary.getPeriods().get(0).getActiveDays());
+        assertNull(summary.getOmittedPeriods());
+    }
+
+    private void assertGranularity(PromptFeatureSummarizer.Granularity expected, int days) {
+        assertEquals(expected, summarizer.summarize(analysis(LocalDate.of(2024, 1, 1), days)).getRange().getGranularity());
+    }
+
+    // 每天两条记录：一条 0 分，一条 4 分
+    private static GeminiAPIService.MoodDataAnalysis analysis(LocalDate startDate, int days) {
+        List<GeminiAPIService.DailySummary> dailySeries = new ArrayList<>();
+        for (int day = 0; day < days; day++) {
+            dailySeries.add(new GeminiAPIService.DailySummary(startDate.plusDays(day), 2, 4, 1, 0, 4));
+        }
+        List<AnalysisPatterns.Trigger> positive = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            positive.add(AnalysisPatterns.Trigger.builder().factor("trigger-" + i).frequency(10).impact(new BigDecimal("1.00")).build());
+        }
+        return GeminiAPIService.MoodDataAnalysis.builder()
+                .startDate(startDate)
+                .endDate(startDate.plusDays(days - 1))
+                .totalEntries(days * 2)
+                .averageScore(2.0)
+                .overallTrend("stable")
+                .urgencyLevel("low")
+                .patterns(AnalysisPatterns.builder()
+                        .weeklyPattern(AnalysisPatterns.WeeklyPattern.builder()
+                                .bestDays(List.of()).challengingDays(List.of()).volatilityIndex(BigDecimal.ZERO).build())
+                        .dailyPattern(AnalysisPatterns.DailyPattern.builder().peakHours(List.of()).build())
+                        .triggers(AnalysisPatterns.TriggerAnalysis.builder().positive(positive).negative(List.of()).build())
+                        .build())
+                .riskAssessment(RiskAssessment.builder().level("green").indicators(List.of()).suggestions(List.of()).build())
+                .dailySeries(dailySeries)
+                .build();
+    }
+}
@@ -0,0 +1,51 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 验证令牌桶按时间补充、余额不足时拒绝，并按实际用量结算预扣。
+ */
+class TokenBucketTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final TokenBucket bucket = new TokenBucket(10_000, 3_600, now::get);
+
+    @Test
+    void rejectsWithoutConsumingWhenBalanceIsInsufficient() {
+        assertTrue(bucket.tryConsume(8_000));
+        assertFalse(bucket.tryConsume(4_000));
+        assertEquals(2_000, bucket.available());
+    }
+
+    @Test
+    void refillsContinuouslyUpToCapacity() {
+        assertTrue(bucket.tryConsume(10_000));
+        // 每小时 3600 个，即每秒 1 个
+        now.addAndGet(TimeUnit.SECONDS.toNanos(90));
+        assertEquals(90, bucket.available());
+
+        now.addAndGet(TimeUnit.DAYS.toNanos(1));
+        assertEquals(10_000, bucket.available());
+    }
+
+    @Test
+    void settlingAboveReservationLeavesDebtBoundedByCapacity() {
+        assertTrue(bucket.tryConsume(4_000));
+        // 实际用量比预扣多 20000
+        bucket.charge(20_000);
+        assertEquals(-10_000, bucket.available());
+        assertFalse(bucket.tryConsume(1));
+
+        // 退还
+        bucket.charge(-15_000);
+        assertEquals(5_000, bucket.available());
+    }
+}
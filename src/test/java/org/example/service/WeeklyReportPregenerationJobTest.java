@@ -0,0 +1,37 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 验证预生成任务共享的 LLM 限速器按固定间隔发放许可，并在截止时间前拿不到许可时放弃。
+ */
+class WeeklyReportPregenerationJobTest {
+
+    @Test
+    void rateLimiterSpacesPermits() throws InterruptedException {
+        // 每分钟 1200 次，即每 50 ms 一个许可
+        WeeklyReportPregenerationJob.RateLimiter limiter = new WeeklyReportPregenerationJob.RateLimiter(1200);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.acquire(deadline));
+        }
+        assertTrue(System.nanoTime() - startedAt >= TimeUnit.MILLISECONDS.toNanos(200));
+    }
+
+    @Test
+    void rateLimiterGivesUpPastDeadline() throws InterruptedException {
+        // 每分钟 1 次：第一个许可立即可用，第二个要等 60 秒
+        WeeklyReportPregenerationJob.RateLimiter limiter = new WeeklyReportPregenerationJob.RateLimiter(1);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        assertTrue(limiter.acquire(deadline));
+        long startedAt = System.nanoTime();
+        assertFalse(limiter.acquire(deadline));
+        assertTrue(System.nanoTime() - startedAt < TimeUnit.SECONDS.toNanos(1));
+    }
+}